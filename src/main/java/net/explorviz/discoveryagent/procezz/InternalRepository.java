@@ -1,22 +1,34 @@
 package net.explorviz.discoveryagent.procezz;
 
+import com.github.jasminb.jsonapi.JSONAPIDocument;
+import com.github.jasminb.jsonapi.ResourceConverter;
+import com.github.jasminb.jsonapi.exceptions.DocumentSerializationException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Objects;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.inject.Inject;
 import javax.ws.rs.ProcessingException;
 import javax.ws.rs.WebApplicationException;
 import net.explorviz.discoveryagent.procezz.management.ProcezzManagementType;
 import net.explorviz.discoveryagent.procezz.management.ProcezzManagementTypeFactory;
+import net.explorviz.discoveryagent.procezz.management.ProcezzScanExecutor;
+import net.explorviz.discoveryagent.procezz.management.util.ProcFSAbstraction;
 import net.explorviz.discoveryagent.services.BroadcastService;
 import net.explorviz.shared.discovery.exceptions.mapper.ResponseUtil;
-import net.explorviz.shared.discovery.exceptions.procezz.ProcezzManagementTypeIncompatibleException;
 import net.explorviz.shared.discovery.exceptions.procezz.ProcezzManagementTypeNotFoundException;
 import net.explorviz.shared.discovery.exceptions.procezz.ProcezzMonitoringSettingsException;
 import net.explorviz.shared.discovery.exceptions.procezz.ProcezzNotFoundException;
-import net.explorviz.shared.discovery.exceptions.procezz.ProcezzStartException;
 import net.explorviz.shared.discovery.exceptions.procezz.ProcezzStopException;
 import net.explorviz.shared.discovery.model.Agent;
 import net.explorviz.shared.discovery.model.Procezz;
@@ -25,66 +37,228 @@ import org.slf4j.LoggerFactory;
 
 public final class InternalRepository {
 
-  public Agent agentObject;
+  public volatile Agent agentObject;
   private final Logger LOGGER = LoggerFactory.getLogger(InternalRepository.class);
-  private final List<Procezz> internalProcezzList = new ArrayList<Procezz>();
+
+  // readers (e.g. GET requests) access the store without locking, modifications of a single
+  // procezz are guarded by the procezz's monitor and only merges serialize on the mergeLock
+  private final ProcezzStore internalProcezzStore = new ProcezzStore();
+  private final Object mergeLock = new Object();
+
+  // the serialized agent is reused until the version is incremented by a modification
+  private static final byte[] EMPTY_AGENT_DOCUMENT =
+      "{\"data\": null}".getBytes(StandardCharsets.UTF_8);
+  private final String documentTagPrefix = Long.toHexString(System.currentTimeMillis()) + "-";
+  private final AtomicLong documentCounter = new AtomicLong(0);
+  private final AtomicLong agentVersion = new AtomicLong(0);
+  private volatile SerializedAgentDocument agentDocument;
 
   private final ProcezzUtility procezzUtility;
   private final ProcezzManagementTypeFactory procezzMngTypeFactory;
   private final BroadcastService broadcastService;
+  private final ResourceConverter converter;
+  private final ProcezzScanExecutor scanExecutor;
+  private final ProcezzStateStore stateStore;
+
+  // ID of the agent before the restart of the agent, null if unknown
+  private volatile String restoredAgentId;
+
+  // PIDs of new procezzes whose working directory was not resolved in time, they are examined
+  // again by the next update, modified on the mergeLock
+  private final Set<Long> deferredPids = ConcurrentHashMap.newKeySet();
 
 
   @Inject
   public InternalRepository(final ProcezzUtility procezzUtility,
       final ProcezzManagementTypeFactory procezzMngTypeFactory,
-      final BroadcastService broadcastService) {
+      final BroadcastService broadcastService, final ResourceConverter converter,
+      final ProcezzScanExecutor scanExecutor, final ProcezzStateStore stateStore) {
     this.procezzUtility = procezzUtility;
     this.procezzMngTypeFactory = procezzMngTypeFactory;
     this.broadcastService = broadcastService;
+    this.converter = converter;
+    this.scanExecutor = scanExecutor;
+    this.stateStore = stateStore;
   }
 
   public List<Procezz> getProcezzList() {
-    return internalProcezzList;
+    return internalProcezzStore.getProcezzList();
+  }
+
+  /**
+   * Must be called after the agent or one of its procezzes was modified, so that the serialized
+   * agent document is renewed and the changes are broadcasted.
+   */
+  public void markAgentChanged() {
+    agentVersion.incrementAndGet();
+
+    final Agent agent = agentObject;
+    stateStore.requestPersist(agent == null ? null : agent.getId(),
+        internalProcezzStore.getProcezzList());
+
+    if (agent != null) {
+      broadcastService.broadcastMessage(this::getAgentDocument);
+    }
   }
 
-  public void updateInternalProcezzList() throws ProcessingException, WebApplicationException {
-    synchronized (internalProcezzList) {
-      mergeProcezzListWithInternalList(getNewProcezzesFromOS());
+  /**
+   * Restores the procezzes of the previous run of the agent (see {@link ProcezzStateStore}). Must
+   * be called before the agent is registered.
+   */
+  public void restoreProcezzes() {
+    final ProcezzStateStore.State state = stateStore.restore();
+
+    if (state == null) {
+      return;
+    }
+
+    restoredAgentId = state.getAgentId();
+
+    synchronized (mergeLock) {
+      for (final Procezz procezz : state.getProcezzes()) {
+        if (internalProcezzStore.findById(procezz.getId()) == null) {
+          validateRestoredPid(procezz);
+          procezzUtility.initializeRestoredProcezz(procezz);
+          internalProcezzStore.add(procezz);
+        }
+      }
     }
   }
 
-  public Procezz updateRestartedProcezz(final Procezz oldProcezz) throws ProcezzNotFoundException,
-      ProcezzManagementTypeNotFoundException, ProcezzManagementTypeIncompatibleException {
+  /**
+   * Returns the ID of the agent before the restart of the agent or null, if unknown.
+   */
+  public String getRestoredAgentId() {
+    return restoredAgentId;
+  }
+
+  /**
+   * Resets the PID of a restored procezz, if the PID was reused by another process in the
+   * meantime, e.g., after a reboot. The procezz is then treated as stopped by the next scan and
+   * found again by its identification property or user execution command, if it was restarted.
+   */
+  private void validateRestoredPid(final Procezz procezz) {
+    if (!ProcFSAbstraction.isAvailable()) {
+      // the first scan examines the PID
+      return;
+    }
+
+    String execCMD;
 
-    Procezz possibleRestartedProcezz;
     try {
-      possibleRestartedProcezz =
-          procezzUtility.findProcezzInList(oldProcezz, getNewProcezzesFromOS());
+      execCMD = ProcFSAbstraction.findCommandLineForPID(procezz.getPid());
+    } catch (final IOException e) {
+      // process terminated
+      execCMD = null;
+    }
+
+    final boolean sameProcess = execCMD != null && !execCMD.isEmpty()
+        && (execCMD.equals(procezz.getOsExecutionCommand())
+            || execCMD.equals(procezz.getAgentExecutionCommand())
+            || execCMD.equals(procezz.getUserExecutionCommand()));
+
+    if (!sameProcess) {
+      procezz.setPid(0);
+    }
+  }
+
+  /**
+   * Returns the serialized agent document. The document is only serialized again if the agent was
+   * modified (see {@link #markAgentChanged()}) since the last call.
+   */
+  public SerializedAgentDocument getAgentDocument() throws DocumentSerializationException {
+    final Agent agent = agentObject;
+
+    // read the version before serializing, modifications during the
+    // serialization therefore result in a new document for the next call
+    final long version = agentVersion.get();
+
+    final SerializedAgentDocument cachedDocument = agentDocument;
+
+    if (cachedDocument != null && cachedDocument.isUpToDate(agent, version)) {
+      return cachedDocument;
     }
 
-    catch (final ProcezzNotFoundException e) {
-      throw new ProcezzNotFoundException(
-          ResponseUtil.PROCEZZ_STARTED + ResponseUtil.ERROR_PROCEZZ_START_NOT_FOUND, e, oldProcezz);
+    final byte[] documentBytes = agent == null ? EMPTY_AGENT_DOCUMENT
+        : converter.writeDocument(new JSONAPIDocument<>(agent));
+
+    final SerializedAgentDocument newDocument = new SerializedAgentDocument(agent, version,
+        documentTagPrefix + documentCounter.incrementAndGet(), documentBytes);
+
+    agentDocument = newDocument;
+
+    return newDocument;
+  }
+
+  /**
+   * Scans all OS procezzes and merges them with the internal procezz list.
+   *
+   * @return true if procezzes were added, stopped or restarted or new procezzes must be examined
+   *         again
+   */
+  public boolean updateInternalProcezzList() throws ProcessingException, WebApplicationException {
+    if (agentObject == null) {
+      LOGGER.warn("No agent object in internal repository. The agent will not detect procezzes");
+      return false;
+    }
+
+    synchronized (mergeLock) {
+      final long scanStartTime = System.currentTimeMillis();
+      final Map<String, List<Procezz>> scanResults = scanOSProcezzes(null);
+
+      return mergeProcezzListWithInternalList(flatten(scanResults),
+          findRunningPIDs(scanResults), scanStartTime);
+    }
+  }
+
+  /**
+   * Updates the internal procezz list only for the passed started and terminated PIDs instead of
+   * scanning all OS procezzes. Internal procezzes whose PID is not in the set of running PIDs are
+   * treated as stopped, exactly as for a full scan. Deferred new procezzes of previous updates are
+   * examined again.
+   *
+   * @param runningPids all PIDs that are currently running
+   * @param startedPids PIDs that were started since the last update
+   * @param terminatedPids PIDs that terminated since the last update
+   */
+  public void updateInternalProcezzListForPIDs(final Set<Long> runningPids,
+      final Collection<Long> startedPids, final Collection<Long> terminatedPids) {
+
+    if (agentObject == null) {
+      return;
     }
 
-    catch (final ProcezzManagementTypeNotFoundException e) {
-      throw new ProcezzManagementTypeNotFoundException(
-          ResponseUtil.PROCEZZ_STARTED + ResponseUtil.ERROR_PROCEZZ_TYPE_NOT_FOUND_DETAIL
-              + ResponseUtil.UNEXCPECTED_ERROR_USER_NOTIFICATION,
-          e, oldProcezz);
+    final boolean internalProcezzTerminated =
+        terminatedPids.stream().anyMatch(pid -> internalProcezzStore.findByPid(pid) != null);
+
+    if (startedPids.isEmpty() && !internalProcezzTerminated && deferredPids.isEmpty()) {
+      // changes of unrelated processes
+      return;
     }
 
-    catch (final ProcezzManagementTypeIncompatibleException e) {
-      throw new ProcezzManagementTypeIncompatibleException(
-          ResponseUtil.PROCEZZ_STARTED + ResponseUtil.ERROR_PROCEZZ_TYPE_INCOMPATIBLE_COMP
-              + ResponseUtil.UNEXCPECTED_ERROR_USER_NOTIFICATION,
-          e, oldProcezz);
+    synchronized (mergeLock) {
+      final Set<Long> pidsToScan = new HashSet<Long>(startedPids);
+      pidsToScan.addAll(deferredPids);
+      pidsToScan.retainAll(runningPids);
+
+      final long scanStartTime = System.currentTimeMillis();
+      final Map<String, List<Procezz>> scanResults =
+          pidsToScan.isEmpty() ? null : scanOSProcezzes(pidsToScan);
+
+      mergeProcezzListWithInternalList(flatten(scanResults), runningPids, scanStartTime);
     }
+  }
+
+  /**
+   * Updates the internal procezz after it was restarted and found again as the passed OS procezz.
+   * The caller must hold the monitor of the internal procezz.
+   */
+  public Procezz updateRestartedProcezz(final Procezz internalProcezz,
+      final Procezz restartedProcezz) {
 
-    final Procezz internalProcezz = findProcezzByID(oldProcezz.getId());
+    internalProcezzStore.updatePid(internalProcezz, restartedProcezz.getPid());
 
-    procezzUtility.copyAgentAccessibleProcezzAttributeValues(possibleRestartedProcezz,
-        internalProcezz);
+    procezzUtility.copyAgentAccessibleProcezzAttributeValues(restartedProcezz, internalProcezz);
 
     // reset possible error state (user restarted crashed procezz)
     internalProcezz.setErrorOccured(false);
@@ -95,6 +269,8 @@ public final class InternalRepository {
 
     internalProcezz.setWasFoundByBackend(false);
 
+    markAgentChanged();
+
     return internalProcezz;
 
   }
@@ -106,182 +282,293 @@ public final class InternalRepository {
       return new ArrayList<Procezz>();
     }
 
-    final List<Procezz> newOSProcezzList = new ArrayList<Procezz>();
+    return flatten(scanOSProcezzes(null));
+  }
+
+  /**
+   * Lets every managementType fetch its procezzList concurrently (see {@link ProcezzScanExecutor}).
+   *
+   * @param pids PIDs to examine or null for all OS procezzes
+   * @return procezzLists of the managementTypes that finished their scan in time, indexed by the
+   *         managementType descriptor
+   */
+  private Map<String, List<Procezz>> scanOSProcezzes(final Collection<Long> pids) {
+    final Map<String, Callable<List<Procezz>>> scans =
+        new LinkedHashMap<String, Callable<List<Procezz>>>();
+
+    final Agent agent = agentObject;
 
-    // Take every managementType and let them fetch the procezzLists
     for (final ProcezzManagementType managementType : this.procezzMngTypeFactory
         .getAllProcezzManagementTypes()) {
-      newOSProcezzList.addAll(managementType.getProcezzListFromOsAndSetAgent(agentObject));
+      scans.put(managementType.getManagementTypeDescriptor(),
+          () -> pids == null ? managementType.getProcezzListFromOsAndSetAgent(agent)
+              : managementType.getProcezzListFromOsForPIDs(pids, agent));
+    }
+
+    return scanExecutor.scanAll(scans);
+  }
+
+  private List<Procezz> flatten(final Map<String, List<Procezz>> scanResults) {
+    final List<Procezz> newOSProcezzList = new ArrayList<Procezz>();
+
+    if (scanResults != null) {
+      scanResults.values().forEach(newOSProcezzList::addAll);
     }
 
     return newOSProcezzList;
   }
 
+  /**
+   * Returns the PIDs of all running procezzes for a full scan. Internal procezzes of
+   * managementTypes whose scan failed or exceeded the deadline are unknown and therefore treated as
+   * running, i.e., they are kept unchanged until the next scan.
+   *
+   * @return null, if all managementTypes finished their scan, i.e., the scanned procezzes are
+   *         exactly the running procezzes
+   */
+  private Set<Long> findRunningPIDs(final Map<String, List<Procezz>> scanResults) {
+    final List<ProcezzManagementType> managementTypes =
+        this.procezzMngTypeFactory.getAllProcezzManagementTypes();
+
+    if (scanResults.size() == managementTypes.size()) {
+      return null;
+    }
+
+    final Set<Long> runningPids = new HashSet<Long>();
+
+    scanResults.values()
+        .forEach(procezzes -> procezzes.forEach(procezz -> runningPids.add(procezz.getPid())));
+
+    for (final Procezz procezz : internalProcezzStore.getProcezzList()) {
+      if (!scanResults.containsKey(procezz.getProcezzManagementType())) {
+        runningPids.add(procezz.getPid());
+      }
+    }
+
+    return runningPids;
+  }
+
   public void mergeProcezzListWithInternalList(final List<Procezz> newProcezzListFromOS) {
+    synchronized (mergeLock) {
+      mergeProcezzListWithInternalList(newProcezzListFromOS, null, System.currentTimeMillis());
+    }
+  }
+
+  /**
+   * @param runningPids PIDs of all running OS procezzes or null, if newProcezzListFromOS contains
+   *        all running OS procezzes
+   * @return true if procezzes were added, stopped or restarted or new procezzes must be examined
+   *         again
+   */
+  private boolean mergeProcezzListWithInternalList(final List<Procezz> newProcezzListFromOS,
+      final Set<Long> runningPids, final long scanStartTime) {
 
     // newProcezzListFromOS may contain duplicates, since multiple managementTypes
     // may find the same OS process
-    final List<Procezz> newProcezzListNoDuplicates =
-        removeDuplicatesInProcezzList(newProcezzListFromOS);
+    final Map<Long, Procezz> newProcezzesByPID = indexProcezzesByPID(newProcezzListFromOS);
 
-    synchronized (internalProcezzList) {
+    LOGGER.info("Updating procezzList at: {}", new Date());
 
-      LOGGER.info("Updating procezzList at: {}", new Date());
+    // Check if already obtained PIDs are still in the new obtained procezzList
+    final List<Procezz> stoppedProcezzes = getStoppedProcezzesOfInternalList(newProcezzesByPID,
+        runningPids == null ? newProcezzesByPID.keySet() : runningPids);
 
-      // Check if already obtained PIDs are still in the new obtained procezzList
-      final List<Procezz> stoppedProcezzes =
-          getStoppedProcezzesOfInternalList(newProcezzListNoDuplicates);
+    // Check if a running procezz was restarted by agent
+    // and update old procezz entity
+    final boolean stoppedProcezzesChanged =
+        updateStoppedProcezzes(stoppedProcezzes, newProcezzesByPID, scanStartTime);
 
-      // Check if a running procezz was restarted by agent
-      // and update old procezz entity
-      updateStoppedProcezzes(stoppedProcezzes, newProcezzListNoDuplicates);
+    // procezzes that are restarted concurrently (e.g. by a REST request) carry the ID of their
+    // internal procezz and must not be added as new procezz
+    newProcezzesByPID.values().removeIf(p -> isRestartedDuringScan(p, scanStartTime));
 
-      // finally, add new-found (= remaining) procezzes to the internal storage
-      procezzUtility.initializeAndAddNewProcezzes(agentObject.getId(), newProcezzListNoDuplicates,
-          internalProcezzList);
+    // the ID of a procezz is derived from its working directory (see ProcezzIdGenerator),
+    // procezzes whose working directory was not resolved in time are added by a later update
+    deferredPids.clear();
+    newProcezzesByPID.values().stream().filter(p -> p.getWorkingDirectory() == null)
+        .forEach(p -> deferredPids.add(p.getPid()));
+    newProcezzesByPID.keySet().removeAll(deferredPids);
 
-      agentObject.setProcezzes(internalProcezzList);
+    // finally, add new-found (= remaining) procezzes to the internal storage
+    final List<Procezz> newProcezzes = new ArrayList<Procezz>(newProcezzesByPID.values());
+    procezzUtility.initializeNewProcezzes(agentObject.getIP() + ":" + agentObject.getPort(),
+        newProcezzes, id -> internalProcezzStore.findById(id) != null);
+    newProcezzes.forEach(internalProcezzStore::add);
 
-      if (broadcastService.getNewRegistration().get() || stoppedProcezzes.size() > 0
-          || newProcezzListNoDuplicates.size() > 0) {
-        broadcastService.setNewRegistrationFlag(false);
-        broadcastService.broadcastMessage(agentObject);
-      }
+    agentObject.setProcezzes(internalProcezzStore.getProcezzList());
 
+    final boolean changed = stoppedProcezzesChanged || !newProcezzes.isEmpty();
+
+    if (changed) {
+      markAgentChanged();
     }
 
-  }
+    return changed || !deferredPids.isEmpty();
 
-  public List<Procezz> removeDuplicatesInProcezzList(final List<Procezz> newProcezzListFromOS) {
-    return new ArrayList<Procezz>(new HashSet<Procezz>(newProcezzListFromOS));
   }
 
-  private void updateStoppedProcezzes(final List<Procezz> stoppedProcezzes,
-      final List<Procezz> newProcezzListFromOS) {
+  private Map<Long, Procezz> indexProcezzesByPID(final List<Procezz> procezzList) {
+    final Map<Long, Procezz> procezzesByPID = new LinkedHashMap<Long, Procezz>();
 
-    for (final Procezz procezz : stoppedProcezzes) {
+    for (final Procezz procezz : procezzList) {
+      procezzesByPID.putIfAbsent(procezz.getPid(), procezz);
+    }
+
+    return procezzesByPID;
+  }
 
-      // Every execCMD of a restarted procezz has a unique explorviz flag
-      Procezz possibleProcezz;
-      try {
-        possibleProcezz =
-            findProcezzInListByExecCMD(procezz.getUserExecutionCommand(), newProcezzListFromOS);
+  private boolean updateStoppedProcezzes(final List<Procezz> stoppedProcezzes,
+      final Map<Long, Procezz> newProcezzesByPID, final long scanStartTime) {
 
-        // Procezz has been restarted correctly
+    if (stoppedProcezzes.isEmpty()) {
+      return false;
+    }
 
-        procezz.setStopped(false);
-        procezz.setErrorOccured(false);
-        procezz.setErrorMessage(null);
+    // Every execCMD of a restarted procezz has a unique explorviz flag
+    final Map<String, Procezz> newProcezzesByFlag = new HashMap<String, Procezz>();
+    final Map<String, Procezz> newProcezzesByExecCMD = new HashMap<String, Procezz>();
 
-        procezz.setPid(possibleProcezz.getPid());
-        procezz.setUserExecutionCommand(possibleProcezz.getOsExecutionCommand());
-        procezz.setMonitoredFlag(true);
+    for (final Procezz newProcezz : newProcezzesByPID.values()) {
+      final String identificationProperty = findIdentificationProperty(newProcezz);
 
-        newProcezzListFromOS.remove(possibleProcezz);
+      if (identificationProperty != null) {
+        newProcezzesByFlag.putIfAbsent(identificationProperty, newProcezz);
       }
 
-      catch (final ProcezzNotFoundException e) {
-        // Procezz loss
+      newProcezzesByExecCMD.putIfAbsent(newProcezz.getOsExecutionCommand(), newProcezz);
+    }
+
+    boolean changed = false;
 
-        if (!procezz.isStopped()) {
-          // Unexpected Procezz loss
-          // that was not already discovered
-          procezz.setStopped(true);
-          procezz.setErrorOccured(true);
-          procezz.setErrorMessage(
-              "Procezz could not be found in latest procezzList. Maybe an error occured.");
+    for (final Procezz procezz : stoppedProcezzes) {
+      synchronized (procezz) {
+        // skip procezzes that are currently restarted or were modified after the OS scan started
+        if (!procezz.isRestart() && procezz.getLastDiscoveryTime() <= scanStartTime) {
+          changed |= updateStoppedProcezz(procezz, newProcezzesByPID, newProcezzesByFlag,
+              newProcezzesByExecCMD);
         }
       }
     }
-  }
 
-  private List<Procezz> getStoppedProcezzesOfInternalList(final List<Procezz> newProcezzList) {
+    return changed;
+  }
 
-    final List<Procezz> stoppedProcezzes = new ArrayList<Procezz>();
+  /**
+   * @return true if the procezz was modified
+   */
+  private boolean updateStoppedProcezz(final Procezz procezz,
+      final Map<Long, Procezz> newProcezzesByPID, final Map<String, Procezz> newProcezzesByFlag,
+      final Map<String, Procezz> newProcezzesByExecCMD) {
 
-    synchronized (internalProcezzList) {
+    Procezz possibleProcezz = newProcezzesByFlag.get(procezz.getId());
 
-      for (final Procezz procezz : internalProcezzList) {
+    if (possibleProcezz == null && procezz.getUserExecutionCommand() != null) {
+      possibleProcezz = newProcezzesByExecCMD.get(procezz.getUserExecutionCommand());
+    }
 
-        final Procezz possibleProcezz = findProcezzInListByPID(procezz.getPid(), newProcezzList);
+    // a new procezz may only be assigned to a single internal procezz
+    if (possibleProcezz != null
+        && newProcezzesByPID.remove(possibleProcezz.getPid()) != null) {
 
-        if (possibleProcezz == null) {
-          // Procezz not found in latest OS list = Old procezz, maybe restarted
-          stoppedProcezzes.add(procezz);
-        } else {
-          // Procezz is still running
-          possibleProcezz.setStopped(false);
-          newProcezzList.remove(possibleProcezz);
-        }
+      // Procezz has been restarted correctly
 
-        procezz.setAgent(agentObject);
-      }
-    }
+      procezz.setStopped(false);
+      procezz.setErrorOccured(false);
+      procezz.setErrorMessage(null);
 
-    return stoppedProcezzes;
+      internalProcezzStore.updatePid(procezz, possibleProcezz.getPid());
+      procezz.setUserExecutionCommand(possibleProcezz.getOsExecutionCommand());
+      procezz.setMonitoredFlag(true);
 
-  }
+      return true;
 
-  private Procezz findProcezzInListByExecCMD(final String userExecutionCommand,
-      final List<Procezz> procezzList) throws ProcezzNotFoundException {
-    for (final Procezz possibleProcezz : procezzList) {
+    } else if (!procezz.isStopped()) {
+      // Procezz loss
 
-      final String osExecCMD = possibleProcezz.getOsExecutionCommand();
+      // Unexpected Procezz loss
+      // that was not already discovered
+      procezz.setStopped(true);
+      procezz.setErrorOccured(true);
+      procezz.setErrorMessage(
+          "Procezz could not be found in latest procezzList. Maybe an error occured.");
 
-      if (userExecutionCommand != null && userExecutionCommand.equals(osExecCMD)) {
-        return possibleProcezz;
-      }
+      return true;
     }
 
-    throw new ProcezzNotFoundException(ResponseUtil.PROCEZZ_NOT_FOUND_IN_LIST, new Exception());
+    return false;
   }
 
-  private Procezz findProcezzInListByPID(final long PID, final List<Procezz> procezzList) {
+  private boolean isRestartedDuringScan(final Procezz newProcezz, final long scanStartTime) {
+    final Procezz internalProcezz =
+        internalProcezzStore.findById(findIdentificationProperty(newProcezz));
 
-    synchronized (internalProcezzList) {
+    return internalProcezz != null
+        && (internalProcezz.isRestart() || internalProcezz.getLastDiscoveryTime() > scanStartTime);
+  }
 
-      for (final Procezz possibleProcezz : procezzList) {
+  private String findIdentificationProperty(final Procezz procezz) {
+    try {
+      return procezzMngTypeFactory.getProcezzManagement(procezz.getProcezzManagementType())
+          .findProcezzIdentificationProperty(procezz);
+    } catch (final ProcezzManagementTypeNotFoundException e) {
+      return null;
+    }
+  }
 
-        final long tempPID = possibleProcezz.getPid();
+  private List<Procezz> getStoppedProcezzesOfInternalList(
+      final Map<Long, Procezz> newProcezzesByPID, final Set<Long> runningPids) {
 
-        if (PID == tempPID) {
-          return possibleProcezz;
-        }
+    final List<Procezz> stoppedProcezzes = new ArrayList<Procezz>();
 
+    for (final Procezz procezz : internalProcezzStore.getProcezzList()) {
+
+      if (!runningPids.contains(procezz.getPid())) {
+        // Procezz not found in latest OS list = Old procezz, maybe restarted
+        stoppedProcezzes.add(procezz);
       }
 
+      procezz.setAgent(agentObject);
     }
 
-    return null;
+    // Remove procezzes that are still running, only new-found procezzes remain
+    newProcezzesByPID.keySet().removeIf(pid -> internalProcezzStore.findByPid(pid) != null);
+
+    return stoppedProcezzes;
+
   }
 
   public Procezz findProcezzByID(final String id) throws ProcezzNotFoundException {
-    synchronized (internalProcezzList) {
-      final Procezz procezzInCache = internalProcezzList.stream().filter(Objects::nonNull)
-          .filter(p -> p.getId().equals(id)).findFirst().orElse(null);
+    final Procezz procezzInCache = internalProcezzStore.findById(id);
 
-      if (procezzInCache == null) {
-        throw new ProcezzNotFoundException(ResponseUtil.ERROR_PROCEZZ_ID_NOT_FOUND,
-            new Exception());
-      }
-
-      return procezzInCache;
+    if (procezzInCache == null) {
+      throw new ProcezzNotFoundException(ResponseUtil.ERROR_PROCEZZ_ID_NOT_FOUND,
+          new Exception());
     }
+
+    return procezzInCache;
   }
 
-  public Procezz handleProcezzPatchRequest(final Procezz procezz) throws ProcezzNotFoundException,
+  /**
+   * Applies a PATCH request to the internal procezz.
+   *
+   * @param patchedAttributes names of the attributes of the request document, or null if all
+   *        attributes are applied
+   */
+  public Procezz handleProcezzPatchRequest(final Procezz procezz,
+      final Set<String> patchedAttributes) throws ProcezzNotFoundException,
       ProcezzMonitoringSettingsException, ProcezzManagementTypeNotFoundException,
-      ProcezzStopException, ProcezzStartException, ProcezzManagementTypeIncompatibleException {
+      ProcezzStopException {
 
-    synchronized (internalProcezzList) {
+    final Procezz procezzInCache = findProcezzByID(procezz.getId());
 
-      final Procezz procezzInCache = findProcezzByID(procezz.getId());
+    synchronized (procezzInCache) {
 
       procezzInCache.setWasFoundByBackend(procezz.wasFoundByBackend());
 
       final boolean oldStoppedState = procezzInCache.isStopped();
 
-      procezzUtility.copyUserAccessibleProcezzAttributeValues(procezz, procezzInCache, agentObject);
+      procezzUtility.copyUserAccessibleProcezzAttributeValues(procezz, procezzInCache, agentObject,
+          patchedAttributes);
 
       if (!oldStoppedState && procezzInCache.isStopped()) {
         procezzUtility.handleStop(procezzInCache);
@@ -293,9 +580,7 @@ public final class InternalRepository {
         procezzInCache.setErrorMessage(procezz.getErrorMessage());
       }
 
-      if (procezzInCache.isRestart()) {
-        return updateRestartedProcezz(procezzUtility.handleRestart(procezzInCache));
-      }
+      markAgentChanged();
 
       return procezzInCache;
     }
@@ -303,24 +588,17 @@ public final class InternalRepository {
 
   public Agent updateAgentProperties(final Agent agent) {
 
-    synchronized (internalProcezzList) {
-      agentObject.setName(agent.getName());
-      agentObject.setHidden(agent.isHidden());
-    }
-
-    return agentObject;
+    final Agent internalAgent = agentObject;
 
-  }
+    synchronized (internalAgent) {
+      internalAgent.setName(agent.getName());
+      internalAgent.setHidden(agent.isHidden());
+    }
 
-  public void restartProcezzByID(final String id)
-      throws ProcezzNotFoundException, ProcezzManagementTypeNotFoundException, ProcezzStopException,
-      ProcezzStartException, ProcezzManagementTypeIncompatibleException {
-    synchronized (internalProcezzList) {
+    markAgentChanged();
 
-      final Procezz procezzInCache = findProcezzByID(id);
+    return internalAgent;
 
-      updateRestartedProcezz(procezzUtility.handleRestart(procezzInCache));
-    }
   }
 
 }
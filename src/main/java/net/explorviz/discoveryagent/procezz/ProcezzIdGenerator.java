@@ -0,0 +1,74 @@
+package net.explorviz.discoveryagent.procezz;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.function.Predicate;
+import net.explorviz.shared.discovery.model.Procezz;
+
+/**
+ * Derives the ID of a new procezz from its identity instead of a counter, i.e., the same process
+ * obtains the same ID after a re-registration or a restart of the agent. The identity consists of
+ * the address of the agent, the execution command and the working directory. A procezz that was
+ * restarted with an explorviz model ID flag keeps the ID of the flag.
+ *
+ * <p>
+ * Identical processes (e.g. multiple workers of the same application) share an identity, their
+ * IDs are disambiguated by a suffix in the order of discovery.
+ */
+final class ProcezzIdGenerator {
+
+  // 48 bit, collisions of different identities are unlikely and handled like identical identities
+  private static final int HASH_BYTES = 6;
+
+  private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+  private ProcezzIdGenerator() {
+    // no need to instantiate
+  }
+
+  /**
+   * @param agentKey stable key of the agent, e.g., its address
+   * @param identificationProperty ID of the explorviz model ID flag of the procezz or null
+   * @param idInUse tests whether an ID is already assigned
+   */
+  static String deriveId(final String agentKey, final Procezz procezz,
+      final String identificationProperty, final Predicate<String> idInUse) {
+
+    if (identificationProperty != null && !idInUse.test(identificationProperty)) {
+      return identificationProperty;
+    }
+
+    final String baseId = hash(agentKey + '\0' + procezz.getOsExecutionCommand() + '\0'
+        + procezz.getWorkingDirectory());
+
+    String id = baseId;
+
+    for (int suffix = 2; idInUse.test(id); suffix++) {
+      id = baseId + "-" + suffix;
+    }
+
+    return id;
+  }
+
+  private static String hash(final String identity) {
+    final byte[] digest;
+
+    try {
+      digest = MessageDigest.getInstance("SHA-256")
+          .digest(identity.getBytes(StandardCharsets.UTF_8));
+    } catch (final NoSuchAlgorithmException e) {
+      // every Java platform supports SHA-256
+      throw new IllegalStateException(e);
+    }
+
+    final StringBuilder id = new StringBuilder(HASH_BYTES * 2);
+
+    for (int i = 0; i < HASH_BYTES; i++) {
+      id.append(HEX_DIGITS[(digest[i] >> 4) & 0xF]).append(HEX_DIGITS[digest[i] & 0xF]);
+    }
+
+    return id.toString();
+  }
+
+}
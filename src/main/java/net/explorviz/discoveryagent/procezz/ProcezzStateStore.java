@@ -0,0 +1,469 @@
+package net.explorviz.discoveryagent.procezz;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.BufferedReader;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import net.explorviz.shared.config.annotations.Config;
+import net.explorviz.shared.discovery.model.Procezz;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Persists the state of the internal procezzes (IDs, names, flags and commands) and the ID of the
+ * agent, so that an agent restart does not discover all procezzes from scratch.
+ *
+ * <p>
+ * Changes are appended to a journal, i.e., a line with the complete state of every changed
+ * procezz. The journal is periodically compacted into a snapshot. On startup, the snapshot is
+ * loaded and the journal is replayed. Replaying is idempotent, therefore a crash between writing
+ * the snapshot and truncating the journal is harmless, and a partially written last line of the
+ * journal is skipped.
+ *
+ * <p>
+ * Persisting runs on a single thread and concurrent requests are coalesced, callers never wait
+ * for the disk.
+ */
+public final class ProcezzStateStore {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ProcezzStateStore.class);
+
+  private static final String SNAPSHOT_FILENAME = "procezz-state.json";
+  private static final String JOURNAL_FILENAME = "procezz-state.journal";
+
+  private static final String AGENT_ID = "agentId";
+  private static final String PROCEZZES = "procezzes";
+
+  // journal entries
+  private static final String PROCEZZ_ENTRY = "procezz";
+  private static final String REMOVED_ENTRY = "removed";
+
+  // persisted attributes of a procezz, transient attributes (e.g. error states) are omitted
+  private static final String ID = "id";
+  private static final String PID = "pid";
+  private static final String NAME = "name";
+  private static final String OS_EXEC_CMD = "osExecutionCommand";
+  private static final String AGENT_EXEC_CMD = "agentExecutionCommand";
+  private static final String USER_EXEC_CMD = "userExecutionCommand";
+  private static final String PROPOSED_EXEC_CMD = "proposedExecutionCommand";
+  private static final String SHUTDOWN_CMD = "shutdownCommand";
+  private static final String WORKING_DIR = "workingDirectory";
+  private static final String PROGRAMMING_LANGUAGE = "programmingLanguage";
+  private static final String MANAGEMENT_TYPE = "procezzManagementType";
+  private static final String WEBSERVER = "webserverFlag";
+  private static final String HIDDEN = "hidden";
+  private static final String STOPPED = "stopped";
+  private static final String MONITORED = "monitoredFlag";
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  @Config("stateDirectory")
+  private String stateDirectory;
+
+  @Config("stateSnapshotRate")
+  private int snapshotRate;
+
+  private final ScheduledExecutorService persistExecutor =
+      Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "procezz-state");
+        thread.setDaemon(true);
+        return thread;
+      });
+
+  private final AtomicReference<PersistRequest> pendingRequest =
+      new AtomicReference<PersistRequest>();
+
+  // set after the state was restored, the persist thread is only started afterwards
+  private volatile boolean opened;
+
+  // only accessed by the persist thread after the store was opened
+  private Path statePath;
+  private OutputStream journal;
+  private int journalEntries;
+  // a failed append may have left a partial line, which would hide all subsequent entries
+  private boolean journalCorrupted;
+  private String persistedAgentId;
+  private final Map<String, ObjectNode> persistedProcezzes =
+      new LinkedHashMap<String, ObjectNode>();
+
+  public boolean isEnabled() {
+    return stateDirectory != null && !stateDirectory.trim().isEmpty();
+  }
+
+  /**
+   * Resolves the configured state directory, relative paths are resolved against the home
+   * directory of the user, i.e., the state does not depend on the start directory of the agent.
+   */
+  public static Path resolveStateDirectory(final String stateDirectory) {
+    return Paths.get(System.getProperty("user.home")).resolve(stateDirectory.trim())
+        .toAbsolutePath().normalize();
+  }
+
+  /**
+   * Loads the persisted state and starts persisting changes afterwards. Must be called once before
+   * {@link #requestPersist(String, List)}.
+   *
+   * @return the persisted state or null, if persisting is disabled or the state is unreadable
+   */
+  public synchronized State restore() {
+    if (!isEnabled() || opened) {
+      return null;
+    }
+
+    final Path newStatePath = resolveStateDirectory(stateDirectory);
+
+    try {
+      Files.createDirectories(newStatePath);
+
+      statePath = newStatePath;
+      readSnapshot();
+      replayJournal();
+
+      // a clean journal, e.g., without a partially written last line
+      writeSnapshot();
+    } catch (final IOException e) {
+      LOGGER.error("Could not restore procezz state of {}, starting without persisted state. "
+          + "Error: {}", newStatePath.toAbsolutePath(), e.toString());
+      statePath = null;
+      persistedProcezzes.clear();
+      return null;
+    }
+
+    opened = true;
+
+    if (snapshotRate > 0) {
+      persistExecutor.scheduleWithFixedDelay(this::compactJournal, snapshotRate, snapshotRate,
+          TimeUnit.MILLISECONDS);
+    }
+
+    final List<Procezz> procezzes = new ArrayList<Procezz>();
+    persistedProcezzes.values().forEach(state -> procezzes.add(toProcezz(state)));
+
+    LOGGER.info("Restored {} procezzes from {}", procezzes.size(), statePath.toAbsolutePath());
+
+    return new State(persistedAgentId, procezzes);
+  }
+
+  /**
+   * Persists the passed state asynchronously. The procezzes are read on the persist thread,
+   * therefore requests that are issued in quick succession are persisted at once.
+   *
+   * @param agentId ID of the agent or null, if the agent is not registered yet
+   * @param procezzList live list of all internal procezzes
+   */
+  public void requestPersist(final String agentId, final List<Procezz> procezzList) {
+    if (!opened) {
+      return;
+    }
+
+    if (pendingRequest.getAndSet(new PersistRequest(agentId, procezzList)) == null) {
+      persistExecutor.execute(this::persistPendingRequest);
+    }
+  }
+
+  private void persistPendingRequest() {
+    final PersistRequest request = pendingRequest.getAndSet(null);
+
+    if (request == null) {
+      return;
+    }
+
+    try {
+      appendChanges(request);
+    } catch (final IOException | RuntimeException e) { // NOPMD
+      // the next request persists the changes again, since they were not taken over
+      LOGGER.warn("Could not persist procezz state. Error: {}", e.toString());
+      journalCorrupted = true;
+    }
+  }
+
+  private void appendChanges(final PersistRequest request) throws IOException {
+    final List<ObjectNode> entries = new ArrayList<ObjectNode>();
+    final Map<String, ObjectNode> changedProcezzes = new LinkedHashMap<String, ObjectNode>();
+    final Set<String> currentIds = new HashSet<String>();
+
+    for (final Procezz procezz : request.procezzList) {
+      // procezzes without ID have not been initialized yet
+      if (procezz.getId() == null || !currentIds.add(procezz.getId())) {
+        continue;
+      }
+
+      final ObjectNode procezzState = toState(procezz);
+
+      if (!procezzState.equals(persistedProcezzes.get(procezz.getId()))) {
+        changedProcezzes.put(procezz.getId(), procezzState);
+
+        final ObjectNode entry = MAPPER.createObjectNode();
+        entry.set(PROCEZZ_ENTRY, procezzState);
+        entries.add(entry);
+      }
+    }
+
+    final List<String> removedIds = new ArrayList<String>(persistedProcezzes.keySet());
+    removedIds.removeAll(currentIds);
+
+    for (final String removedId : removedIds) {
+      final ObjectNode entry = MAPPER.createObjectNode();
+      entry.put(REMOVED_ENTRY, removedId);
+      entries.add(entry);
+    }
+
+    final String agentId = request.agentId == null ? persistedAgentId : request.agentId;
+
+    if (!Objects.equals(agentId, persistedAgentId)) {
+      final ObjectNode entry = MAPPER.createObjectNode();
+      entry.put(AGENT_ID, agentId);
+      entries.add(entry);
+    }
+
+    if (journalCorrupted) {
+      // the snapshot contains all changes, even those of previously failed snapshots
+      takeOverChanges(changedProcezzes, removedIds, agentId);
+      writeSnapshot();
+      journalCorrupted = false;
+      return;
+    }
+
+    if (entries.isEmpty()) {
+      return;
+    }
+
+    appendToJournal(entries);
+
+    // take over the changes only after they were written
+    takeOverChanges(changedProcezzes, removedIds, agentId);
+  }
+
+  private void takeOverChanges(final Map<String, ObjectNode> changedProcezzes,
+      final List<String> removedIds, final String agentId) {
+    persistedProcezzes.putAll(changedProcezzes);
+    persistedProcezzes.keySet().removeAll(removedIds);
+    persistedAgentId = agentId;
+  }
+
+  private void appendToJournal(final List<ObjectNode> entries) throws IOException {
+    if (journal == null) {
+      journal = new FileOutputStream(statePath.resolve(JOURNAL_FILENAME).toFile(), true);
+    }
+
+    final StringBuilder lines = new StringBuilder();
+
+    for (final ObjectNode entry : entries) {
+      lines.append(MAPPER.writeValueAsString(entry)).append('\n');
+    }
+
+    journal.write(lines.toString().getBytes(StandardCharsets.UTF_8));
+    journal.flush();
+    ((FileOutputStream) journal).getChannel().force(false);
+
+    journalEntries += entries.size();
+  }
+
+  private void compactJournal() {
+    if (journalEntries == 0) {
+      return;
+    }
+
+    try {
+      writeSnapshot();
+    } catch (final IOException e) {
+      LOGGER.warn("Could not write procezz state snapshot, keeping the journal. Error: {}",
+          e.toString());
+    }
+  }
+
+  /**
+   * Writes the persisted state to the snapshot and truncates the journal afterwards.
+   */
+  private void writeSnapshot() throws IOException {
+    final ObjectNode snapshot = MAPPER.createObjectNode();
+    snapshot.put(AGENT_ID, persistedAgentId);
+
+    final ArrayNode procezzes = snapshot.putArray(PROCEZZES);
+    persistedProcezzes.values().forEach(procezzes::add);
+
+    final Path snapshotPath = statePath.resolve(SNAPSHOT_FILENAME);
+    final Path tempSnapshotPath = statePath.resolve(SNAPSHOT_FILENAME + ".tmp");
+
+    try (FileOutputStream out = new FileOutputStream(tempSnapshotPath.toFile())) {
+      out.write(MAPPER.writeValueAsBytes(snapshot));
+      out.getChannel().force(false);
+    }
+
+    Files.move(tempSnapshotPath, snapshotPath, StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+
+    if (journal != null) {
+      journal.close();
+      journal = null;
+    }
+
+    // truncates the journal
+    journal = new FileOutputStream(statePath.resolve(JOURNAL_FILENAME).toFile(), false);
+    journalEntries = 0;
+  }
+
+  private void readSnapshot() throws IOException {
+    final Path snapshotPath = statePath.resolve(SNAPSHOT_FILENAME);
+
+    if (!Files.exists(snapshotPath)) {
+      return;
+    }
+
+    final JsonNode snapshot = MAPPER.readTree(Files.readAllBytes(snapshotPath));
+
+    applyAgentEntry(snapshot);
+
+    for (final JsonNode procezzState : snapshot.path(PROCEZZES)) {
+      putPersistedProcezz(procezzState);
+    }
+  }
+
+  private void replayJournal() throws IOException {
+    final Path journalPath = statePath.resolve(JOURNAL_FILENAME);
+
+    if (!Files.exists(journalPath)) {
+      return;
+    }
+
+    try (BufferedReader reader = Files.newBufferedReader(journalPath, StandardCharsets.UTF_8)) {
+      String line;
+
+      while ((line = reader.readLine()) != null) {
+        final JsonNode entry;
+
+        try {
+          entry = MAPPER.readTree(line);
+        } catch (final IOException e) {
+          // the agent was terminated while appending this entry, it was never taken over
+          LOGGER.warn("Skipping incomplete entry at the end of the procezz state journal");
+          return;
+        }
+
+        if (entry.has(PROCEZZ_ENTRY)) {
+          putPersistedProcezz(entry.get(PROCEZZ_ENTRY));
+        } else if (entry.has(REMOVED_ENTRY)) {
+          persistedProcezzes.remove(entry.get(REMOVED_ENTRY).asText());
+        } else if (entry.has(AGENT_ID)) {
+          applyAgentEntry(entry);
+        }
+      }
+    }
+  }
+
+  private void putPersistedProcezz(final JsonNode procezzState) {
+    // normalized, parsed numbers (e.g. small PIDs) are not equal to the numbers of toState
+    final Procezz procezz = toProcezz(procezzState);
+    persistedProcezzes.put(procezz.getId(), toState(procezz));
+  }
+
+  private void applyAgentEntry(final JsonNode entry) {
+    final JsonNode agentId = entry.get(AGENT_ID);
+
+    if (agentId != null && !agentId.isNull()) {
+      persistedAgentId = agentId.asText();
+    }
+  }
+
+  private ObjectNode toState(final Procezz procezz) {
+    final ObjectNode state = MAPPER.createObjectNode();
+    state.put(ID, procezz.getId());
+    state.put(PID, procezz.getPid());
+    state.put(NAME, procezz.getName());
+    state.put(OS_EXEC_CMD, procezz.getOsExecutionCommand());
+    state.put(AGENT_EXEC_CMD, procezz.getAgentExecutionCommand());
+    state.put(USER_EXEC_CMD, procezz.getUserExecutionCommand());
+    state.put(PROPOSED_EXEC_CMD, procezz.getProposedExecutionCommand());
+    state.put(SHUTDOWN_CMD, procezz.getShutdownCommand());
+    state.put(WORKING_DIR, procezz.getWorkingDirectory());
+    state.put(PROGRAMMING_LANGUAGE, procezz.getProgrammingLanguage());
+    state.put(MANAGEMENT_TYPE, procezz.getProcezzManagementType());
+    state.put(WEBSERVER, procezz.isWebserverFlag());
+    state.put(HIDDEN, procezz.isHidden());
+    state.put(STOPPED, procezz.isStopped());
+    state.put(MONITORED, procezz.isMonitoredFlag());
+    return state;
+  }
+
+  private Procezz toProcezz(final JsonNode state) {
+    final Procezz procezz =
+        new Procezz(state.path(PID).asLong(), textOrNull(state, OS_EXEC_CMD));
+    procezz.setId(textOrNull(state, ID));
+    procezz.setName(textOrNull(state, NAME));
+    procezz.setAgentExecutionCommand(textOrNull(state, AGENT_EXEC_CMD));
+    procezz.setUserExecutionCommand(textOrNull(state, USER_EXEC_CMD));
+    procezz.setProposedExecutionCommand(textOrNull(state, PROPOSED_EXEC_CMD));
+    procezz.setShutdownCommand(textOrNull(state, SHUTDOWN_CMD));
+    procezz.setWorkingDirectory(textOrNull(state, WORKING_DIR));
+    procezz.setProgrammingLanguage(textOrNull(state, PROGRAMMING_LANGUAGE));
+    procezz.setProcezzManagementType(textOrNull(state, MANAGEMENT_TYPE));
+    procezz.setWebserverFlag(state.path(WEBSERVER).asBoolean());
+    procezz.setHidden(state.path(HIDDEN).asBoolean());
+    procezz.setStopped(state.path(STOPPED).asBoolean());
+    procezz.setMonitoredFlag(state.path(MONITORED).asBoolean());
+    return procezz;
+  }
+
+  private String textOrNull(final JsonNode state, final String field) {
+    final JsonNode value = state.get(field);
+    return value == null || value.isNull() ? null : value.asText();
+  }
+
+  /**
+   * Persisted state of the agent.
+   */
+  public static final class State {
+
+    private final String agentId;
+    private final List<Procezz> procezzes;
+
+    private State(final String agentId, final List<Procezz> procezzes) {
+      this.agentId = agentId;
+      this.procezzes = Collections.unmodifiableList(procezzes);
+    }
+
+    /**
+     * Returns the ID of the agent at the time of persisting or null, if it was not registered.
+     */
+    public String getAgentId() {
+      return agentId;
+    }
+
+    public List<Procezz> getProcezzes() {
+      return procezzes;
+    }
+  }
+
+  private static final class PersistRequest {
+
+    private final String agentId;
+    private final List<Procezz> procezzList;
+
+    PersistRequest(final String agentId, final List<Procezz> procezzList) {
+      this.agentId = agentId;
+      this.procezzList = procezzList;
+    }
+  }
+
+}
@@ -0,0 +1,76 @@
+package net.explorviz.discoveryagent.procezz;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import net.explorviz.shared.discovery.model.Procezz;
+
+/**
+ * Internal storage of all procezzes known to the agent. Procezzes are indexed by their ID and PID,
+ * so that lookups during a merge do not require a scan of the entire list.
+ *
+ * <p>
+ * All operations are thread-safe and never block readers: the procezz list is a copy-on-write list
+ * that can be iterated (e.g. for serialization) while procezzes are added. Modifications of a
+ * single procezz must be guarded by the monitor of the respective procezz object.
+ * </p>
+ */
+final class ProcezzStore {
+
+  private final List<Procezz> procezzList = new CopyOnWriteArrayList<Procezz>();
+  private final ConcurrentMap<String, Procezz> procezzesById =
+      new ConcurrentHashMap<String, Procezz>();
+  private final ConcurrentMap<Long, Procezz> procezzesByPid =
+      new ConcurrentHashMap<Long, Procezz>();
+
+  public List<Procezz> getProcezzList() {
+    return procezzList;
+  }
+
+  public void add(final Procezz procezz) {
+    procezzesById.put(procezz.getId(), procezz);
+    procezzesByPid.put(procezz.getPid(), procezz);
+    procezzList.add(procezz);
+  }
+
+  public Procezz findById(final String id) {
+    return id == null ? null : procezzesById.get(id);
+  }
+
+  public Procezz findByPid(final long pid) {
+    return procezzesByPid.get(pid);
+  }
+
+  /**
+   * Sets the PID of a stored procezz, e.g., after a restart, and updates the PID index.
+   */
+  public void updatePid(final Procezz procezz, final long newPid) {
+    procezzesByPid.remove(procezz.getPid(), procezz);
+    procezz.setPid(newPid);
+    procezzesByPid.put(newPid, procezz);
+  }
+
+  /**
+   * Rebuilds all indexes. Must be called after IDs of stored procezzes were reassigned. Concurrent
+   * lookups by the new IDs succeed as soon as the respective procezz is re-indexed.
+   */
+  public void reindex() {
+    final Map<String, Procezz> newProcezzesById = new HashMap<String, Procezz>();
+    final Map<Long, Procezz> newProcezzesByPid = new HashMap<Long, Procezz>();
+
+    for (final Procezz procezz : procezzList) {
+      newProcezzesById.put(procezz.getId(), procezz);
+      newProcezzesByPid.put(procezz.getPid(), procezz);
+    }
+
+    procezzesById.putAll(newProcezzesById);
+    procezzesById.keySet().retainAll(newProcezzesById.keySet());
+
+    procezzesByPid.putAll(newProcezzesByPid);
+    procezzesByPid.keySet().retainAll(newProcezzesByPid.keySet());
+  }
+
+}
@@ -1,22 +1,18 @@
 package net.explorviz.discoveryagent.procezz;
 
-import java.io.IOException;
+import java.util.HashSet;
 import java.util.List;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.Set;
+import java.util.function.Predicate;
 import javax.inject.Inject;
-import net.explorviz.discoveryagent.procezz.discovery.DiscoveryStrategy;
+import net.explorviz.discoveryagent.procezz.discovery.DiscoveryStrategyEngine;
 import net.explorviz.discoveryagent.procezz.discovery.DiscoveryStrategyFactory;
 import net.explorviz.discoveryagent.procezz.management.ProcezzManagementType;
 import net.explorviz.discoveryagent.procezz.management.ProcezzManagementTypeFactory;
 import net.explorviz.discoveryagent.services.MonitoringFilesystemService;
-import net.explorviz.shared.discovery.exceptions.GenericNoConnectionException;
 import net.explorviz.shared.discovery.exceptions.mapper.ResponseUtil;
-import net.explorviz.shared.discovery.exceptions.procezz.ProcezzGenericException;
-import net.explorviz.shared.discovery.exceptions.procezz.ProcezzManagementTypeIncompatibleException;
 import net.explorviz.shared.discovery.exceptions.procezz.ProcezzManagementTypeNotFoundException;
 import net.explorviz.shared.discovery.exceptions.procezz.ProcezzMonitoringSettingsException;
-import net.explorviz.shared.discovery.exceptions.procezz.ProcezzNotFoundException;
 import net.explorviz.shared.discovery.exceptions.procezz.ProcezzStartException;
 import net.explorviz.shared.discovery.exceptions.procezz.ProcezzStopException;
 import net.explorviz.shared.discovery.model.Agent;
@@ -28,7 +24,15 @@ public final class ProcezzUtility {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(ProcezzUtility.class);
 
-  private final AtomicLong counter = new AtomicLong(0);
+  // JSON API attribute names of the user accessible attributes
+  private static final String NAME_ATTRIBUTE = "name";
+  private static final String SHUTDOWN_COMMAND_ATTRIBUTE = "shutdownCommand";
+  private static final String WEBSERVER_FLAG_ATTRIBUTE = "webserverFlag";
+  private static final String HIDDEN_ATTRIBUTE = "hidden";
+  private static final String STOPPED_ATTRIBUTE = "stopped";
+  private static final String AOP_CONTENT_ATTRIBUTE = "aopContent";
+  private static final String MONITORED_FLAG_ATTRIBUTE = "monitoredFlag";
+  private static final String USER_EXEC_CMD_ATTRIBUTE = "userExecutionCommand";
 
   private final MonitoringFilesystemService filesystemService;
   private final ProcezzManagementTypeFactory procezzMngTypeFactory;
@@ -52,121 +56,104 @@ public final class ProcezzUtility {
     managementType.killProcezz(procezzInCache);
   }
 
-  public Procezz handleRestart(final Procezz procezz)
-      throws ProcezzManagementTypeNotFoundException, ProcezzStopException, ProcezzStartException,
-      ProcezzNotFoundException, ProcezzManagementTypeIncompatibleException {
+  /**
+   * Prepares the execution command of a procezz for its restart, i.e., injects or removes the
+   * monitoring agent. Killing and starting the procezz is left to the caller, so that multiple
+   * procezzes can be restarted at once.
+   */
+  public void prepareRestart(final Procezz procezz)
+      throws ProcezzManagementTypeNotFoundException, ProcezzStartException {
 
     final ProcezzManagementType managementType =
         this.procezzMngTypeFactory.getProcezzManagement(procezz.getProcezzManagementType());
 
     LOGGER.info("Restarting procezz");
 
-    managementType.killProcezz(procezz);
-
     if (procezz.isStopped()) {
       throw new ProcezzStartException(ResponseUtil.ERROR_PROCEZZ_START_STOPPED, new Exception(),
           procezz);
-    } else {
-      // stopped flag not set -> restart process
-      if (procezz.isMonitoredFlag()) {
-        // restart with monitoring
-        managementType.injectMonitoringAgentInProcezz(procezz);
-
-      } else {
-        // restart without monitoring
-        managementType.removeMonitoringAgentInProcezz(procezz);
-        managementType.injectProcezzIdentificationProperty(procezz);
-      }
-
-      managementType.startProcezz(procezz);
+    }
 
+    // stopped flag not set -> restart process
+    if (procezz.isMonitoredFlag()) {
+      // restart with monitoring, the monitoring agent reads the configs from disk
       try {
-        // wait a short period of time,
-        // since restarted procezzes with
-        // a faulty execution command
-        // might appear as a running procezz for
-        // a small amount of time
-        TimeUnit.SECONDS.sleep(2);
-      } catch (final InterruptedException e) {
-        LOGGER.warn("Could not wait after starting a procezz.");
+        filesystemService.materializeConfigsForProcezz(procezz);
+      } catch (final ProcezzMonitoringSettingsException e) {
+        throw new ProcezzStartException(e.getMessage(), e, procezz);
       }
 
-      return procezz;
+      managementType.injectMonitoringAgentInProcezz(procezz);
+
+    } else {
+      // restart without monitoring
+      managementType.removeMonitoringAgentInProcezz(procezz);
+      managementType.injectProcezzIdentificationProperty(procezz);
     }
 
   }
 
-  public Procezz findProcezzInList(final Procezz procezz, final List<Procezz> procezzList)
-      throws ProcezzNotFoundException, ProcezzManagementTypeNotFoundException,
-      ProcezzManagementTypeIncompatibleException {
+  /**
+   * Assigns IDs to new procezzes and applies the discovery strategies.
+   *
+   * @param agentKey stable key of the agent, see {@link #createUniqureIdsForProcezzes}
+   * @param idInUse tests whether an ID is assigned to a known procezz
+   */
+  public void initializeNewProcezzes(final String agentKey,
+      final List<Procezz> newProcezzListFromOS, final Predicate<String> idInUse) {
 
-    final ProcezzManagementType managementType =
-        this.procezzMngTypeFactory.getProcezzManagement(procezz.getProcezzManagementType());
+    createUniqureIdsForProcezzes(agentKey, newProcezzListFromOS, idInUse);
 
-    for (final Procezz p : procezzList) {
+    // the same strategies for all new procezzes, even if plugin strategies are reloaded meanwhile
+    final DiscoveryStrategyEngine strategyEngine = DiscoveryStrategyFactory.giveStrategyEngine();
 
-      if (procezz.getProcezzManagementType().equals(p.getProcezzManagementType())) {
+    for (final Procezz newProcezz : newProcezzListFromOS) {
+      strategyEngine.applyStrategies(newProcezz);
+      filesystemService.loadConfigContentsIntoProcezz(newProcezz);
 
-        final boolean isEqual = managementType.compareProcezzesByIdentificationProperty(procezz, p);
-
-        if (isEqual) {
-          return p;
-        }
-
-      }
+      newProcezz.setLastDiscoveryTime(System.currentTimeMillis());
     }
-
-    throw new ProcezzNotFoundException(ResponseUtil.ERROR_PROCEZZ_FLAG_NOT_FOUND, new Exception());
   }
 
-  public void initializeAndAddNewProcezzes(final String idPrefix,
-      final List<Procezz> newProcezzListFromOS, final List<Procezz> internalProcezzList) {
-
-    try {
-      createUniqureIdsForProcezzes(idPrefix, newProcezzListFromOS);
-    } catch (ProcezzGenericException | GenericNoConnectionException e) {
-      LOGGER.error(
-          "Could not obtain unique IDs for procezzes. New procezzes WILL NOT be added to internal procezzlist Error: {}",
-          e.getMessage());
-    }
-
-    // Finally, add the new procezzes to the internalProcezzList
-    synchronized (internalProcezzList) {
-      for (final Procezz newProcezz : newProcezzListFromOS) {
-        applyStrategiesOnProcezz(newProcezz);
+  /**
+   * Assigns deterministic IDs to the passed procezzes (see {@link ProcezzIdGenerator}), i.e., the
+   * IDs do not depend on the registration of the agent.
+   *
+   * @param agentKey stable key of the agent, e.g., its IP and port
+   * @param idInUse tests whether an ID is assigned to a known procezz
+   */
+  public void createUniqureIdsForProcezzes(final String agentKey,
+      final List<Procezz> newProcezzList, final Predicate<String> idInUse) {
+    final Set<String> assignedIds = new HashSet<String>();
 
-        newProcezz.setLastDiscoveryTime(System.currentTimeMillis());
-
-        try {
-          filesystemService.createConfigFolderForProcezz(newProcezz);
-        } catch (final IOException e) {
-          LOGGER.error("Error when creating Subfolder for ID: {}. Error: {}", newProcezz.getId(),
-              e.getMessage());
-        }
+    for (final Procezz p : newProcezzList) {
+      final String id = ProcezzIdGenerator.deriveId(agentKey, p, findIdentificationProperty(p),
+          candidate -> assignedIds.contains(candidate) || idInUse.test(candidate));
 
-        internalProcezzList.add(newProcezz);
-      }
+      assignedIds.add(id);
+      p.setId(id);
     }
   }
 
-  public void createUniqureIdsForProcezzes(final String prefix, final List<Procezz> newProcezzList)
-      throws ProcezzGenericException, GenericNoConnectionException {
-    for (final Procezz p : newProcezzList) {
-      p.setId(prefix + "-" + counter.incrementAndGet());
+  private String findIdentificationProperty(final Procezz procezz) {
+    try {
+      return procezzMngTypeFactory.getProcezzManagement(procezz.getProcezzManagementType())
+          .findProcezzIdentificationProperty(procezz);
+    } catch (final ProcezzManagementTypeNotFoundException e) {
+      return null;
     }
   }
 
   public void applyStrategiesOnProcezz(final Procezz newProcezz) {
-    final List<DiscoveryStrategy> strategies = DiscoveryStrategyFactory.giveAllStrategies();
-
-    for (final DiscoveryStrategy strategy : strategies) {
-      final boolean isDesiredApp = strategy.applyEntireStrategy(newProcezz);
+    // the first matching strategy is applied
+    DiscoveryStrategyFactory.giveStrategyEngine().applyStrategies(newProcezz);
+  }
 
-      if (isDesiredApp) {
-        // found strategy, no need to apply remaining strategies
-        break;
-      }
-    }
+  /**
+   * Loads the monitoring config contents into a procezz of a previous run of the agent.
+   */
+  public void initializeRestoredProcezz(final Procezz restoredProcezz) {
+    filesystemService.loadConfigContentsIntoProcezz(restoredProcezz);
   }
 
   public void copyAgentAccessibleProcezzAttributeValues(final Procezz sourceProcezz,
@@ -177,27 +164,51 @@ public final class ProcezzUtility {
     targetProcezz.setLastDiscoveryTime(System.currentTimeMillis());
   }
 
+  /**
+   * Copies the user accessible attributes of a PATCH request. Attributes that were omitted, e.g.,
+   * by clients that requested a sparse fieldset, keep their values.
+   *
+   * @param patchedAttributes names of the attributes of the request document, or null if all
+   *        attributes are copied
+   */
   public void copyUserAccessibleProcezzAttributeValues(final Procezz sourceProcezz,
-      final Procezz targetProcezz, final Agent internalAgent)
+      final Procezz targetProcezz, final Agent internalAgent, final Set<String> patchedAttributes)
       throws ProcezzMonitoringSettingsException {
     LOGGER.info("updating procezz with id: {}", targetProcezz.getId());
 
-    targetProcezz.setName(sourceProcezz.getName());
-    targetProcezz.setShutdownCommand(sourceProcezz.getShutdownCommand());
-    targetProcezz.setWebserverFlag(sourceProcezz.isWebserverFlag());
-    targetProcezz.setHidden(sourceProcezz.isHidden());
-    targetProcezz.setStopped(sourceProcezz.isStopped());
-    targetProcezz.setRestart(sourceProcezz.isRestart());
+    final Predicate<String> isPatched =
+        attribute -> patchedAttributes == null || patchedAttributes.contains(attribute);
 
-    if (!targetProcezz.getAopContent().equals(sourceProcezz.getAopContent())) {
-      targetProcezz.setAopContent(sourceProcezz.getAopContent());
-      filesystemService.updateAopFileContentForProcezz(targetProcezz);
+    if (isPatched.test(NAME_ATTRIBUTE)) {
+      targetProcezz.setName(sourceProcezz.getName());
+    }
+    if (isPatched.test(SHUTDOWN_COMMAND_ATTRIBUTE)) {
+      targetProcezz.setShutdownCommand(sourceProcezz.getShutdownCommand());
+    }
+    if (isPatched.test(WEBSERVER_FLAG_ATTRIBUTE)) {
+      targetProcezz.setWebserverFlag(sourceProcezz.isWebserverFlag());
+    }
+    if (isPatched.test(HIDDEN_ATTRIBUTE)) {
+      targetProcezz.setHidden(sourceProcezz.isHidden());
+    }
+    if (isPatched.test(STOPPED_ATTRIBUTE)) {
+      targetProcezz.setStopped(sourceProcezz.isStopped());
+    }
+
+    // the aop.xml cannot be removed, only replaced
+    if (isPatched.test(AOP_CONTENT_ATTRIBUTE) && sourceProcezz.getAopContent() != null) {
+      filesystemService.updateAopFileContentForProcezz(targetProcezz,
+          sourceProcezz.getAopContent());
     }
 
     filesystemService.updateKiekerConfigForProcezz(targetProcezz, internalAgent.getIPPortOrName());
 
-    targetProcezz.setMonitoredFlag(sourceProcezz.isMonitoredFlag());
-    targetProcezz.setUserExecutionCommand(sourceProcezz.getUserExecutionCommand());
+    if (isPatched.test(MONITORED_FLAG_ATTRIBUTE)) {
+      targetProcezz.setMonitoredFlag(sourceProcezz.isMonitoredFlag());
+    }
+    if (isPatched.test(USER_EXEC_CMD_ATTRIBUTE)) {
+      targetProcezz.setUserExecutionCommand(sourceProcezz.getUserExecutionCommand());
+    }
 
   }
 
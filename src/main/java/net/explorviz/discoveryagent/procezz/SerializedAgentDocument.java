@@ -0,0 +1,64 @@
+package net.explorviz.discoveryagent.procezz;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.GZIPOutputStream;
+import javax.ws.rs.core.EntityTag;
+import net.explorviz.shared.discovery.model.Agent;
+
+/**
+ * Immutable, serialized JSON API document of the agent for a specific version of the internal
+ * state. Every instance has its own entity tag, which is therefore changed whenever the document is
+ * serialized again.
+ */
+public final class SerializedAgentDocument {
+
+  private final Agent agent;
+  private final long version;
+  private final EntityTag entityTag;
+  private final byte[] bytes;
+
+  private volatile byte[] gzippedBytes;
+
+  SerializedAgentDocument(final Agent agent, final long version, final String entityTagValue,
+      final byte[] bytes) {
+    this.agent = agent;
+    this.version = version;
+    // weak, since the gzipped and the plain representation share the tag
+    this.entityTag = new EntityTag(entityTagValue, true);
+    this.bytes = bytes;
+  }
+
+  boolean isUpToDate(final Agent currentAgent, final long currentVersion) {
+    return agent == currentAgent && version == currentVersion;
+  }
+
+  public EntityTag getEntityTag() {
+    return entityTag;
+  }
+
+  public byte[] getBytes() {
+    return bytes;
+  }
+
+  /**
+   * Returns the gzipped document. The document is compressed once on the first call.
+   */
+  public byte[] getGzippedBytes() throws IOException {
+    byte[] compressed = gzippedBytes;
+
+    if (compressed == null) {
+      final ByteArrayOutputStream byteStream = new ByteArrayOutputStream(bytes.length / 4 + 64);
+
+      try (GZIPOutputStream gzipStream = new GZIPOutputStream(byteStream)) {
+        gzipStream.write(bytes);
+      }
+
+      compressed = byteStream.toByteArray();
+      gzippedBytes = compressed;
+    }
+
+    return compressed;
+  }
+
+}
@@ -1,26 +1,74 @@
 package net.explorviz.discoveryagent.procezz.discovery;
 
+import java.util.List;
+import java.util.Locale;
 import net.explorviz.shared.discovery.model.Procezz;
 
 public interface DiscoveryStrategy {
 
-  boolean isDesiredApplication(Procezz newProcezz);
+  /**
+   * Returns the case-insensitive patterns that identify the desired application, i.e., the
+   * strategy is responsible for procezzes whose OS execution command contains one of the patterns.
+   * The patterns are compiled by the {@link DiscoveryStrategyEngine}.
+   */
+  List<String> getMatchPatterns();
+
+  default boolean isDesiredApplication(final Procezz newProcezz) {
+    final String osExecCmd = newProcezz.getOsExecutionCommand();
+
+    if (osExecCmd == null) {
+      return false;
+    }
+
+    // use Locale.ENGLISH to obtain correct results for locale insensitive strings
+    final String lowerCaseExecCmd = osExecCmd.toLowerCase(Locale.ENGLISH);
+
+    return getMatchPatterns().stream()
+        .anyMatch(pattern -> lowerCaseExecCmd.contains(pattern.toLowerCase(Locale.ENGLISH)));
+  }
+
+  /**
+   * Called by the {@link DiscoveryStrategyEngine} after one of the match patterns occurred in the
+   * execution command. Strategies that need more than a pattern to identify the desired
+   * application, e.g., the manifest of the executed jar, override this method.
+   */
+  default boolean verifyMatch(final Procezz newProcezz) {
+    return true;
+  }
 
   default boolean applyEntireStrategy(final Procezz newProcezz) {
-    final boolean isDesiredApplication = isDesiredApplication(newProcezz);
+    final boolean isDesiredApplication =
+        isDesiredApplication(newProcezz) && verifyMatch(newProcezz);
 
     if (isDesiredApplication) {
-      detectAndSetName(newProcezz);
-      detectAndSetProposedExecCMD(newProcezz);
+      applyDetection(newProcezz);
     }
 
     return isDesiredApplication;
   }
 
+  /**
+   * Detects and sets the attributes of a procezz that is known to be the desired application.
+   */
+  default void applyDetection(final Procezz newProcezz) {
+    detectAndSetName(newProcezz);
+    detectAndSetProposedExecCMD(newProcezz);
+    detectAndSetProperties(newProcezz);
+  }
+
+  /**
+   * Only called for desired applications, see {@link #isDesiredApplication(Procezz)}.
+   */
   void detectAndSetName(Procezz newProcezz);
 
+  /**
+   * Only called for desired applications, see {@link #isDesiredApplication(Procezz)}.
+   */
   void detectAndSetProposedExecCMD(Procezz newProcezz);
 
+  /**
+   * Only called for desired applications, see {@link #isDesiredApplication(Procezz)}.
+   */
   void detectAndSetProperties(Procezz newProcezz);
 
 }
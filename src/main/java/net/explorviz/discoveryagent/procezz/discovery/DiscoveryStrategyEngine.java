@@ -0,0 +1,121 @@
+package net.explorviz.discoveryagent.procezz.discovery;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import net.explorviz.shared.discovery.model.Procezz;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Applies the first matching {@link DiscoveryStrategy} on procezzes. The match patterns of all
+ * strategies are compiled into a single {@link MultiPatternMatcher}, therefore the execution
+ * command of a procezz is scanned only once, regardless of the number of strategies. Strategies
+ * are prioritized by their order.
+ */
+public final class DiscoveryStrategyEngine {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(DiscoveryStrategyEngine.class);
+
+  private final List<DiscoveryStrategy> strategies;
+
+  // strategy index for every compiled pattern
+  private final int[] strategyIndexOfPattern;
+  private final MultiPatternMatcher matcher;
+
+  public DiscoveryStrategyEngine(final List<DiscoveryStrategy> strategies) {
+    this.strategies = Collections.unmodifiableList(new ArrayList<DiscoveryStrategy>(strategies));
+
+    final List<String> patterns = new ArrayList<String>();
+    final List<Integer> strategyIndices = new ArrayList<Integer>();
+
+    for (int i = 0; i < this.strategies.size(); i++) {
+      final List<String> strategyPatterns = this.strategies.get(i).getMatchPatterns();
+
+      if (strategyPatterns == null) {
+        continue;
+      }
+
+      for (final String pattern : strategyPatterns) {
+        if (pattern != null && !pattern.isEmpty()) {
+          patterns.add(pattern);
+          strategyIndices.add(i);
+        }
+      }
+    }
+
+    this.strategyIndexOfPattern = strategyIndices.stream().mapToInt(Integer::intValue).toArray();
+    this.matcher = new MultiPatternMatcher(patterns);
+  }
+
+  public List<DiscoveryStrategy> getStrategies() {
+    return strategies;
+  }
+
+  /**
+   * Returns the first strategy whose patterns occur in the execution command of the passed
+   * procezz and that verifies the match (see {@link DiscoveryStrategy#verifyMatch(Procezz)}) or
+   * null, if no strategy matches.
+   */
+  public DiscoveryStrategy findStrategy(final Procezz newProcezz) {
+    final String osExecCmd = newProcezz.getOsExecutionCommand();
+
+    if (osExecCmd == null) {
+      return null;
+    }
+
+    final BitSet matchedPatterns = matcher.findMatches(osExecCmd);
+    final BitSet matchedStrategies = new BitSet(strategies.size());
+
+    for (int patternId = matchedPatterns.nextSetBit(0); patternId >= 0; patternId =
+        matchedPatterns.nextSetBit(patternId + 1)) {
+      matchedStrategies.set(strategyIndexOfPattern[patternId]);
+    }
+
+    for (int i = matchedStrategies.nextSetBit(0); i >= 0; i = matchedStrategies.nextSetBit(i + 1)) {
+      final DiscoveryStrategy strategy = strategies.get(i);
+
+      if (verifyMatch(strategy, newProcezz)) {
+        return strategy;
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * Applies the first matching strategy on the passed procezz.
+   *
+   * @return true if a strategy was applied
+   */
+  public boolean applyStrategies(final Procezz newProcezz) {
+    final DiscoveryStrategy strategy = findStrategy(newProcezz);
+
+    if (strategy == null) {
+      return false;
+    }
+
+    try {
+      strategy.applyDetection(newProcezz);
+    } catch (final Exception | LinkageError e) { // NOPMD
+      // strategies may be loaded from plugins, a faulty strategy (e.g. compiled against another
+      // version of the agent) must not break the scan
+      LOGGER.warn("Strategy {} failed for procezz with PID {}. Error: {}", strategy,
+          newProcezz.getPid(), e.toString());
+    }
+
+    return true;
+  }
+
+  private boolean verifyMatch(final DiscoveryStrategy strategy, final Procezz newProcezz) {
+    try {
+      return strategy.verifyMatch(newProcezz);
+    } catch (final Exception | LinkageError e) { // NOPMD
+      LOGGER.warn("Strategy {} failed for procezz with PID {}. Error: {}", strategy,
+          newProcezz.getPid(), e.toString());
+      return false;
+    }
+  }
+
+}
@@ -1,33 +1,118 @@
 package net.explorviz.discoveryagent.procezz.discovery;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import net.explorviz.discoveryagent.procezz.discovery.strategies.ElasticsearchStrategy;
+import net.explorviz.discoveryagent.procezz.discovery.strategies.JettyStrategy;
+import net.explorviz.discoveryagent.procezz.discovery.strategies.KafkaStrategy;
 import net.explorviz.discoveryagent.procezz.discovery.strategies.KiekerSampleAppStrategy;
-import net.explorviz.discoveryagent.procezz.discovery.strategies.TomcatStrategy;
+import net.explorviz.discoveryagent.procezz.discovery.strategies.RuleBasedDiscoveryStrategy;
+import net.explorviz.discoveryagent.procezz.discovery.strategies.SpringBootStrategy;
+import net.explorviz.discoveryagent.procezz.discovery.strategies.WildFlyStrategy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public final class DiscoveryStrategyFactory {
 
   public static final String USE_OS_FLAG = "Use-OS-Exec-CMD";
 
-  private static List<DiscoveryStrategy> strategies = new ArrayList<DiscoveryStrategy>();
+  private static final Logger LOGGER = LoggerFactory.getLogger(DiscoveryStrategyFactory.class);
+
+  // declarative strategies, applied after the implemented strategies
+  private static final String STRATEGY_FILE = "discovery-strategies.json";
+
+  // strategies of the agent itself, i.e., implemented strategies and the strategy file
+  private static List<DiscoveryStrategy> agentStrategies;
+
+  // swapped as a whole, therefore callers never see a partially loaded set of strategies
+  private static final AtomicReference<DiscoveryStrategyEngine> ENGINE =
+      new AtomicReference<DiscoveryStrategyEngine>();
 
   private DiscoveryStrategyFactory() {
     // no need to instantiate
   }
 
   public static List<DiscoveryStrategy> giveAllStrategies() {
+    return giveStrategyEngine().getStrategies();
+  }
+
+  /**
+   * Returns the engine that applies all strategies. The engine is created on the first call and
+   * replaced as a whole, if plugin strategies are updated.
+   */
+  public static DiscoveryStrategyEngine giveStrategyEngine() {
+    final DiscoveryStrategyEngine engine = ENGINE.get();
 
-    synchronized (strategies) {
+    if (engine != null) {
+      return engine;
+    }
 
-      if (strategies.isEmpty()) {
-        strategies.add(new KiekerSampleAppStrategy());
-        strategies.add(new TomcatStrategy());
+    synchronized (DiscoveryStrategyFactory.class) {
+      if (ENGINE.get() == null) {
+        ENGINE.set(new DiscoveryStrategyEngine(giveAgentStrategies()));
       }
+    }
+
+    return ENGINE.get();
+  }
+
+  /**
+   * Replaces the currently loaded plugin strategies. Plugin strategies take precedence over the
+   * strategies of the agent, since they are usually added for specific applications.
+   */
+  public static void updatePluginStrategies(final List<DiscoveryStrategy> pluginStrategies) {
+    final List<DiscoveryStrategy> strategies = new ArrayList<DiscoveryStrategy>(pluginStrategies);
+
+    synchronized (DiscoveryStrategyFactory.class) {
+      strategies.addAll(giveAgentStrategies());
+      ENGINE.set(new DiscoveryStrategyEngine(strategies));
+    }
 
+    LOGGER.info("Loaded {} discovery strategies, including {} plugin strategies",
+        strategies.size(), pluginStrategies.size());
+  }
+
+  private static synchronized List<DiscoveryStrategy> giveAgentStrategies() {
+
+    if (agentStrategies == null) {
+      final List<DiscoveryStrategy> strategies = new ArrayList<DiscoveryStrategy>();
+
+      // specific strategies first, Jetty and Spring Boot match every executed jar
+      strategies.add(new KiekerSampleAppStrategy());
+      strategies.add(new WildFlyStrategy());
+      strategies.add(new KafkaStrategy());
+      strategies.add(new ElasticsearchStrategy());
+      strategies.add(new JettyStrategy());
+      strategies.add(new SpringBootStrategy());
+      strategies.addAll(readStrategyFile());
+
+      agentStrategies = Collections.unmodifiableList(strategies);
     }
 
-    return strategies;
+    return agentStrategies;
+  }
+
+  private static List<DiscoveryStrategy> readStrategyFile() {
+    final ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+
+    try (InputStream strategyFile = classLoader.getResourceAsStream(STRATEGY_FILE)) {
+
+      if (strategyFile == null) {
+        LOGGER.warn("No discovery strategy file {} found", STRATEGY_FILE);
+        return new ArrayList<DiscoveryStrategy>();
+      }
+
+      return RuleBasedDiscoveryStrategy.readRules(strategyFile);
 
+    } catch (final IOException e) {
+      LOGGER.error("Could not read discovery strategy file {}. Error: {}", STRATEGY_FILE,
+          e.toString());
+      return new ArrayList<DiscoveryStrategy>();
+    }
   }
 
 }
@@ -0,0 +1,114 @@
+package net.explorviz.discoveryagent.procezz.discovery;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+
+/**
+ * Case-insensitive Aho-Corasick matcher. All patterns are compiled into a single automaton, which
+ * finds the occurrences of every pattern in a text with a single pass over the text, independent
+ * of the number of patterns.
+ */
+final class MultiPatternMatcher {
+
+  private static final int ROOT = 0;
+
+  // transitions of every state, goto and failure transitions are merged while compiling
+  private final List<Map<Character, Integer>> transitions =
+      new ArrayList<Map<Character, Integer>>();
+  private final List<BitSet> outputs = new ArrayList<BitSet>();
+
+  /**
+   * @param patterns the index of a pattern in this list is its ID in the match results
+   */
+  MultiPatternMatcher(final List<String> patterns) {
+    addState();
+
+    for (int patternId = 0; patternId < patterns.size(); patternId++) {
+      addPattern(patterns.get(patternId).toLowerCase(Locale.ENGLISH), patternId);
+    }
+
+    compileFailureTransitions();
+  }
+
+  /**
+   * Returns the IDs of all patterns that occur in the passed text.
+   */
+  BitSet findMatches(final CharSequence text) {
+    final BitSet matches = new BitSet();
+    int state = ROOT;
+
+    for (int i = 0; i < text.length(); i++) {
+      final Integer nextState =
+          transitions.get(state).get(Character.toLowerCase(text.charAt(i)));
+
+      state = nextState == null ? ROOT : nextState;
+      matches.or(outputs.get(state));
+    }
+
+    return matches;
+  }
+
+  private int addState() {
+    transitions.add(new HashMap<Character, Integer>());
+    outputs.add(new BitSet());
+    return transitions.size() - 1;
+  }
+
+  private void addPattern(final String pattern, final int patternId) {
+    int state = ROOT;
+
+    for (int i = 0; i < pattern.length(); i++) {
+      final char c = pattern.charAt(i);
+      Integer nextState = transitions.get(state).get(c);
+
+      if (nextState == null) {
+        nextState = addState();
+        transitions.get(state).put(c, nextState);
+      }
+
+      state = nextState;
+    }
+
+    outputs.get(state).set(patternId);
+  }
+
+  private void compileFailureTransitions() {
+    final int[] failure = new int[transitions.size()];
+    final Queue<Integer> queue = new ArrayDeque<Integer>();
+
+    // states of depth one fail to the root
+    for (final int state : transitions.get(ROOT).values()) {
+      failure[state] = ROOT;
+      queue.add(state);
+    }
+
+    // breadth-first, therefore the failure state of a state is always completed beforehand
+    while (!queue.isEmpty()) {
+      final int state = queue.poll();
+
+      // a state also matches the patterns of its failure state (= longest proper suffix)
+      outputs.get(state).or(outputs.get(failure[state]));
+
+      for (final Map.Entry<Character, Integer> transition : transitions.get(state).entrySet()) {
+        final int nextState = transition.getValue();
+        failure[nextState] = findTransition(failure[state], transition.getKey());
+        queue.add(nextState);
+      }
+
+      // add the missing transitions of the failure state, matching never follows failure links
+      transitions.get(failure[state]).forEach(transitions.get(state)::putIfAbsent);
+    }
+  }
+
+  private int findTransition(final int state, final char c) {
+    final Integer nextState = transitions.get(state).get(c);
+    return nextState == null ? ROOT : nextState;
+  }
+
+}
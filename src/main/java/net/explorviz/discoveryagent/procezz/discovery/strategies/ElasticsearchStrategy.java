@@ -0,0 +1,49 @@
+package net.explorviz.discoveryagent.procezz.discovery.strategies;
+
+import java.util.Collections;
+import java.util.List;
+import net.explorviz.discoveryagent.procezz.discovery.DiscoveryStrategy;
+import net.explorviz.discoveryagent.procezz.discovery.DiscoveryStrategyFactory;
+import net.explorviz.shared.discovery.model.Procezz;
+
+/**
+ * Identifies Elasticsearch nodes by their main class, which is started from the class path or
+ * (since Elasticsearch 8) from the org.elasticsearch.server module.
+ */
+public class ElasticsearchStrategy implements DiscoveryStrategy {
+
+  private static final String NODE_NAME_FLAG = "-Enode.name=";
+
+  @Override
+  public List<String> getMatchPatterns() {
+    return Collections.singletonList("org.elasticsearch.bootstrap.Elasticsearch");
+  }
+
+  @Override
+  public void detectAndSetName(final Procezz newProcezz) {
+    final String osExecCmd = newProcezz.getOsExecutionCommand();
+    final int nodeNameIndex = osExecCmd.indexOf(NODE_NAME_FLAG);
+
+    if (nodeNameIndex < 0) {
+      newProcezz.setName("Elasticsearch Node");
+      return;
+    }
+
+    final String nodeName = osExecCmd.substring(nodeNameIndex + NODE_NAME_FLAG.length())
+        .split("\\s+", 2)[0];
+
+    newProcezz.setName("Elasticsearch Node " + nodeName);
+  }
+
+  @Override
+  public void detectAndSetProposedExecCMD(final Procezz newProcezz) {
+    newProcezz.setProposedExecutionCommand(DiscoveryStrategyFactory.USE_OS_FLAG);
+  }
+
+  @Override
+  public void detectAndSetProperties(final Procezz newProcezz) {
+    // every node serves the REST API
+    newProcezz.setWebserverFlag(true);
+  }
+
+}
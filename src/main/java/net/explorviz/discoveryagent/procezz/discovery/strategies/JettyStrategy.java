@@ -0,0 +1,62 @@
+package net.explorviz.discoveryagent.procezz.discovery.strategies;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import net.explorviz.discoveryagent.procezz.discovery.DiscoveryStrategy;
+import net.explorviz.discoveryagent.procezz.discovery.util.JarManifestCache;
+import net.explorviz.discoveryagent.procezz.discovery.util.JarManifestCache.JarInfo;
+import net.explorviz.shared.discovery.model.Procezz;
+
+/**
+ * Identifies standalone Jetty servers by their properties and classes or by the manifest of the
+ * executed start.jar.
+ */
+public class JettyStrategy implements DiscoveryStrategy {
+
+  private static final List<String> JETTY_MARKERS =
+      Arrays.asList("org.eclipse.jetty", "jetty.home", "jetty.base");
+
+  @Override
+  public List<String> getMatchPatterns() {
+    final List<String> patterns = new ArrayList<String>(JETTY_MARKERS);
+    patterns.add("-jar ");
+    return patterns;
+  }
+
+  @Override
+  public boolean verifyMatch(final Procezz newProcezz) {
+    final String lowerCaseExecCmd =
+        newProcezz.getOsExecutionCommand().toLowerCase(Locale.ENGLISH);
+
+    if (JETTY_MARKERS.stream().anyMatch(lowerCaseExecCmd::contains)) {
+      return true;
+    }
+
+    final JarInfo mainJar = JarManifestCache.inspectMainJar(newProcezz);
+    final String mainClass = mainJar == null ? null : mainJar.getMainAttribute("Main-Class");
+
+    return mainClass != null && mainClass.startsWith("org.eclipse.jetty.start");
+  }
+
+  @Override
+  public void detectAndSetName(final Procezz newProcezz) {
+    final JarInfo mainJar = JarManifestCache.inspectMainJar(newProcezz);
+    final String version =
+        mainJar == null ? null : mainJar.getMainAttribute("Implementation-Version");
+
+    newProcezz.setName(version == null ? "Jetty Web Server" : "Jetty Web Server " + version);
+  }
+
+  @Override
+  public void detectAndSetProposedExecCMD(final Procezz newProcezz) {
+    newProcezz.setProposedExecutionCommand(ProposedExecCommands.proposeExecCMD(newProcezz));
+  }
+
+  @Override
+  public void detectAndSetProperties(final Procezz newProcezz) {
+    newProcezz.setWebserverFlag(true);
+  }
+
+}
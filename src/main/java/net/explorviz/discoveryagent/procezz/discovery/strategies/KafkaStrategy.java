@@ -0,0 +1,60 @@
+package net.explorviz.discoveryagent.procezz.discovery.strategies;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import net.explorviz.discoveryagent.procezz.discovery.DiscoveryStrategy;
+import net.explorviz.discoveryagent.procezz.discovery.DiscoveryStrategyFactory;
+import net.explorviz.shared.discovery.model.Procezz;
+
+/**
+ * Identifies Kafka brokers (main class kafka.Kafka) and Kafka Connect workers. The version is
+ * taken from the Kafka jars of the class path.
+ */
+public class KafkaStrategy implements DiscoveryStrategy {
+
+  private static final String BROKER_MAIN_CLASS = "kafka.Kafka";
+  private static final String CONNECT_PACKAGE = "org.apache.kafka.connect.cli.";
+
+  // e.g., kafka_2.13-3.6.0.jar or connect-runtime-3.6.0.jar
+  private static final Pattern VERSION_PATTERN =
+      Pattern.compile("(?:kafka_[0-9.]+|connect-runtime)-([0-9][\\w.]*)\\.jar");
+
+  @Override
+  public List<String> getMatchPatterns() {
+    return Arrays.asList(BROKER_MAIN_CLASS, CONNECT_PACKAGE);
+  }
+
+  @Override
+  public boolean verifyMatch(final Procezz newProcezz) {
+    // the pattern is case-insensitive and part of other class names, e.g., kafka.KafkaServer
+    final String osExecCmd = newProcezz.getOsExecutionCommand();
+
+    return osExecCmd.contains(CONNECT_PACKAGE)
+        || Arrays.asList(osExecCmd.split("\\s+")).contains(BROKER_MAIN_CLASS);
+  }
+
+  @Override
+  public void detectAndSetName(final Procezz newProcezz) {
+    final String osExecCmd = newProcezz.getOsExecutionCommand();
+    final String name =
+        osExecCmd.contains(CONNECT_PACKAGE) ? "Apache Kafka Connect" : "Apache Kafka Broker";
+
+    final Matcher versionMatcher = VERSION_PATTERN.matcher(osExecCmd);
+
+    newProcezz.setName(versionMatcher.find() ? name + " " + versionMatcher.group(1) : name);
+  }
+
+  @Override
+  public void detectAndSetProposedExecCMD(final Procezz newProcezz) {
+    newProcezz.setProposedExecutionCommand(DiscoveryStrategyFactory.USE_OS_FLAG);
+  }
+
+  @Override
+  public void detectAndSetProperties(final Procezz newProcezz) {
+    // Kafka Connect workers serve a REST API
+    newProcezz.setWebserverFlag(newProcezz.getOsExecutionCommand().contains(CONNECT_PACKAGE));
+  }
+
+}
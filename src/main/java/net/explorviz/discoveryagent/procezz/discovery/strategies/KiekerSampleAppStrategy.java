@@ -1,6 +1,7 @@
 package net.explorviz.discoveryagent.procezz.discovery.strategies;
 
-import java.util.Locale;
+import java.util.Collections;
+import java.util.List;
 import net.explorviz.discoveryagent.procezz.discovery.DiscoveryStrategy;
 import net.explorviz.discoveryagent.procezz.discovery.DiscoveryStrategyFactory;
 import net.explorviz.shared.discovery.model.Procezz;
@@ -10,47 +11,18 @@ public class KiekerSampleAppStrategy implements DiscoveryStrategy {
   private static final String EXPLORVIZ_MODEL_ID_FLAG = "-Dexplorviz.agent.model.id=";
 
   @Override
-  public boolean isDesiredApplication(final Procezz newProcezz) {
-    boolean doesContainSampleAppJar = false;
-
-    if (newProcezz.getOsExecutionCommand() != null) {
-      doesContainSampleAppJar = newProcezz.getOsExecutionCommand().toLowerCase(Locale.ENGLISH)
-          .contains("sampleapplication");
-    }
-
-    return doesContainSampleAppJar;
-  }
-
-  @Override
-  public boolean applyEntireStrategy(final Procezz newProcezz) {
-
-    final boolean isDesiredApplication = isDesiredApplication(newProcezz);
-
-    if (isDesiredApplication) {
-      detectAndSetName(newProcezz);
-      detectAndSetProposedExecCMD(newProcezz);
-    }
-
-    return isDesiredApplication;
-
+  public List<String> getMatchPatterns() {
+    return Collections.singletonList("sampleapplication");
   }
 
   @Override
   public void detectAndSetName(final Procezz newProcezz) {
-
-    if (isDesiredApplication(newProcezz)) {
-      newProcezz.setName("KiekerSampleApp");
-    }
-
+    newProcezz.setName("KiekerSampleApp");
   }
 
   @Override
   public void detectAndSetProposedExecCMD(final Procezz newProcezz) {
 
-    if (!isDesiredApplication(newProcezz)) {
-      return;
-    }
-
     final String osExecCmd = newProcezz.getOsExecutionCommand();
     final String workingDir = newProcezz.getWorkingDirectory();
 
@@ -58,12 +30,17 @@ public class KiekerSampleAppStrategy implements DiscoveryStrategy {
       // was already restarted by agent, probably correct os exec path
       newProcezz.setProposedExecutionCommand(DiscoveryStrategyFactory.USE_OS_FLAG);
 
-    } else if (osExecCmd != null && workingDir != null) {
+    } else if (workingDir != null) {
 
       final String delimeter = "-jar ";
 
       final String[] splittetAtJarFlag = osExecCmd.split(delimeter, 2);
 
+      if (splittetAtJarFlag.length < 2) {
+        // not started as executable jar
+        return;
+      }
+
       final String proposedExecCMD =
           splittetAtJarFlag[0] + delimeter + workingDir.trim() + "/" + splittetAtJarFlag[1].trim();
 
@@ -0,0 +1,39 @@
+package net.explorviz.discoveryagent.procezz.discovery.strategies;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import net.explorviz.discoveryagent.procezz.discovery.DiscoveryStrategyFactory;
+import net.explorviz.discoveryagent.procezz.discovery.util.JarManifestCache;
+import net.explorviz.shared.discovery.model.Procezz;
+
+final class ProposedExecCommands {
+
+  private ProposedExecCommands() {
+    // no need to instantiate
+  }
+
+  /**
+   * Proposes the OS execution command, but replaces a relative path of an executed jar with the
+   * absolute path, since a procezz is not necessarily restarted in its working directory.
+   */
+  static String proposeExecCMD(final Procezz newProcezz) {
+    final String osExecCmd = newProcezz.getOsExecutionCommand();
+    final String mainJarArgument = JarManifestCache.findMainJarArgument(osExecCmd);
+    final Path mainJar = JarManifestCache.findMainJar(newProcezz);
+
+    if (mainJarArgument == null || mainJar == null || Paths.get(mainJarArgument).isAbsolute()) {
+      return DiscoveryStrategyFactory.USE_OS_FLAG;
+    }
+
+    final String jarFlag = "-jar ";
+    final int mainJarIndex = osExecCmd.indexOf(jarFlag + mainJarArgument);
+
+    if (mainJarIndex < 0) {
+      return DiscoveryStrategyFactory.USE_OS_FLAG;
+    }
+
+    return osExecCmd.substring(0, mainJarIndex) + jarFlag + mainJar
+        + osExecCmd.substring(mainJarIndex + jarFlag.length() + mainJarArgument.length());
+  }
+
+}
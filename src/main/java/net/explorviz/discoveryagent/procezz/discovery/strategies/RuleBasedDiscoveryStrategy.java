@@ -0,0 +1,115 @@
+package net.explorviz.discoveryagent.procezz.discovery.strategies;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import net.explorviz.discoveryagent.procezz.discovery.DiscoveryStrategy;
+import net.explorviz.shared.discovery.model.Procezz;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Strategy that is declared by a rule of a strategy file instead of being implemented, e.g.,
+ *
+ * <pre>
+ * [ { "name": "Tomcat Web Server", "patterns": ["tomcat"], "proposedExecCMD": "Use-OS-Exec-CMD",
+ *     "webserver": true } ]
+ * </pre>
+ *
+ * The proposed execution command and the webserver flag are optional.
+ */
+public class RuleBasedDiscoveryStrategy implements DiscoveryStrategy {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(RuleBasedDiscoveryStrategy.class);
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  private static final String NAME_FIELD = "name";
+  private static final String PATTERNS_FIELD = "patterns";
+  private static final String PROPOSED_EXEC_CMD_FIELD = "proposedExecCMD";
+  private static final String WEBSERVER_FIELD = "webserver";
+
+  private final String name;
+  private final List<String> patterns;
+  private final String proposedExecCMD;
+  private final boolean webserver;
+
+  public RuleBasedDiscoveryStrategy(final String name, final List<String> patterns,
+      final String proposedExecCMD, final boolean webserver) {
+    this.name = name;
+    this.patterns = Collections.unmodifiableList(new ArrayList<String>(patterns));
+    this.proposedExecCMD = proposedExecCMD;
+    this.webserver = webserver;
+  }
+
+  /**
+   * Reads all rules of the passed strategy file. Invalid rules are logged and skipped.
+   */
+  public static List<DiscoveryStrategy> readRules(final InputStream strategyFile)
+      throws IOException {
+    final List<DiscoveryStrategy> strategies = new ArrayList<DiscoveryStrategy>();
+
+    final JsonNode rules = MAPPER.readTree(strategyFile);
+
+    if (rules == null || !rules.isArray()) {
+      throw new IOException("A strategy file must contain an array of rules");
+    }
+
+    for (final JsonNode rule : rules) {
+      final JsonNode nameNode = rule.get(NAME_FIELD);
+      final JsonNode patternsNode = rule.get(PATTERNS_FIELD);
+
+      if (nameNode == null || patternsNode == null || !patternsNode.isArray()
+          || patternsNode.size() == 0) {
+        LOGGER.warn("Skipping invalid discovery rule (name and patterns are required): {}", rule);
+        continue;
+      }
+
+      final List<String> rulePatterns = new ArrayList<String>();
+      patternsNode.forEach(pattern -> rulePatterns.add(pattern.asText()));
+
+      final JsonNode proposedExecCMDNode = rule.get(PROPOSED_EXEC_CMD_FIELD);
+      final JsonNode webserverNode = rule.get(WEBSERVER_FIELD);
+
+      strategies.add(new RuleBasedDiscoveryStrategy(nameNode.asText(), rulePatterns,
+          proposedExecCMDNode == null ? null : proposedExecCMDNode.asText(),
+          webserverNode != null && webserverNode.asBoolean()));
+    }
+
+    return strategies;
+  }
+
+  @Override
+  public List<String> getMatchPatterns() {
+    return patterns;
+  }
+
+  @Override
+  public void detectAndSetName(final Procezz newProcezz) {
+    newProcezz.setName(name);
+  }
+
+  @Override
+  public void detectAndSetProposedExecCMD(final Procezz newProcezz) {
+    if (proposedExecCMD != null) {
+      newProcezz.setProposedExecutionCommand(proposedExecCMD);
+    }
+  }
+
+  @Override
+  public void detectAndSetProperties(final Procezz newProcezz) {
+    if (webserver) {
+      newProcezz.setWebserverFlag(true);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "RuleBasedDiscoveryStrategy [name=" + name + ", patterns=" + patterns + "]";
+  }
+
+}
@@ -0,0 +1,87 @@
+package net.explorviz.discoveryagent.procezz.discovery.strategies;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import net.explorviz.discoveryagent.procezz.discovery.DiscoveryStrategy;
+import net.explorviz.discoveryagent.procezz.discovery.util.JarManifestCache;
+import net.explorviz.discoveryagent.procezz.discovery.util.JarManifestCache.JarInfo;
+import net.explorviz.shared.discovery.model.Procezz;
+
+/**
+ * Identifies Spring Boot applications by the manifest of the executed fat jar or by the Spring
+ * Boot launcher class (exploded jars).
+ */
+public class SpringBootStrategy implements DiscoveryStrategy {
+
+  private static final String LAUNCHER_PACKAGE = "org.springframework.boot.loader";
+
+  private static final String[] EMBEDDED_WEBSERVERS =
+      {"tomcat-embed-core", "jetty-server", "undertow-core", "reactor-netty"};
+
+  @Override
+  public List<String> getMatchPatterns() {
+    return Arrays.asList("-jar ", LAUNCHER_PACKAGE);
+  }
+
+  @Override
+  public boolean verifyMatch(final Procezz newProcezz) {
+    if (newProcezz.getOsExecutionCommand().toLowerCase(Locale.ENGLISH)
+        .contains(LAUNCHER_PACKAGE)) {
+      return true;
+    }
+
+    final JarInfo mainJar = JarManifestCache.inspectMainJar(newProcezz);
+
+    if (mainJar == null) {
+      return false;
+    }
+
+    final String mainClass = mainJar.getMainAttribute("Main-Class");
+
+    return mainJar.getMainAttribute("Spring-Boot-Version") != null
+        || mainClass != null && mainClass.startsWith(LAUNCHER_PACKAGE);
+  }
+
+  @Override
+  public void detectAndSetName(final Procezz newProcezz) {
+    final JarInfo mainJar = JarManifestCache.inspectMainJar(newProcezz);
+
+    String name = "Spring Boot Application";
+
+    if (mainJar != null) {
+      final String title = mainJar.getMainAttribute("Implementation-Title");
+      final String startClass = mainJar.getMainAttribute("Start-Class");
+
+      if (title != null) {
+        name = title;
+      } else if (startClass != null) {
+        name = startClass.substring(startClass.lastIndexOf('.') + 1);
+      }
+    }
+
+    newProcezz.setName(name);
+  }
+
+  @Override
+  public void detectAndSetProposedExecCMD(final Procezz newProcezz) {
+    newProcezz.setProposedExecutionCommand(ProposedExecCommands.proposeExecCMD(newProcezz));
+  }
+
+  @Override
+  public void detectAndSetProperties(final Procezz newProcezz) {
+    final JarInfo mainJar = JarManifestCache.inspectMainJar(newProcezz);
+
+    if (mainJar == null) {
+      return;
+    }
+
+    for (final String webserver : EMBEDDED_WEBSERVERS) {
+      if (mainJar.hasBundledLibrary(webserver)) {
+        newProcezz.setWebserverFlag(true);
+        return;
+      }
+    }
+  }
+
+}
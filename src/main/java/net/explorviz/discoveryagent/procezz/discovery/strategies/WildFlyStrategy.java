@@ -0,0 +1,63 @@
+package net.explorviz.discoveryagent.procezz.discovery.strategies;
+
+import java.util.Arrays;
+import java.util.List;
+import net.explorviz.discoveryagent.procezz.discovery.DiscoveryStrategy;
+import net.explorviz.shared.discovery.model.Procezz;
+
+/**
+ * Identifies the procezzes of WildFly (and JBoss EAP) by the main module that is passed to
+ * jboss-modules.jar. Servers of a managed domain are named after their server name.
+ */
+public class WildFlyStrategy implements DiscoveryStrategy {
+
+  private static final String SERVER_MODULE = "org.jboss.as.server";
+
+  // the process type is passed as -D[Standalone], -D[Server:name], -D[Host Controller], ...
+  private static final String DOMAIN_SERVER_FLAG = "-D[Server:";
+
+  @Override
+  public List<String> getMatchPatterns() {
+    return Arrays.asList("org.jboss.as.standalone", SERVER_MODULE, "org.jboss.as.host-controller",
+        "org.jboss.as.process-controller");
+  }
+
+  @Override
+  public void detectAndSetName(final Procezz newProcezz) {
+    final String osExecCmd = newProcezz.getOsExecutionCommand();
+    final int serverFlagIndex = osExecCmd.indexOf(DOMAIN_SERVER_FLAG);
+
+    if (serverFlagIndex >= 0) {
+      final int serverNameIndex = serverFlagIndex + DOMAIN_SERVER_FLAG.length();
+      final int serverNameEnd = osExecCmd.indexOf(']', serverNameIndex);
+
+      if (serverNameEnd > serverNameIndex) {
+        newProcezz
+            .setName("WildFly Server " + osExecCmd.substring(serverNameIndex, serverNameEnd));
+        return;
+      }
+    }
+
+    if (osExecCmd.contains("org.jboss.as.host-controller")) {
+      newProcezz.setName("WildFly Host Controller");
+    } else if (osExecCmd.contains("org.jboss.as.process-controller")) {
+      newProcezz.setName("WildFly Process Controller");
+    } else {
+      newProcezz.setName("WildFly Application Server");
+    }
+  }
+
+  @Override
+  public void detectAndSetProposedExecCMD(final Procezz newProcezz) {
+    newProcezz.setProposedExecutionCommand(ProposedExecCommands.proposeExecCMD(newProcezz));
+  }
+
+  @Override
+  public void detectAndSetProperties(final Procezz newProcezz) {
+    // controllers of a managed domain do not serve applications
+    final String osExecCmd = newProcezz.getOsExecutionCommand();
+    newProcezz.setWebserverFlag(
+        osExecCmd.contains("org.jboss.as.standalone") || osExecCmd.contains(SERVER_MODULE));
+  }
+
+}
@@ -0,0 +1,223 @@
+package net.explorviz.discoveryagent.procezz.discovery.util;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import net.explorviz.shared.discovery.model.Procezz;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Inspects the jar that is executed by a procezz (java -jar ...), i.e., its manifest and its
+ * bundled libraries (BOOT-INF/lib and WEB-INF/lib). Inspected jars are cached by path, last
+ * modification time and size, therefore many procezzes of the same jar only cost a single read.
+ */
+public final class JarManifestCache {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(JarManifestCache.class);
+
+  private static final String JAR_FLAG = "-jar";
+
+  private static final String[] LIBRARY_FOLDERS = {"BOOT-INF/lib/", "WEB-INF/lib/"};
+
+  // the cache is cleared once reached, jar paths usually do not change that often
+  private static final int MAX_CACHED_JARS = 1024;
+
+  private static final ConcurrentMap<Path, JarInfo> CACHE = new ConcurrentHashMap<Path, JarInfo>();
+
+  private JarManifestCache() {
+    // no need to instantiate
+  }
+
+  /**
+   * Returns the argument of the -jar flag of the passed execution command or null, if no jar is
+   * executed.
+   */
+  public static String findMainJarArgument(final String execCMD) {
+    if (execCMD == null) {
+      return null;
+    }
+
+    final String[] execCMDParts = execCMD.trim().split("\\s+");
+
+    for (int i = 0; i < execCMDParts.length - 1; i++) {
+      if (JAR_FLAG.equals(execCMDParts[i])) {
+        return execCMDParts[i + 1];
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * Returns the absolute path of the jar that is executed by the passed procezz or null, if no
+   * jar is executed or a relative path cannot be resolved without working directory.
+   */
+  public static Path findMainJar(final Procezz procezz) {
+    final String mainJarArgument = findMainJarArgument(procezz.getOsExecutionCommand());
+
+    if (mainJarArgument == null) {
+      return null;
+    }
+
+    try {
+      final Path mainJar = Paths.get(mainJarArgument);
+
+      if (mainJar.isAbsolute()) {
+        return mainJar.normalize();
+      }
+
+      final String workingDir = procezz.getWorkingDirectory();
+
+      if (workingDir == null || workingDir.trim().isEmpty()) {
+        return null;
+      }
+
+      return Paths.get(workingDir.trim()).resolve(mainJar).normalize();
+    } catch (final InvalidPathException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Returns the inspected jar that is executed by the passed procezz or null, if no readable jar
+   * is executed.
+   */
+  public static JarInfo inspectMainJar(final Procezz procezz) {
+    final Path mainJar = findMainJar(procezz);
+    return mainJar == null ? null : inspectJar(mainJar);
+  }
+
+  /**
+   * Returns the inspected jar or null, if the passed file is no readable jar.
+   */
+  public static JarInfo inspectJar(final Path jar) {
+    final BasicFileAttributes attributes;
+
+    try {
+      attributes = Files.readAttributes(jar, BasicFileAttributes.class);
+    } catch (final IOException e) {
+      return null;
+    }
+
+    if (!attributes.isRegularFile()) {
+      return null;
+    }
+
+    final long lastModified = attributes.lastModifiedTime().toMillis();
+    final long size = attributes.size();
+
+    if (CACHE.size() >= MAX_CACHED_JARS) {
+      CACHE.clear();
+    }
+
+    // concurrent inspections of the same jar wait for a single read
+    final JarInfo jarInfo = CACHE.compute(jar,
+        (path, cachedJarInfo) -> cachedJarInfo != null
+            && cachedJarInfo.isUpToDate(lastModified, size) ? cachedJarInfo
+                : readJar(path, lastModified, size));
+
+    return jarInfo.isReadable() ? jarInfo : null;
+  }
+
+  private static JarInfo readJar(final Path jar, final long lastModified, final long size) {
+    final Map<String, String> mainAttributes = new HashMap<String, String>();
+    final Set<String> bundledLibraries = new HashSet<String>();
+
+    try (JarFile jarFile = new JarFile(jar.toFile(), false)) {
+      final Manifest manifest = jarFile.getManifest();
+
+      if (manifest != null) {
+        for (final Map.Entry<Object, Object> attribute : manifest.getMainAttributes().entrySet()) {
+          mainAttributes.put(((Attributes.Name) attribute.getKey()).toString(),
+              (String) attribute.getValue());
+        }
+      }
+
+      final Enumeration<JarEntry> entries = jarFile.entries();
+
+      while (entries.hasMoreElements()) {
+        final String entryName = entries.nextElement().getName();
+
+        for (final String libraryFolder : LIBRARY_FOLDERS) {
+          if (entryName.startsWith(libraryFolder) && entryName.endsWith(".jar")) {
+            bundledLibraries.add(entryName.substring(libraryFolder.length()));
+          }
+        }
+      }
+    } catch (IOException | SecurityException e) {
+      // cached as well, the jar is not read again until it is modified
+      LOGGER.debug("Could not inspect jar {}. Error: {}", jar, e.toString());
+      return new JarInfo(lastModified, size, null, Collections.<String>emptySet());
+    }
+
+    return new JarInfo(lastModified, size, mainAttributes, bundledLibraries);
+  }
+
+  /**
+   * Manifest attributes and bundled libraries of an inspected jar.
+   */
+  public static final class JarInfo {
+
+    private final long lastModified;
+    private final long size;
+
+    // null, if the jar could not be read
+    private final Map<String, String> mainAttributes;
+    private final Set<String> bundledLibraries;
+
+    private JarInfo(final long lastModified, final long size,
+        final Map<String, String> mainAttributes, final Set<String> bundledLibraries) {
+      this.lastModified = lastModified;
+      this.size = size;
+      this.mainAttributes = mainAttributes;
+      this.bundledLibraries = bundledLibraries;
+    }
+
+    private boolean isUpToDate(final long lastModified, final long size) {
+      return this.lastModified == lastModified && this.size == size;
+    }
+
+    private boolean isReadable() {
+      return mainAttributes != null;
+    }
+
+    /**
+     * Returns the value of the passed main attribute of the manifest, e.g., Main-Class, or null.
+     */
+    public String getMainAttribute(final String name) {
+      return mainAttributes.get(name);
+    }
+
+    /**
+     * Returns true if the jar bundles a library whose file name starts with the passed prefix,
+     * e.g., tomcat-embed-core.
+     */
+    public boolean hasBundledLibrary(final String fileNamePrefix) {
+      for (final String bundledLibrary : bundledLibraries) {
+        if (bundledLibrary.startsWith(fileNamePrefix)) {
+          return true;
+        }
+      }
+
+      return false;
+    }
+
+  }
+
+}
@@ -1,6 +1,8 @@
 package net.explorviz.discoveryagent.procezz.management;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import net.explorviz.shared.discovery.exceptions.procezz.ProcezzManagementTypeIncompatibleException;
 import net.explorviz.shared.discovery.exceptions.procezz.ProcezzNotFoundException;
 import net.explorviz.shared.discovery.exceptions.procezz.ProcezzStartException;
@@ -21,12 +23,23 @@ public interface ProcezzManagementType {
 
   List<Procezz> getProcezzListFromOsAndSetAgent(Agent agent);
 
+  /**
+   * Like {@link #getProcezzListFromOsAndSetAgent(Agent)}, but only examines the OS procezzes with
+   * the passed PIDs, e.g., procezzes that were started since the last check.
+   */
+  List<Procezz> getProcezzListFromOsForPIDs(Collection<Long> pids, Agent agent);
+
   void setWorkingDirectory(Procezz procezz);
 
   void startProcezz(Procezz procezz) throws ProcezzStartException, ProcezzNotFoundException;
 
   void killProcezz(Procezz procezz) throws ProcezzStopException;
 
+  /**
+   * Kills all passed procezzes at once, e.g., for a bulk restart.
+   */
+  void killProcezzes(Collection<Procezz> procezzes) throws ProcezzStopException;
+
   String getManagementTypeDescriptor();
 
   void setProgrammingLanguage(Procezz procezz);
@@ -42,4 +55,21 @@ public interface ProcezzManagementType {
   boolean compareProcezzesByIdentificationProperty(final Procezz p1, final Procezz p2)
       throws ProcezzManagementTypeIncompatibleException;
 
+  /**
+   * Returns the value of the identification property (see
+   * {@link #injectProcezzIdentificationProperty(Procezz)}) of an OS procezz, i.e., the ID of the
+   * internal procezz it was started for, or null if the procezz has no such property.
+   */
+  String findProcezzIdentificationProperty(final Procezz procezz);
+
+  /**
+   * Searches the OS procezzes only for procezzes with one of the passed identification properties.
+   * This is considerably cheaper than obtaining the entire procezz list and is used to wait for
+   * restarted procezzes.
+   *
+   * @return found procezzes, mapped from identification property to procezz
+   */
+  Map<String, Procezz> findProcezzesByIdentificationProperties(
+      final Collection<String> identificationProperties);
+
 }
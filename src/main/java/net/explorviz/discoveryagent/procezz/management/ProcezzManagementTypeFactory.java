@@ -16,17 +16,21 @@ public final class ProcezzManagementTypeFactory {
       new ConcurrentHashMap<>();
 
   private final MonitoringFilesystemService monitoringFsService;
+  private final ProcezzScanExecutor scanExecutor;
 
   @Inject
-  public ProcezzManagementTypeFactory(final MonitoringFilesystemService monitoringFsService) {
+  public ProcezzManagementTypeFactory(final MonitoringFilesystemService monitoringFsService,
+      final ProcezzScanExecutor scanExecutor) {
     this.monitoringFsService = monitoringFsService;
+    this.scanExecutor = scanExecutor;
   }
 
   private void createManagementTypes() {
 
     if (managementTypes.isEmpty()) {
 
-      final ProcezzManagementType type = new JavaCLIManagementType(monitoringFsService);
+      final ProcezzManagementType type =
+          new JavaCLIManagementType(monitoringFsService, scanExecutor);
       managementTypes.put(type.getManagementTypeDescriptor(), type);
     }
 
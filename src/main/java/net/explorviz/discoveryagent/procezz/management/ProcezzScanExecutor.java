@@ -0,0 +1,151 @@
+package net.explorviz.discoveryagent.procezz.management;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import net.explorviz.shared.config.annotations.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Executes the OS scans of the {@link ProcezzManagementType}s and the enrichment of the found
+ * procezzes (e.g., resolving working directories) concurrently on bounded thread pools. Every scan
+ * has a deadline, so that a single hanging management type or process does not delay the entire
+ * update. Results that are not available in time are omitted.
+ */
+public final class ProcezzScanExecutor {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ProcezzScanExecutor.class);
+
+  private static final int MAX_PARALLEL_SCANS = 4;
+
+  // enrichment is I/O bound (reading /proc or waiting for pwdx)
+  private static final int ENRICHMENT_THREADS =
+      Math.max(2, 2 * Runtime.getRuntime().availableProcessors());
+
+  // enrichment must be finished in time for the management type to assemble its procezz list
+  private static final int ENRICHMENT_TIMEOUT_DIVISOR = 2;
+
+  // PIDs per enrichment task
+  private static final int MIN_ENRICHMENT_BATCH_SIZE = 16;
+
+  @Config("scanTimeout")
+  private int scanTimeout;
+
+  // separate pools, since scans wait for their enrichment tasks
+  private final ExecutorService scanPool = createPool(MAX_PARALLEL_SCANS, "procezz-scan");
+  private final ExecutorService enrichmentPool =
+      createPool(ENRICHMENT_THREADS, "procezz-enrichment");
+
+  private static ExecutorService createPool(final int threads, final String threadName) {
+    return Executors.newFixedThreadPool(threads, runnable -> {
+      final Thread thread = new Thread(runnable, threadName);
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  /**
+   * Executes all passed scans concurrently and waits at most for the configured scan timeout.
+   *
+   * @return results of the scans that succeeded in time, scans that failed or exceeded the timeout
+   *         are omitted and logged
+   */
+  public <K, V> Map<K, V> scanAll(final Map<K, Callable<V>> scans) {
+    return invokeAll(scanPool, scans, scanTimeout);
+  }
+
+  /**
+   * Applies the passed batch function concurrently on partitions of the passed keys, e.g., to
+   * resolve the working directories of many PIDs. The enrichment is finished within half of the
+   * scan timeout.
+   *
+   * @return merged results of all partitions that were processed in time
+   */
+  public <K, V> Map<K, V> enrichAll(final Collection<K> keys,
+      final Function<Collection<K>, Map<K, V>> batchFunction) {
+
+    final Map<K, V> results = new HashMap<K, V>();
+
+    if (keys.isEmpty()) {
+      return results;
+    }
+
+    final Map<Integer, Callable<Map<K, V>>> batches = new LinkedHashMap<>();
+
+    for (final List<K> partition : partition(keys)) {
+      batches.put(batches.size(), () -> batchFunction.apply(partition));
+    }
+
+    invokeAll(enrichmentPool, batches, scanTimeout / ENRICHMENT_TIMEOUT_DIVISOR).values()
+        .forEach(results::putAll);
+
+    return results;
+  }
+
+  private static <K> List<List<K>> partition(final Collection<K> keys) {
+    final int batchSize = Math.max(MIN_ENRICHMENT_BATCH_SIZE,
+        (keys.size() + ENRICHMENT_THREADS - 1) / ENRICHMENT_THREADS);
+
+    final List<List<K>> partitions = new ArrayList<List<K>>();
+    final Iterator<K> keyIterator = keys.iterator();
+
+    while (keyIterator.hasNext()) {
+      final List<K> partition = new ArrayList<K>(batchSize);
+
+      while (keyIterator.hasNext() && partition.size() < batchSize) {
+        partition.add(keyIterator.next());
+      }
+
+      partitions.add(partition);
+    }
+
+    return partitions;
+  }
+
+  private static <K, V> Map<K, V> invokeAll(final ExecutorService pool,
+      final Map<K, Callable<V>> tasks, final long timeout) {
+
+    final List<K> keys = new ArrayList<K>(tasks.keySet());
+    final List<Callable<V>> callables = new ArrayList<Callable<V>>(tasks.values());
+
+    final Map<K, V> results = new LinkedHashMap<K, V>();
+    final List<Future<V>> futures;
+
+    try {
+      // cancels all tasks that did not finish in time
+      futures = pool.invokeAll(callables, timeout, TimeUnit.MILLISECONDS);
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return results;
+    }
+
+    for (int i = 0; i < futures.size(); i++) {
+      try {
+        results.put(keys.get(i), futures.get(i).get());
+      } catch (final CancellationException e) {
+        LOGGER.warn("Procezz scan task {} exceeded the timeout of {} ms", keys.get(i), timeout);
+      } catch (final ExecutionException e) {
+        LOGGER.error("Procezz scan task {} failed: ", keys.get(i), e.getCause());
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+        break;
+      }
+    }
+
+    return results;
+  }
+
+}
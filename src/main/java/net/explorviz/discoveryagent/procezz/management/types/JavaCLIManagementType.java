@@ -3,10 +3,19 @@ package net.explorviz.discoveryagent.procezz.management.types;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import net.explorviz.discoveryagent.procezz.management.ProcezzManagementType;
+import net.explorviz.discoveryagent.procezz.management.ProcezzScanExecutor;
 import net.explorviz.discoveryagent.procezz.management.util.CLIAbstraction;
+import net.explorviz.discoveryagent.procezz.management.util.ProcFSAbstraction;
+import net.explorviz.discoveryagent.procezz.management.util.ProcezzFingerprintCache;
+import net.explorviz.discoveryagent.procezz.management.util.WorkingDirectoryResolver;
 import net.explorviz.discoveryagent.services.MonitoringFilesystemService;
 import net.explorviz.shared.discovery.exceptions.mapper.ResponseUtil;
 import net.explorviz.shared.discovery.exceptions.procezz.ProcezzManagementTypeIncompatibleException;
@@ -24,17 +33,26 @@ public class JavaCLIManagementType implements ProcezzManagementType {
   private static final String EXPLORVIZ_MODEL_ID_FLAG = "-Dexplorviz.agent.model.id=";
 
   private static final String SPACE_SYMBOL = " ";
+  private static final String JAVA_IDENTIFIER = "java";
   private static final String SKIP_DEFAULT_AOP =
       "-Dkieker.monitoring.skipDefaultAOPConfiguration=true";
   // private static final String EXPORVIZ_MODEL_ID_FLAG_REGEX =
   // "\\s\\-Dexplorviz\\.agent\\.model\\.id=([^\\s]+)";
   private static final String EXPORVIZ_MODEL_ID_FLAG_REGEX =
       "\\s" + EXPLORVIZ_MODEL_ID_FLAG + "([^\\s]+)";
+  private static final Pattern EXPORVIZ_MODEL_ID_FLAG_PATTERN =
+      Pattern.compile(EXPORVIZ_MODEL_ID_FLAG_REGEX);
 
   private final MonitoringFilesystemService monitoringFsService;
+  private final WorkingDirectoryResolver workingDirResolver;
+  private final ProcezzFingerprintCache fingerprintCache;
 
-  public JavaCLIManagementType(final MonitoringFilesystemService monitoringFsService) {
+  public JavaCLIManagementType(final MonitoringFilesystemService monitoringFsService,
+      final ProcezzScanExecutor scanExecutor) {
     this.monitoringFsService = monitoringFsService;
+    this.workingDirResolver = new WorkingDirectoryResolver(scanExecutor);
+    this.fingerprintCache = new ProcezzFingerprintCache(scanExecutor,
+        execCMD -> execCMD.contains(JAVA_IDENTIFIER) && !isProcezzListingCommand(execCMD));
   }
 
   @Override
@@ -47,32 +65,45 @@ public class JavaCLIManagementType implements ProcezzManagementType {
     return getOSProcezzList(agent);
   }
 
+  @Override
+  public List<Procezz> getProcezzListFromOsForPIDs(final Collection<Long> pids,
+      final Agent agent) {
+    return getOSProcezzList(agent, pids);
+  }
+
   private List<Procezz> getOSProcezzList(final Agent possibleAgent) {
+    return getOSProcezzList(possibleAgent, null);
+  }
+
+  private List<Procezz> getOSProcezzList(final Agent possibleAgent, final Collection<Long> pids) {
     final List<Procezz> procezzList = new ArrayList<Procezz>();
 
     final AtomicLong placeholderId = new AtomicLong(0);
 
     try {
-      CLIAbstraction.findProzzeses().forEach((pid, execCMD) -> {
-        if (!execCMD.contains(CLIAbstraction.GET_ALL_PROCESSES) && !"grep java".equals(execCMD)) {
-          final Procezz p = new Procezz(pid, execCMD);
-
-          // default id for serialization / deserialization by JSON API converter
-          p.setId(String.valueOf(placeholderId.incrementAndGet()));
-
-          setWorkingDirectory(p);
-          setProgrammingLanguage(p);
-
-          if (possibleAgent != null) {
-            p.setAgent(possibleAgent);
-          }
-
-          // Descriptor is needed for procezz to get the correct
-          // procezzManagementType for starting, killing, restarting
-          p.setProcezzManagementType(getManagementTypeDescriptor());
-
-          procezzList.add(p);
-        }
+      final Map<Long, String> osProcezzes = new HashMap<Long, String>();
+      final Map<Long, String> workingDirs = new HashMap<Long, String>();
+
+      if (ProcFSAbstraction.isAvailable()) {
+        // unchanged processes are not examined again
+        fingerprintCache.scan(pids).forEach((pid, fingerprint) -> {
+          osProcezzes.put(pid, fingerprint.getExecutionCommand());
+          workingDirs.put(pid, fingerprint.getWorkingDirectory());
+        });
+      } else {
+        osProcezzes.putAll(findCLIProcezzes(pids));
+        osProcezzes.values().removeIf(this::isProcezzListingCommand);
+
+        // resolve all working directories at once instead of one lookup per procezz
+        workingDirs.putAll(workingDirResolver.resolveAll(osProcezzes.keySet()));
+      }
+
+      osProcezzes.forEach((pid, execCMD) -> {
+        // default id for serialization / deserialization by JSON API converter
+        final String id = String.valueOf(placeholderId.incrementAndGet());
+
+        // the working directory is null, if it could not be resolved in time
+        procezzList.add(createProcezz(pid, execCMD, id, workingDirs.get(pid), possibleAgent));
       });
     } catch (final IOException e) {
       LOGGER.error("Error when finding procezzes: {}", e);
@@ -81,6 +112,50 @@ public class JavaCLIManagementType implements ProcezzManagementType {
     return procezzList;
   }
 
+  private Procezz createProcezz(final long pid, final String execCMD, final String placeholderId,
+      final String workingDir, final Agent possibleAgent) {
+    final Procezz p = new Procezz(pid, execCMD);
+
+    p.setId(placeholderId);
+
+    p.setWorkingDirectory(workingDir);
+    setProgrammingLanguage(p);
+
+    if (possibleAgent != null) {
+      p.setAgent(possibleAgent);
+    }
+
+    // Descriptor is needed for procezz to get the correct
+    // procezzManagementType for starting, killing, restarting
+    p.setProcezzManagementType(getManagementTypeDescriptor());
+
+    return p;
+  }
+
+  private Map<Long, String> findOSProcezzes() throws IOException {
+    // prefer direct /proc reads, since the CLI variant forks several processes
+    if (ProcFSAbstraction.isAvailable()) {
+      return ProcFSAbstraction.findProzzeses();
+    }
+
+    return CLIAbstraction.findProzzeses();
+  }
+
+  private Map<Long, String> findCLIProcezzes(final Collection<Long> pids) throws IOException {
+    final Map<Long, String> osProcezzes = CLIAbstraction.findProzzeses();
+
+    if (pids != null) {
+      osProcezzes.keySet().retainAll(pids);
+    }
+
+    return osProcezzes;
+  }
+
+  private boolean isProcezzListingCommand(final String execCMD) {
+    // the ps and grep commands of the CLI variant are found as well
+    return execCMD.contains(CLIAbstraction.GET_ALL_PROCESSES) || "grep java".equals(execCMD);
+  }
+
   @Override
   public void startProcezz(final Procezz procezz)
       throws ProcezzStartException, ProcezzNotFoundException {
@@ -107,19 +182,21 @@ public class JavaCLIManagementType implements ProcezzManagementType {
   }
 
   @Override
-  public void setWorkingDirectory(final Procezz procezz) {
-    // add pwdx (working directory) output to procezz object
-
-    String workingDir = "";
+  public void killProcezzes(final Collection<Procezz> procezzes) throws ProcezzStopException {
+    final List<Long> pids = new ArrayList<Long>();
+    procezzes.forEach(procezz -> pids.add(procezz.getPid()));
 
     try {
-      workingDir = CLIAbstraction.findWorkingDirectoryForPID(procezz.getPid());
+      CLIAbstraction.killProcessesByPIDs(pids);
     } catch (final IOException e) {
-      LOGGER.error("Error when finding working directory for procezz with PID {}: {}",
-          procezz.getPid(), e);
+      throw new ProcezzStopException(ResponseUtil.ERROR_PROCEZZ_STOP, e);
     }
+  }
 
-    procezz.setWorkingDirectory(workingDir);
+  @Override
+  public void setWorkingDirectory(final Procezz procezz) {
+    // add working directory to procezz object
+    procezz.setWorkingDirectory(workingDirResolver.resolve(procezz.getPid()));
   }
 
   @Override
@@ -232,4 +309,46 @@ public class JavaCLIManagementType implements ProcezzManagementType {
 
   }
 
+  @Override
+  public String findProcezzIdentificationProperty(final Procezz procezz) {
+    final String osExecCMD = procezz.getOsExecutionCommand();
+
+    if (osExecCMD == null || !osExecCMD.contains(EXPLORVIZ_MODEL_ID_FLAG)) {
+      return null;
+    }
+
+    final Matcher matcher = EXPORVIZ_MODEL_ID_FLAG_PATTERN.matcher(osExecCMD);
+    return matcher.find() ? matcher.group(1) : null;
+  }
+
+  @Override
+  public Map<String, Procezz> findProcezzesByIdentificationProperties(
+      final Collection<String> identificationProperties) {
+
+    final Map<String, Procezz> foundProcezzes = new HashMap<String, Procezz>();
+
+    if (identificationProperties.isEmpty()) {
+      return foundProcezzes;
+    }
+
+    try {
+      findOSProcezzes().forEach((pid, execCMD) -> {
+        if (!execCMD.contains(EXPLORVIZ_MODEL_ID_FLAG)) {
+          return;
+        }
+
+        final Matcher matcher = EXPORVIZ_MODEL_ID_FLAG_PATTERN.matcher(execCMD);
+
+        if (matcher.find() && identificationProperties.contains(matcher.group(1))) {
+          foundProcezzes.put(matcher.group(1), createProcezz(pid, execCMD, matcher.group(1),
+              workingDirResolver.resolve(pid), null));
+        }
+      });
+    } catch (final IOException e) {
+      LOGGER.error("Error when finding procezzes by identification property: {}", e);
+    }
+
+    return foundProcezzes;
+  }
+
 }
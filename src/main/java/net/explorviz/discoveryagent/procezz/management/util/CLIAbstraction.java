@@ -9,6 +9,7 @@ import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -27,6 +28,7 @@ public final class CLIAbstraction {
 
   private static final int SINGLE_COMMAND_LENGTH = 1;
   private static final int LENGTH_PWDX_ARRAY = 2;
+  private static final String PWDX_SEPARATOR = ": ";
 
   private CLIAbstraction() {
     // do not instantiate
@@ -41,6 +43,22 @@ public final class CLIAbstraction {
     executeShellCommand("kill", "-9", String.valueOf(pid), BASH_SUFFIX);
   }
 
+  /**
+   * Kills all passed PIDs with a single kill invocation.
+   */
+  public static void killProcessesByPIDs(final Collection<Long> pids) throws IOException {
+    if (pids.isEmpty()) {
+      return;
+    }
+
+    final List<String> killCommand = new ArrayList<String>();
+    killCommand.add("kill");
+    killCommand.add("-9");
+    pids.forEach(pid -> killCommand.add(String.valueOf(pid)));
+
+    executeShellCommand(killCommand.toArray(new String[0]));
+  }
+
   public static void startProcessByCMD(final String fullCMD) throws IOException {
 
     // Redirect stderr and stdout to /dev/null
@@ -68,6 +86,46 @@ public final class CLIAbstraction {
     return "";
   }
 
+  /**
+   * Resolves the working directories of all passed PIDs with a single pwdx invocation. PIDs that
+   * could not be resolved are omitted in the result.
+   */
+  public static Map<Long, String> findWorkingDirectoriesForPIDs(final Collection<Long> pids)
+      throws IOException {
+
+    final Map<Long, String> pidAndWorkingDirPairs = new HashMap<Long, String>();
+
+    if (pids.isEmpty()) {
+      return pidAndWorkingDirPairs;
+    }
+
+    final List<String> pwdxCommand = new ArrayList<String>();
+    pwdxCommand.add("pwdx");
+    pids.forEach(pid -> pwdxCommand.add(String.valueOf(pid)));
+
+    final List<String> pwdxOutput =
+        executeAndReadShellCommand(false, pwdxCommand.toArray(new String[0]));
+
+    // pdwx output pattern per line: "PID: WorkingDir"
+    for (final String line : pwdxOutput) {
+      final int separatorIndex = line.indexOf(PWDX_SEPARATOR);
+
+      if (separatorIndex < 0) {
+        continue;
+      }
+
+      try {
+        final Long pid = Long.valueOf(line.substring(0, separatorIndex).trim());
+        pidAndWorkingDirPairs.put(pid,
+            line.substring(separatorIndex + PWDX_SEPARATOR.length()).trim());
+      } catch (final NumberFormatException e) {
+        LOGGER.error("Couldn't parse a PID of pwdx output: \n", e);
+      }
+    }
+
+    return pidAndWorkingDirPairs;
+  }
+
   public static void executeShellCommand(final String... cmd) throws IOException {
 
     // Some command line tools don't work as parameter for /bin/sh
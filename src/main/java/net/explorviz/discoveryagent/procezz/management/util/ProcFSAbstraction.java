@@ -0,0 +1,216 @@
+package net.explorviz.discoveryagent.procezz.management.util;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads process information directly from the Linux /proc filesystem. This avoids forking shell
+ * commands (e.g. ps, grep, pwdx) for every discovery cycle and is used instead of
+ * {@link CLIAbstraction} whenever /proc is accessible.
+ */
+public final class ProcFSAbstraction {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ProcFSAbstraction.class);
+
+  private static final Path PROC_PATH = Paths.get("/proc");
+  private static final Path PROC_SELF_PATH = PROC_PATH.resolve("self");
+
+  private static final String CMDLINE_FILE = "cmdline";
+  private static final String STATUS_FILE = "status";
+  private static final String CWD_LINK = "cwd";
+  private static final String STAT_FILE = "stat";
+
+  private static final String UID_PREFIX = "Uid:";
+  private static final String JAVA_IDENTIFIER = "java";
+
+  private static final char ARGUMENT_SEPARATOR = '\0';
+  private static final char SPACE_SYMBOL = ' ';
+
+  // starttime is field 22 of /proc/<pid>/stat, i.e. the 20th field after "pid (comm)"
+  private static final int STAT_START_TIME_INDEX = 19;
+
+  private static final boolean AVAILABLE = Files.isReadable(PROC_SELF_PATH.resolve(STATUS_FILE));
+
+  private ProcFSAbstraction() {
+    // do not instantiate
+  }
+
+  public static boolean isAvailable() {
+    return AVAILABLE;
+  }
+
+  /**
+   * Equivalent of {@link CLIAbstraction#findProzzeses()}: returns all Java processes of the
+   * current user, mapped from PID to command line.
+   */
+  public static Map<Long, String> findProzzeses() throws IOException {
+    final Map<Long, String> pidAndProcessPairs = new HashMap<Long, String>();
+
+    final String ownUid = readRealUid(PROC_SELF_PATH);
+
+    try (DirectoryStream<Path> procEntries =
+        Files.newDirectoryStream(PROC_PATH, ProcFSAbstraction::isPidDirectory)) {
+
+      for (final Path pidDirectory : procEntries) {
+        addJavaProcezz(pidDirectory, ownUid, pidAndProcessPairs);
+      }
+    }
+
+    return pidAndProcessPairs;
+  }
+
+  /**
+   * Returns the PIDs of all running processes. Only the /proc directory itself is read, therefore
+   * this is considerably cheaper than {@link #findProzzeses()}.
+   */
+  public static Set<Long> findPIDs() throws IOException {
+    final Set<Long> pids = new HashSet<Long>();
+
+    try (DirectoryStream<Path> procEntries =
+        Files.newDirectoryStream(PROC_PATH, ProcFSAbstraction::isPidDirectory)) {
+
+      for (final Path pidDirectory : procEntries) {
+        pids.add(Long.valueOf(pidDirectory.getFileName().toString()));
+      }
+    }
+
+    return pids;
+  }
+
+  private static void addJavaProcezz(final Path pidDirectory, final String ownUid,
+      final Map<Long, String> pidAndProcessPairs) {
+
+    try {
+      final String execCMD = readCommandLine(pidDirectory);
+
+      // kernel threads and zombies have an empty command line
+      if (execCMD.isEmpty() || !execCMD.contains(JAVA_IDENTIFIER)) {
+        return;
+      }
+
+      if (ownUid.equals(readRealUid(pidDirectory))) {
+        pidAndProcessPairs.put(Long.valueOf(pidDirectory.getFileName().toString()), execCMD);
+      }
+    } catch (final IOException e) {
+      // process terminated during the scan or is not accessible
+      LOGGER.debug("Skipping {} during procezz scan: {}", pidDirectory, e.toString());
+    }
+  }
+
+  public static String findWorkingDirectoryForPID(final long pid) throws IOException {
+    return Files.readSymbolicLink(PROC_PATH.resolve(String.valueOf(pid)).resolve(CWD_LINK))
+        .toString();
+  }
+
+  /**
+   * Resolves the working directories of all passed PIDs in a single pass without spawning any
+   * process. PIDs that vanished or are not accessible are omitted in the result.
+   */
+  public static Map<Long, String> findWorkingDirectoriesForPIDs(final Collection<Long> pids) {
+    final Map<Long, String> pidAndWorkingDirPairs = new HashMap<Long, String>();
+
+    for (final Long pid : pids) {
+      try {
+        pidAndWorkingDirPairs.put(pid, findWorkingDirectoryForPID(pid));
+      } catch (final IOException e) {
+        LOGGER.debug("Could not read working directory of PID {}: {}", pid, e.toString());
+      }
+    }
+
+    return pidAndWorkingDirPairs;
+  }
+
+  /**
+   * Returns the start time of the process (in clock ticks after system boot). Together with the
+   * PID, this value uniquely identifies a process, even if PIDs are reused.
+   */
+  public static long findStartTimeForPID(final long pid) throws IOException {
+    final String stat = new String(
+        Files.readAllBytes(PROC_PATH.resolve(String.valueOf(pid)).resolve(STAT_FILE)),
+        StandardCharsets.UTF_8);
+
+    // comm may contain spaces and parentheses, therefore search for the last ')'
+    final int commEnd = stat.lastIndexOf(')');
+
+    if (commEnd < 0) {
+      throw new IOException("Malformed stat file for PID " + pid);
+    }
+
+    final String[] fields = stat.substring(commEnd + 1).trim().split("\\s+");
+
+    if (fields.length <= STAT_START_TIME_INDEX) {
+      throw new IOException("Malformed stat file for PID " + pid);
+    }
+
+    try {
+      return Long.parseLong(fields[STAT_START_TIME_INDEX]);
+    } catch (final NumberFormatException e) {
+      throw new IOException("Malformed stat file for PID " + pid, e);
+    }
+  }
+
+  /**
+   * Returns the command line of the process with blank-separated arguments.
+   */
+  public static String findCommandLineForPID(final long pid) throws IOException {
+    return readCommandLine(PROC_PATH.resolve(String.valueOf(pid)));
+  }
+
+  public static String findRealUidForPID(final long pid) throws IOException {
+    return readRealUid(PROC_PATH.resolve(String.valueOf(pid)));
+  }
+
+  /**
+   * Returns the real UID of the agent's own process.
+   */
+  public static String findOwnRealUid() throws IOException {
+    return readRealUid(PROC_SELF_PATH);
+  }
+
+  private static boolean isPidDirectory(final Path path) {
+    final String fileName = path.getFileName().toString();
+
+    for (int i = 0; i < fileName.length(); i++) {
+      if (!Character.isDigit(fileName.charAt(i))) {
+        return false;
+      }
+    }
+
+    return !fileName.isEmpty();
+  }
+
+  private static String readCommandLine(final Path pidDirectory) throws IOException {
+    final byte[] rawCmdline = Files.readAllBytes(pidDirectory.resolve(CMDLINE_FILE));
+
+    // arguments are separated (and terminated) by NUL characters
+    return new String(rawCmdline, StandardCharsets.UTF_8)
+        .replace(ARGUMENT_SEPARATOR, SPACE_SYMBOL).trim();
+  }
+
+  private static String readRealUid(final Path pidDirectory) throws IOException {
+    final List<String> statusLines =
+        Files.readAllLines(pidDirectory.resolve(STATUS_FILE), StandardCharsets.UTF_8);
+
+    for (final String line : statusLines) {
+      if (line.startsWith(UID_PREFIX)) {
+        // pattern: "Uid: real effective saved filesystem"
+        return line.substring(UID_PREFIX.length()).trim().split("\\s+")[0];
+      }
+    }
+
+    throw new IOException("No Uid entry in " + pidDirectory.resolve(STATUS_FILE));
+  }
+
+}
@@ -0,0 +1,189 @@
+package net.explorviz.discoveryagent.procezz.management.util;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Predicate;
+import net.explorviz.discoveryagent.procezz.management.ProcezzScanExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Scans the /proc filesystem and caches the examined processes by their fingerprint, i.e., PID,
+ * start time and command line hash. A process with an unchanged fingerprint was neither replaced
+ * (the start time changes if the PID is reused) nor executed another command (the command line
+ * changes), therefore its owner and working directory are reused instead of being read again.
+ * Only the command line and start time are read for every process, the costs of a scan thus depend
+ * on the number of changed processes.
+ */
+public final class ProcezzFingerprintCache {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ProcezzFingerprintCache.class);
+
+  private final ConcurrentMap<Long, Fingerprint> fingerprints =
+      new ConcurrentHashMap<Long, Fingerprint>();
+
+  private final ProcezzScanExecutor scanExecutor;
+  private final Predicate<String> commandFilter;
+
+  /**
+   * @param commandFilter processes whose command line does not match the filter are skipped
+   */
+  public ProcezzFingerprintCache(final ProcezzScanExecutor scanExecutor,
+      final Predicate<String> commandFilter) {
+    this.scanExecutor = scanExecutor;
+    this.commandFilter = commandFilter;
+  }
+
+  /**
+   * Examines the passed PIDs or all running processes. Fingerprints of vanished processes are
+   * evicted by scans of all running processes.
+   *
+   * @param pids PIDs to examine or null for all running processes
+   * @return fingerprints of the matching processes of the current user, mapped by PID
+   */
+  public Map<Long, Fingerprint> scan(final Collection<Long> pids) throws IOException {
+    final Collection<Long> pidsToScan = pids == null ? ProcFSAbstraction.findPIDs() : pids;
+    final String ownUid = ProcFSAbstraction.findOwnRealUid();
+
+    final Map<Long, Fingerprint> ownProcezzes = new HashMap<Long, Fingerprint>();
+    final List<Fingerprint> changedOwnProcezzes = new ArrayList<Fingerprint>();
+
+    for (final Long pid : pidsToScan) {
+      try {
+        final String execCMD = ProcFSAbstraction.findCommandLineForPID(pid);
+
+        // kernel threads and zombies have an empty command line
+        if (execCMD.isEmpty() || !commandFilter.test(execCMD)) {
+          continue;
+        }
+
+        final long startTime = ProcFSAbstraction.findStartTimeForPID(pid);
+        final Fingerprint cachedFingerprint = fingerprints.get(pid);
+
+        if (cachedFingerprint != null && cachedFingerprint.matches(startTime, execCMD)) {
+          if (cachedFingerprint.ownProcezz) {
+            ownProcezzes.put(pid, cachedFingerprint);
+          }
+          continue;
+        }
+
+        final boolean ownProcezz = ownUid.equals(ProcFSAbstraction.findRealUidForPID(pid));
+        final Fingerprint fingerprint =
+            new Fingerprint(pid, startTime, execCMD, ownProcezz, null);
+
+        if (ownProcezz) {
+          changedOwnProcezzes.add(fingerprint);
+        } else {
+          fingerprints.put(pid, fingerprint);
+        }
+      } catch (final IOException e) {
+        // process terminated during the scan or is not accessible
+        LOGGER.debug("Skipping PID {} during procezz scan: {}", pid, e.toString());
+      }
+    }
+
+    ownProcezzes.putAll(resolveWorkingDirectories(changedOwnProcezzes));
+
+    if (pids == null) {
+      fingerprints.keySet().retainAll(pidsToScan);
+    }
+
+    LOGGER.debug("Examined {} procezzes, {} of them changed", ownProcezzes.size(),
+        changedOwnProcezzes.size());
+
+    return ownProcezzes;
+  }
+
+  private Map<Long, Fingerprint> resolveWorkingDirectories(final List<Fingerprint> procezzes) {
+    final Map<Long, Fingerprint> resolvedProcezzes = new HashMap<Long, Fingerprint>();
+
+    if (procezzes.isEmpty()) {
+      return resolvedProcezzes;
+    }
+
+    final List<Long> pids = new ArrayList<Long>();
+    procezzes.forEach(fingerprint -> pids.add(fingerprint.pid));
+
+    final Map<Long, String> workingDirs =
+        scanExecutor.enrichAll(pids, ProcezzFingerprintCache::findWorkingDirectories);
+
+    for (final Fingerprint fingerprint : procezzes) {
+      final String workingDir = workingDirs.get(fingerprint.pid);
+
+      if (workingDir == null) {
+        // missed the deadline, not cached, the working directory is resolved again by the next scan
+        resolvedProcezzes.put(fingerprint.pid, fingerprint);
+      } else {
+        final Fingerprint resolvedFingerprint = fingerprint.withWorkingDirectory(workingDir);
+        fingerprints.put(fingerprint.pid, resolvedFingerprint);
+        resolvedProcezzes.put(fingerprint.pid, resolvedFingerprint);
+      }
+    }
+
+    return resolvedProcezzes;
+  }
+
+  private static Map<Long, String> findWorkingDirectories(final Collection<Long> pids) {
+    final Map<Long, String> workingDirs = ProcFSAbstraction.findWorkingDirectoriesForPIDs(pids);
+
+    // vanished processes have no working directory, in contrast
+    // to processes of batches that missed the deadline
+    pids.forEach(pid -> workingDirs.putIfAbsent(pid, ""));
+
+    return workingDirs;
+  }
+
+  /**
+   * Immutable result of examining a process.
+   */
+  public static final class Fingerprint {
+
+    private final long pid;
+    private final long startTime;
+    private final int commandHash;
+    private final String executionCommand;
+    private final boolean ownProcezz;
+    private final String workingDirectory;
+
+    private Fingerprint(final long pid, final long startTime, final String executionCommand,
+        final boolean ownProcezz, final String workingDirectory) {
+      this.pid = pid;
+      this.startTime = startTime;
+      this.commandHash = executionCommand.hashCode();
+      this.executionCommand = executionCommand;
+      this.ownProcezz = ownProcezz;
+      this.workingDirectory = workingDirectory;
+    }
+
+    private boolean matches(final long otherStartTime, final String otherExecutionCommand) {
+      return startTime == otherStartTime && commandHash == otherExecutionCommand.hashCode()
+          && executionCommand.equals(otherExecutionCommand);
+    }
+
+    private Fingerprint withWorkingDirectory(final String newWorkingDirectory) {
+      return new Fingerprint(pid, startTime, executionCommand, ownProcezz, newWorkingDirectory);
+    }
+
+    public long getPid() {
+      return pid;
+    }
+
+    public String getExecutionCommand() {
+      return executionCommand;
+    }
+
+    /**
+     * Returns the working directory or null, if it could not be resolved in time.
+     */
+    public String getWorkingDirectory() {
+      return workingDirectory;
+    }
+  }
+
+}
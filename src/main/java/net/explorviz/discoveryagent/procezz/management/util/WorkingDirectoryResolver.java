@@ -0,0 +1,140 @@
+package net.explorviz.discoveryagent.procezz.management.util;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import net.explorviz.discoveryagent.procezz.management.ProcezzScanExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Resolves the working directories of processes in batches and caches them by PID and process
+ * start time. Unchanged processes are therefore resolved only once during their lifetime. The
+ * batches are resolved concurrently, working directories that could not be resolved in time are
+ * omitted and resolved again by the next call.
+ */
+public final class WorkingDirectoryResolver {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(WorkingDirectoryResolver.class);
+
+  private static final long UNKNOWN_START_TIME = -1L;
+
+  private final ConcurrentMap<Long, CachedWorkingDirectory> cache =
+      new ConcurrentHashMap<Long, CachedWorkingDirectory>();
+
+  private final ProcezzScanExecutor scanExecutor;
+
+  public WorkingDirectoryResolver(final ProcezzScanExecutor scanExecutor) {
+    this.scanExecutor = scanExecutor;
+  }
+
+  /**
+   * Resolves the working directories of all passed PIDs. Cache entries of PIDs that are not
+   * passed are evicted, therefore the passed collection must contain all currently known PIDs.
+   */
+  public Map<Long, String> resolveAll(final Collection<Long> pids) {
+    final Map<Long, String> workingDirectories = resolve(pids);
+
+    // evict vanished procezzes
+    cache.keySet().retainAll(pids);
+
+    return workingDirectories;
+  }
+
+  /**
+   * Returns the working directory of the passed PID or null, if it could not be resolved in time.
+   */
+  public String resolve(final long pid) {
+    return resolve(Collections.singleton(pid)).get(pid);
+  }
+
+  private Map<Long, String> resolve(final Collection<Long> pids) {
+    final Map<Long, String> workingDirectories = new HashMap<Long, String>();
+    final Map<Long, Long> unresolvedPidsAndStartTimes = new HashMap<Long, Long>();
+
+    for (final Long pid : pids) {
+      final long startTime = findStartTime(pid);
+      final CachedWorkingDirectory cachedEntry = cache.get(pid);
+
+      if (cachedEntry != null && startTime != UNKNOWN_START_TIME
+          && cachedEntry.startTime == startTime) {
+        workingDirectories.put(pid, cachedEntry.workingDirectory);
+      } else {
+        unresolvedPidsAndStartTimes.put(pid, startTime);
+      }
+    }
+
+    if (unresolvedPidsAndStartTimes.isEmpty()) {
+      return workingDirectories;
+    }
+
+    final Map<Long, String> resolvedWorkingDirectories =
+        scanExecutor.enrichAll(unresolvedPidsAndStartTimes.keySet(), this::findWorkingDirectories);
+
+    unresolvedPidsAndStartTimes.forEach((pid, startTime) -> {
+      final String workingDir = resolvedWorkingDirectories.get(pid);
+
+      if (workingDir == null) {
+        // missed the deadline
+        return;
+      }
+
+      workingDirectories.put(pid, workingDir);
+
+      // only cache directories of procezzes that can be identified later on
+      if (startTime != UNKNOWN_START_TIME && !workingDir.isEmpty()) {
+        cache.put(pid, new CachedWorkingDirectory(startTime, workingDir));
+      }
+    });
+
+    return workingDirectories;
+  }
+
+  private Map<Long, String> findWorkingDirectories(final Collection<Long> pids) {
+    final Map<Long, String> workingDirectories = new HashMap<Long, String>();
+
+    if (ProcFSAbstraction.isAvailable()) {
+      workingDirectories.putAll(ProcFSAbstraction.findWorkingDirectoriesForPIDs(pids));
+    } else {
+      try {
+        workingDirectories.putAll(CLIAbstraction.findWorkingDirectoriesForPIDs(pids));
+      } catch (final IOException e) {
+        LOGGER.error("Error when finding working directories for PIDs {}: {}", pids, e);
+      }
+    }
+
+    // processes without a known working directory are distinguished
+    // from processes of batches that missed the deadline
+    pids.forEach(pid -> workingDirectories.putIfAbsent(pid, ""));
+
+    return workingDirectories;
+  }
+
+  private long findStartTime(final long pid) {
+    if (!ProcFSAbstraction.isAvailable()) {
+      return UNKNOWN_START_TIME;
+    }
+
+    try {
+      return ProcFSAbstraction.findStartTimeForPID(pid);
+    } catch (final IOException e) {
+      return UNKNOWN_START_TIME;
+    }
+  }
+
+  private static final class CachedWorkingDirectory {
+
+    private final long startTime;
+    private final String workingDirectory;
+
+    private CachedWorkingDirectory(final long startTime, final String workingDirectory) {
+      this.startTime = startTime;
+      this.workingDirectory = workingDirectory;
+    }
+  }
+
+}
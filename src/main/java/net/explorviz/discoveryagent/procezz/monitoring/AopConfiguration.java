@@ -0,0 +1,250 @@
+package net.explorviz.discoveryagent.procezz.monitoring;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import org.w3c.dom.Document;
+import org.w3c.dom.DocumentType;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+
+/**
+ * Parsed aop.xml of the AspectJ load-time weaver, e.g.,
+ *
+ * <pre>
+ * &lt;aspectj&gt;
+ *   &lt;weaver&gt;
+ *     &lt;include within="com.example..*" /&gt;
+ *     &lt;exclude within="org.slf4j..*" /&gt;
+ *   &lt;/weaver&gt;
+ *   &lt;aspects&gt;
+ *     &lt;aspect name="kieker.monitoring.probe.aspectj.database.Fullinstrumentation" /&gt;
+ *   &lt;/aspects&gt;
+ * &lt;/aspectj&gt;
+ * </pre>
+ *
+ * The include and exclude patterns can be read and replaced, all other content (e.g. comments and
+ * weaver options) is kept. The referenced DTD is never loaded. Instances are not thread-safe.
+ */
+public final class AopConfiguration {
+
+  static final String ROOT_ELEMENT = "aspectj";
+  static final String WEAVER_ELEMENT = "weaver";
+  static final String INCLUDE_ELEMENT = "include";
+  static final String EXCLUDE_ELEMENT = "exclude";
+  static final String WITHIN_ATTRIBUTE = "within";
+  static final String ASPECTS_ELEMENT = "aspects";
+  static final String ASPECT_ELEMENT = "aspect";
+  static final String CONCRETE_ASPECT_ELEMENT = "concrete-aspect";
+  static final String NAME_ATTRIBUTE = "name";
+
+  private final Document document;
+
+  private AopConfiguration(final Document document) {
+    this.document = document;
+  }
+
+  public static AopConfiguration parse(final String content)
+      throws InvalidAopConfigurationException {
+    try {
+      final DocumentBuilder builder = createDocumentBuilderFactory().newDocumentBuilder();
+
+      // parse errors are thrown instead of being printed to stderr
+      builder.setErrorHandler(new ErrorHandler() {
+        @Override
+        public void warning(final SAXParseException exception) {
+          // warnings do not render the document invalid
+        }
+
+        @Override
+        public void error(final SAXParseException exception) throws SAXException {
+          throw exception;
+        }
+
+        @Override
+        public void fatalError(final SAXParseException exception) throws SAXException {
+          throw exception;
+        }
+      });
+
+      return new AopConfiguration(builder.parse(new InputSource(new StringReader(content))));
+    } catch (final SAXParseException e) {
+      throw new InvalidAopConfigurationException("Malformed aop.xml (line " + e.getLineNumber()
+          + ", column " + e.getColumnNumber() + "): " + e.getMessage(), e);
+    } catch (SAXException | IOException | ParserConfigurationException e) {
+      throw new InvalidAopConfigurationException("Malformed aop.xml: " + e.getMessage(), e);
+    }
+  }
+
+  private static DocumentBuilderFactory createDocumentBuilderFactory()
+      throws ParserConfigurationException {
+    final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+
+    // the DOCTYPE of the default aop.xml references a remote DTD, external content is never loaded
+    factory.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+    factory.setFeature("http://xml.org/sax/features/external-general-entities", false);
+    factory.setFeature("http://xml.org/sax/features/external-parameter-entities", false);
+    factory.setXIncludeAware(false);
+    factory.setExpandEntityReferences(false);
+
+    return factory;
+  }
+
+  /**
+   * Returns the name of the root element.
+   */
+  public String getRootName() {
+    return document.getDocumentElement().getTagName();
+  }
+
+  /**
+   * Returns true if the weaver element exists.
+   */
+  public boolean hasWeaver() {
+    return findChild(document.getDocumentElement(), WEAVER_ELEMENT) != null;
+  }
+
+  /**
+   * Returns the within patterns of all include elements, an empty pattern for elements without
+   * within attribute.
+   */
+  public List<String> getIncludes() {
+    return getWeaverPatterns(INCLUDE_ELEMENT);
+  }
+
+  /**
+   * Returns the within patterns of all exclude elements, an empty pattern for elements without
+   * within attribute.
+   */
+  public List<String> getExcludes() {
+    return getWeaverPatterns(EXCLUDE_ELEMENT);
+  }
+
+  /**
+   * Replaces all include elements by elements with the passed patterns.
+   */
+  public void setIncludes(final List<String> includes) {
+    setWeaverPatterns(INCLUDE_ELEMENT, includes);
+  }
+
+  /**
+   * Replaces all exclude elements by elements with the passed patterns.
+   */
+  public void setExcludes(final List<String> excludes) {
+    setWeaverPatterns(EXCLUDE_ELEMENT, excludes);
+  }
+
+  /**
+   * Returns the names of all aspects, i.e., of aspect and concrete-aspect elements.
+   */
+  public List<String> getAspects() {
+    final List<String> aspects = new ArrayList<String>();
+    final Element aspectsElement = findChild(document.getDocumentElement(), ASPECTS_ELEMENT);
+
+    if (aspectsElement != null) {
+      for (final Element aspect : findChildren(aspectsElement, ASPECT_ELEMENT)) {
+        aspects.add(aspect.getAttribute(NAME_ATTRIBUTE));
+      }
+
+      // aspects that are defined in the aop.xml itself
+      for (final Element aspect : findChildren(aspectsElement, CONCRETE_ASPECT_ELEMENT)) {
+        aspects.add(aspect.getAttribute(NAME_ATTRIBUTE));
+      }
+    }
+
+    return aspects;
+  }
+
+  /**
+   * Returns the content of the aop.xml.
+   */
+  public String render() {
+    try {
+      final Transformer transformer = TransformerFactory.newInstance().newTransformer();
+
+      final DocumentType doctype = document.getDoctype();
+      if (doctype != null && doctype.getPublicId() != null) {
+        transformer.setOutputProperty(OutputKeys.DOCTYPE_PUBLIC, doctype.getPublicId());
+      }
+      if (doctype != null && doctype.getSystemId() != null) {
+        transformer.setOutputProperty(OutputKeys.DOCTYPE_SYSTEM, doctype.getSystemId());
+      }
+
+      final StringWriter content = new StringWriter();
+      transformer.transform(new DOMSource(document), new StreamResult(content));
+      return content.toString();
+    } catch (final TransformerException e) {
+      // a parsed document can always be serialized
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private List<String> getWeaverPatterns(final String elementName) {
+    final List<String> patterns = new ArrayList<String>();
+    final Element weaver = findChild(document.getDocumentElement(), WEAVER_ELEMENT);
+
+    if (weaver != null) {
+      for (final Element element : findChildren(weaver, elementName)) {
+        patterns.add(element.getAttribute(WITHIN_ATTRIBUTE));
+      }
+    }
+
+    return patterns;
+  }
+
+  private void setWeaverPatterns(final String elementName, final List<String> patterns) {
+    Element weaver = findChild(document.getDocumentElement(), WEAVER_ELEMENT);
+
+    if (weaver == null) {
+      weaver = document.createElement(WEAVER_ELEMENT);
+      document.getDocumentElement().insertBefore(weaver,
+          document.getDocumentElement().getFirstChild());
+    }
+
+    for (final Element element : findChildren(weaver, elementName)) {
+      weaver.removeChild(element);
+    }
+
+    for (final String pattern : patterns) {
+      final Element element = document.createElement(elementName);
+      element.setAttribute(WITHIN_ATTRIBUTE, pattern);
+      weaver.appendChild(element);
+    }
+  }
+
+  private static Element findChild(final Element parent, final String name) {
+    final List<Element> children = findChildren(parent, name);
+    return children.isEmpty() ? null : children.get(0);
+  }
+
+  private static List<Element> findChildren(final Element parent, final String name) {
+    final List<Element> children = new ArrayList<Element>();
+    final NodeList childNodes = parent.getChildNodes();
+
+    for (int i = 0; i < childNodes.getLength(); i++) {
+      final Node child = childNodes.item(i);
+      if (child.getNodeType() == Node.ELEMENT_NODE && name.equals(child.getNodeName())) {
+        children.add((Element) child);
+      }
+    }
+
+    return children;
+  }
+
+}
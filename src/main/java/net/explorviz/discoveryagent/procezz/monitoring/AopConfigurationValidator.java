@@ -0,0 +1,78 @@
+package net.explorviz.discoveryagent.procezz.monitoring;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Validates an aop.xml before it is used for a monitored restart, i.e., malformed XML, a missing
+ * weaver, malformed within patterns and missing aspects are reported.
+ */
+public final class AopConfigurationValidator {
+
+  private AopConfigurationValidator() {
+    // no need to instantiate
+  }
+
+  /**
+   * Returns the problems of the passed aop.xml, an empty list if it is valid.
+   */
+  public static List<String> validate(final String content) {
+    if (content == null || content.trim().isEmpty()) {
+      return Collections.singletonList("The aop.xml must not be empty");
+    }
+
+    try {
+      return validate(AopConfiguration.parse(content));
+    } catch (final InvalidAopConfigurationException e) {
+      return Collections.singletonList(e.getMessage());
+    }
+  }
+
+  /**
+   * Returns the problems of the passed aop.xml, an empty list if it is valid.
+   */
+  public static List<String> validate(final AopConfiguration configuration) {
+    final List<String> problems = new ArrayList<String>();
+
+    if (!AopConfiguration.ROOT_ELEMENT.equals(configuration.getRootName())) {
+      problems.add("The root element must be <" + AopConfiguration.ROOT_ELEMENT + ">, but is <"
+          + configuration.getRootName() + ">");
+      return problems;
+    }
+
+    if (!configuration.hasWeaver()) {
+      problems.add("Missing <" + AopConfiguration.WEAVER_ELEMENT + "> element");
+    }
+
+    validatePatterns(AopConfiguration.INCLUDE_ELEMENT, configuration.getIncludes(), problems);
+    validatePatterns(AopConfiguration.EXCLUDE_ELEMENT, configuration.getExcludes(), problems);
+
+    final List<String> aspects = configuration.getAspects();
+
+    if (aspects.isEmpty()) {
+      problems.add("No <" + AopConfiguration.ASPECT_ELEMENT + "> or <"
+          + AopConfiguration.CONCRETE_ASPECT_ELEMENT + "> declared, nothing is monitored");
+    }
+
+    for (final String aspect : aspects) {
+      if (aspect.trim().isEmpty()) {
+        problems.add("Aspect without " + AopConfiguration.NAME_ATTRIBUTE + " attribute");
+      }
+    }
+
+    return problems;
+  }
+
+  private static void validatePatterns(final String elementName, final List<String> patterns,
+      final List<String> problems) {
+    for (final String pattern : patterns) {
+      try {
+        WithinPattern.compile(pattern);
+      } catch (final IllegalArgumentException e) {
+        problems.add("Invalid <" + elementName + ">: " + e.getMessage());
+      }
+    }
+  }
+
+}
@@ -0,0 +1,14 @@
+package net.explorviz.discoveryagent.procezz.monitoring;
+
+/**
+ * Thrown if an aop.xml cannot be parsed.
+ */
+public class InvalidAopConfigurationException extends Exception {
+
+  private static final long serialVersionUID = 1L;
+
+  public InvalidAopConfigurationException(final String message, final Throwable cause) {
+    super(message, cause);
+  }
+
+}
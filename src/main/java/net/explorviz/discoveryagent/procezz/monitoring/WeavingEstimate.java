@@ -0,0 +1,94 @@
+package net.explorviz.discoveryagent.procezz.monitoring;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Number of classes and methods of a classpath that are woven according to an aop.xml, in total
+ * and per include and exclude pattern. The counts of an exclude pattern refer to classes that are
+ * included, i.e., that would be woven without the exclude. An incomplete estimate only covers the
+ * part of the classpath that was scanned within the bounds of the {@link WeavingEstimator}.
+ */
+public final class WeavingEstimate {
+
+  private final List<String> classpath;
+  private final boolean complete;
+  private final int scannedClasses;
+  private final int wovenClasses;
+  private final int wovenMethods;
+  private final List<PatternEstimate> includes;
+  private final List<PatternEstimate> excludes;
+
+  WeavingEstimate(final List<String> classpath, final boolean complete,
+      final int scannedClasses, final int wovenClasses, final int wovenMethods,
+      final List<PatternEstimate> includes, final List<PatternEstimate> excludes) {
+    this.classpath = Collections.unmodifiableList(classpath);
+    this.complete = complete;
+    this.scannedClasses = scannedClasses;
+    this.wovenClasses = wovenClasses;
+    this.wovenMethods = wovenMethods;
+    this.includes = Collections.unmodifiableList(includes);
+    this.excludes = Collections.unmodifiableList(excludes);
+  }
+
+  public List<String> getClasspath() {
+    return classpath;
+  }
+
+  public boolean isComplete() {
+    return complete;
+  }
+
+  public int getScannedClasses() {
+    return scannedClasses;
+  }
+
+  public int getWovenClasses() {
+    return wovenClasses;
+  }
+
+  public int getWovenMethods() {
+    return wovenMethods;
+  }
+
+  public List<PatternEstimate> getIncludes() {
+    return includes;
+  }
+
+  public List<PatternEstimate> getExcludes() {
+    return excludes;
+  }
+
+  /**
+   * Number of classes and methods matched by a single within pattern.
+   */
+  public static final class PatternEstimate {
+
+    private final String pattern;
+    private int classes;
+    private int methods;
+
+    PatternEstimate(final String pattern) {
+      this.pattern = pattern;
+    }
+
+    void add(final int classMethods) {
+      classes++;
+      methods += classMethods;
+    }
+
+    public String getPattern() {
+      return pattern;
+    }
+
+    public int getClasses() {
+      return classes;
+    }
+
+    public int getMethods() {
+      return methods;
+    }
+
+  }
+
+}
@@ -0,0 +1,536 @@
+package net.explorviz.discoveryagent.procezz.monitoring;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarInputStream;
+import java.util.stream.Stream;
+import net.explorviz.discoveryagent.procezz.discovery.util.JarManifestCache;
+import net.explorviz.discoveryagent.procezz.discovery.util.JarManifestCache.JarInfo;
+import net.explorviz.discoveryagent.procezz.monitoring.WeavingEstimate.PatternEstimate;
+import net.explorviz.shared.discovery.model.Procezz;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Estimates the classes and methods of a procezz that are woven according to an aop.xml. The
+ * classpath is derived from the execution command of the procezz (-cp, -classpath and -jar
+ * including the Class-Path of the manifest and the libraries of Spring Boot jars and wars).
+ * Methods are counted, if they have a body, i.e., abstract, native, synthetic and bridge methods
+ * and static initializers are not counted.
+ *
+ * <p>
+ * Estimates are computed on request threads, therefore the scan is bounded by a time limit, a
+ * maximum folder depth and a maximum number of scanned files. The estimate is incomplete, if one of
+ * the bounds is exceeded.
+ * </p>
+ */
+public final class WeavingEstimator {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(WeavingEstimator.class);
+
+  private static final String CLASS_SUFFIX = ".class";
+  private static final String[] CLASS_FOLDERS = {"BOOT-INF/classes/", "WEB-INF/classes/"};
+  private static final String[] LIBRARY_FOLDERS = {"BOOT-INF/lib/", "WEB-INF/lib/"};
+
+  private static final int CLASS_FILE_MAGIC = 0xCAFEBABE;
+  private static final int ACC_NATIVE = 0x0100;
+  private static final int ACC_ABSTRACT = 0x0400;
+  private static final int ACC_BRIDGE = 0x0040;
+  private static final int ACC_SYNTHETIC = 0x1000;
+
+  private static final long TIME_LIMIT_MILLIS = TimeUnit.SECONDS.toMillis(10);
+  private static final int MAX_FOLDER_DEPTH = 32;
+  private static final int MAX_SCANNED_FILES = 200000;
+
+  private WeavingEstimator() {
+    // no need to instantiate
+  }
+
+  /**
+   * Estimates the weaving of the passed procezz with the passed (valid) aop.xml.
+   *
+   * @throws IllegalArgumentException if a within pattern of the aop.xml is malformed
+   */
+  public static WeavingEstimate estimate(final AopConfiguration configuration,
+      final Procezz procezz) {
+    final List<Path> classpath = resolveClasspath(procezz);
+    final ScanBudget budget =
+        new ScanBudget(System.currentTimeMillis() + TIME_LIMIT_MILLIS, MAX_SCANNED_FILES);
+    final Map<String, Integer> methodsByClass = scanClasspath(classpath, budget);
+
+    final List<CompiledPattern> includes = compilePatterns(configuration.getIncludes());
+    final List<CompiledPattern> excludes = compilePatterns(configuration.getExcludes());
+
+    int wovenClasses = 0;
+    int wovenMethods = 0;
+
+    for (final Map.Entry<String, Integer> scannedClass : methodsByClass.entrySet()) {
+      final String className = scannedClass.getKey();
+      final int methods = scannedClass.getValue();
+
+      // without includes, all classes are considered for weaving
+      boolean included = includes.isEmpty();
+
+      for (final CompiledPattern include : includes) {
+        if (include.pattern.matches(className)) {
+          include.estimate.add(methods);
+          included = true;
+        }
+      }
+
+      if (!included) {
+        continue;
+      }
+
+      boolean excluded = false;
+
+      for (final CompiledPattern exclude : excludes) {
+        if (exclude.pattern.matches(className)) {
+          exclude.estimate.add(methods);
+          excluded = true;
+        }
+      }
+
+      if (!excluded) {
+        wovenClasses++;
+        wovenMethods += methods;
+      }
+    }
+
+    final List<String> classpathEntries = new ArrayList<String>();
+    classpath.forEach(entry -> classpathEntries.add(entry.toString()));
+
+    return new WeavingEstimate(classpathEntries, budget.complete, methodsByClass.size(),
+        wovenClasses, wovenMethods, toEstimates(includes), toEstimates(excludes));
+  }
+
+  private static List<CompiledPattern> compilePatterns(final List<String> patterns) {
+    final List<CompiledPattern> compiledPatterns = new ArrayList<CompiledPattern>();
+
+    for (final String pattern : patterns) {
+      compiledPatterns.add(new CompiledPattern(pattern, WithinPattern.compile(pattern)));
+    }
+
+    return compiledPatterns;
+  }
+
+  private static List<PatternEstimate> toEstimates(final List<CompiledPattern> patterns) {
+    final List<PatternEstimate> estimates = new ArrayList<PatternEstimate>();
+    patterns.forEach(pattern -> estimates.add(pattern.estimate));
+    return estimates;
+  }
+
+  /**
+   * Returns the classpath of the passed procezz. Relative entries are resolved against the working
+   * directory of the procezz and skipped, if it is unknown. The implicit classpath of procezzes
+   * without -cp (the working directory, e.g., / or a home directory) is not scanned.
+   */
+  static List<Path> resolveClasspath(final Procezz procezz) {
+    final String userExecCMD = procezz.getUserExecutionCommand();
+    final String execCMD = userExecCMD == null || userExecCMD.trim().isEmpty()
+        ? procezz.getOsExecutionCommand() : userExecCMD;
+
+    final List<Path> classpath = new ArrayList<Path>();
+
+    if (execCMD == null) {
+      return classpath;
+    }
+
+    final String workingDir = procezz.getWorkingDirectory();
+    final String[] execCMDParts = execCMD.trim().split("\\s+");
+
+    // the first part is the java executable, the options end with the main class or jar
+    for (int i = 1; i < execCMDParts.length; i++) {
+      final String part = execCMDParts[i];
+
+      if (("-cp".equals(part) || "-classpath".equals(part) || "--class-path".equals(part))
+          && i + 1 < execCMDParts.length) {
+        i++;
+
+        for (final String entry : execCMDParts[i].split(File.pathSeparator)) {
+          addClasspathEntry(classpath, entry, workingDir);
+        }
+      } else if ("-jar".equals(part) && i + 1 < execCMDParts.length) {
+        // the classpath is ignored in favor of the jar
+        classpath.clear();
+        addMainJar(classpath, resolve(execCMDParts[i + 1], workingDir));
+        return classpath;
+      } else if (!part.startsWith("-")) {
+        break;
+      }
+    }
+
+    return classpath;
+  }
+
+  private static void addClasspathEntry(final List<Path> classpath, final String entry,
+      final String workingDir) {
+    if (entry.isEmpty()) {
+      return;
+    }
+
+    if (entry.endsWith("*")) {
+      // all jars of a folder
+      final Path folder = resolve(entry.substring(0, entry.length() - 1), workingDir);
+
+      if (folder == null || !Files.isDirectory(folder)) {
+        return;
+      }
+
+      try (DirectoryStream<Path> jars = Files.newDirectoryStream(folder, "*.{jar,JAR}")) {
+        jars.forEach(classpath::add);
+      } catch (final IOException e) {
+        LOGGER.debug("Could not list classpath folder {}. Error: {}", folder, e.toString());
+      }
+    } else {
+      final Path path = resolve(entry, workingDir);
+
+      if (path != null) {
+        classpath.add(path);
+      }
+    }
+  }
+
+  private static void addMainJar(final List<Path> classpath, final Path mainJar) {
+    if (mainJar == null) {
+      return;
+    }
+
+    classpath.add(mainJar);
+
+    final JarInfo jarInfo = JarManifestCache.inspectJar(mainJar);
+    final String manifestClasspath =
+        jarInfo == null ? null : jarInfo.getMainAttribute("Class-Path");
+
+    if (manifestClasspath == null) {
+      return;
+    }
+
+    // entries of the manifest are relative to the jar
+    final String jarFolder = mainJar.getParent() == null ? null : mainJar.getParent().toString();
+
+    for (final String entry : manifestClasspath.trim().split("\\s+")) {
+      addClasspathEntry(classpath, entry, jarFolder);
+    }
+  }
+
+  private static Path resolve(final String entry, final String workingDir) {
+    try {
+      final Path path = Paths.get(entry);
+
+      if (path.isAbsolute()) {
+        return path.normalize();
+      }
+
+      if (workingDir == null || workingDir.trim().isEmpty()) {
+        return null;
+      }
+
+      return Paths.get(workingDir.trim()).resolve(path).normalize();
+    } catch (final InvalidPathException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Returns the number of methods per class name. Classes that occur multiple times are counted
+   * once (the first occurrence wins, like for the class loader).
+   */
+  private static Map<String, Integer> scanClasspath(final List<Path> classpath,
+      final ScanBudget budget) {
+    final Map<String, Integer> methodsByClass = new LinkedHashMap<String, Integer>();
+
+    for (final Path entry : classpath) {
+      if (budget.exhausted) {
+        break;
+      }
+
+      try {
+        if (Files.isDirectory(entry)) {
+          scanFolder(entry, methodsByClass, budget);
+        } else if (Files.isRegularFile(entry)) {
+          scanJar(entry, methodsByClass, budget);
+        }
+      } catch (final IOException | UncheckedIOException | SecurityException e) {
+        // e.g. a subfolder that is not readable
+        LOGGER.debug("Could not scan classpath entry {}. Error: {}", entry, e.toString());
+        budget.complete = false;
+      }
+    }
+
+    return methodsByClass;
+  }
+
+  private static void scanFolder(final Path folder, final Map<String, Integer> methodsByClass,
+      final ScanBudget budget) throws IOException {
+    try (Stream<Path> paths = Files.walk(folder, MAX_FOLDER_DEPTH)) {
+      final Iterator<Path> pathIterator = paths.iterator();
+
+      while (pathIterator.hasNext() && budget.consume()) {
+        final Path classFile = pathIterator.next();
+
+        if (!classFile.toString().endsWith(CLASS_SUFFIX) || !Files.isRegularFile(classFile)) {
+          continue;
+        }
+
+        final String entryName =
+            folder.relativize(classFile).toString().replace(File.separatorChar, '/');
+
+        try (InputStream in = Files.newInputStream(classFile)) {
+          addClass(entryName, in, methodsByClass);
+        }
+      }
+    }
+  }
+
+  private static void scanJar(final Path jar, final Map<String, Integer> methodsByClass,
+      final ScanBudget budget) throws IOException {
+    try (JarFile jarFile = new JarFile(jar.toFile(), false)) {
+      final Enumeration<JarEntry> entries = jarFile.entries();
+
+      while (entries.hasMoreElements() && budget.consume()) {
+        final JarEntry entry = entries.nextElement();
+        final String entryName = entry.getName();
+
+        if (entryName.endsWith(CLASS_SUFFIX)) {
+          try (InputStream in = jarFile.getInputStream(entry)) {
+            addClass(entryName, in, methodsByClass);
+          }
+        } else if (isLibrary(entryName)) {
+          try (JarInputStream nestedJar = new JarInputStream(jarFile.getInputStream(entry))) {
+            scanNestedJar(nestedJar, methodsByClass, budget);
+          }
+        }
+      }
+    }
+  }
+
+  private static void scanNestedJar(final JarInputStream nestedJar,
+      final Map<String, Integer> methodsByClass, final ScanBudget budget) throws IOException {
+    JarEntry entry;
+
+    while (budget.consume() && (entry = nestedJar.getNextJarEntry()) != null) {
+      if (entry.getName().endsWith(CLASS_SUFFIX)) {
+        addClass(entry.getName(), nestedJar, methodsByClass);
+      }
+    }
+  }
+
+  private static boolean isLibrary(final String entryName) {
+    for (final String libraryFolder : LIBRARY_FOLDERS) {
+      if (entryName.startsWith(libraryFolder) && entryName.endsWith(".jar")) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  private static void addClass(final String entryName, final InputStream classFile,
+      final Map<String, Integer> methodsByClass) throws IOException {
+    String classPath = entryName;
+
+    for (final String classFolder : CLASS_FOLDERS) {
+      if (classPath.startsWith(classFolder)) {
+        classPath = classPath.substring(classFolder.length());
+      }
+    }
+
+    // e.g. multi-release classes of META-INF/versions, module-info and package-info
+    if (classPath.startsWith("META-INF/") || classPath.endsWith("-info" + CLASS_SUFFIX)) {
+      return;
+    }
+
+    final String className =
+        classPath.substring(0, classPath.length() - CLASS_SUFFIX.length()).replace('/', '.');
+
+    if (methodsByClass.containsKey(className)) {
+      return;
+    }
+
+    final int methods = countMethods(classFile);
+
+    if (methods >= 0) {
+      methodsByClass.put(className, methods);
+    }
+  }
+
+  /**
+   * Returns the number of methods with a body of the passed class file or -1, if it is no class
+   * file. The stream is not closed.
+   */
+  private static int countMethods(final InputStream classFile) throws IOException {
+    final DataInputStream in = new DataInputStream(classFile);
+
+    if (in.readInt() != CLASS_FILE_MAGIC) {
+      return -1;
+    }
+
+    // minor and major version
+    in.readInt();
+
+    final int constantPoolCount = in.readUnsignedShort();
+    final String[] utf8Constants = new String[constantPoolCount];
+
+    for (int i = 1; i < constantPoolCount; i++) {
+      final int tag = in.readUnsignedByte();
+
+      switch (tag) {
+        case 1: // Utf8
+          utf8Constants[i] = in.readUTF();
+          break;
+        case 7: // Class
+        case 8: // String
+        case 16: // MethodType
+        case 19: // Module
+        case 20: // Package
+          skip(in, 2);
+          break;
+        case 15: // MethodHandle
+          skip(in, 3);
+          break;
+        case 3: // Integer
+        case 4: // Float
+        case 9: // Fieldref
+        case 10: // Methodref
+        case 11: // InterfaceMethodref
+        case 12: // NameAndType
+        case 17: // Dynamic
+        case 18: // InvokeDynamic
+          skip(in, 4);
+          break;
+        case 5: // Long
+        case 6: // Double
+          skip(in, 8);
+          // occupies two entries
+          i++;
+          break;
+        default:
+          return -1;
+      }
+    }
+
+    // access flags, this class and super class
+    skip(in, 6);
+    skip(in, 2 * in.readUnsignedShort());
+
+    final int fieldCount = in.readUnsignedShort();
+    for (int i = 0; i < fieldCount; i++) {
+      skip(in, 6);
+      skipAttributes(in);
+    }
+
+    final int methodCount = in.readUnsignedShort();
+    int methodsWithBody = 0;
+
+    for (int i = 0; i < methodCount; i++) {
+      final int accessFlags = in.readUnsignedShort();
+      final int nameIndex = in.readUnsignedShort();
+      skip(in, 2);
+      skipAttributes(in);
+
+      final boolean withoutBody = (accessFlags & (ACC_ABSTRACT | ACC_NATIVE)) != 0;
+      final boolean generated = (accessFlags & (ACC_BRIDGE | ACC_SYNTHETIC)) != 0;
+      final boolean staticInitializer =
+          nameIndex < utf8Constants.length && "<clinit>".equals(utf8Constants[nameIndex]);
+
+      if (!withoutBody && !generated && !staticInitializer) {
+        methodsWithBody++;
+      }
+    }
+
+    return methodsWithBody;
+  }
+
+  private static void skipAttributes(final DataInputStream in) throws IOException {
+    final int attributeCount = in.readUnsignedShort();
+
+    for (int i = 0; i < attributeCount; i++) {
+      skip(in, 2);
+      skip(in, in.readInt() & 0xFFFFFFFFL);
+    }
+  }
+
+  private static void skip(final DataInputStream in, final long bytes) throws IOException {
+    long remaining = bytes;
+
+    while (remaining > 0) {
+      final long skipped = in.skip(remaining);
+
+      if (skipped <= 0) {
+        // skip may return 0 before the end of the stream
+        if (in.read() < 0) {
+          throw new IOException("Truncated class file");
+        }
+        remaining--;
+      } else {
+        remaining -= skipped;
+      }
+    }
+  }
+
+  /**
+   * Remaining time and number of files of a single estimate. The estimate is complete, if the
+   * budget was not exhausted and all classpath entries could be scanned.
+   */
+  private static final class ScanBudget {
+
+    private final long deadline;
+    private int remainingFiles;
+    private boolean exhausted;
+    private boolean complete = true;
+
+    ScanBudget(final long deadline, final int maxFiles) {
+      this.deadline = deadline;
+      this.remainingFiles = maxFiles;
+    }
+
+    /**
+     * Consumes the budget for a single file.
+     *
+     * @return false, if the budget is exhausted and the scan must be stopped
+     */
+    boolean consume() {
+      if (!exhausted && (remainingFiles-- <= 0 || System.currentTimeMillis() > deadline)) {
+        exhausted = true;
+        complete = false;
+      }
+
+      return !exhausted;
+    }
+
+  }
+
+  /**
+   * Compiled within pattern and its estimate.
+   */
+  private static final class CompiledPattern {
+
+    private final WithinPattern pattern;
+    private final PatternEstimate estimate;
+
+    CompiledPattern(final String pattern, final WithinPattern compiledPattern) {
+      this.pattern = compiledPattern;
+      this.estimate = new PatternEstimate(pattern);
+    }
+
+  }
+
+}
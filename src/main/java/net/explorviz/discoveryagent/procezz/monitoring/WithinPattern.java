@@ -0,0 +1,198 @@
+package net.explorviz.discoveryagent.procezz.monitoring;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * Compiled AspectJ type pattern of a within attribute, e.g., {@code com.example..*},
+ * {@code com.example.*Service} or {@code com.example..* && !com.example.generated..*}. Subtype
+ * patterns (+) are approximated by the type itself, since the type hierarchy is not known.
+ */
+final class WithinPattern {
+
+  private static final Pattern TYPE_PATTERN_SYNTAX =
+      Pattern.compile("[A-Za-z0-9_$*]+(?:(?:\\.|\\.\\.)[A-Za-z0-9_$*]+)*\\+?");
+
+  private final Predicate<String> matcher;
+
+  private WithinPattern(final Predicate<String> matcher) {
+    this.matcher = matcher;
+  }
+
+  /**
+   * @throws IllegalArgumentException if the pattern is empty or malformed
+   */
+  static WithinPattern compile(final String pattern) {
+    final List<String> tokens = tokenize(pattern);
+
+    if (tokens.isEmpty()) {
+      throw new IllegalArgumentException("Empty within pattern");
+    }
+
+    final Parser parser = new Parser(pattern, tokens);
+    final Predicate<String> matcher = parser.parseOr();
+
+    if (parser.position != tokens.size()) {
+      throw new IllegalArgumentException(
+          "Unexpected '" + tokens.get(parser.position) + "' in within pattern " + pattern);
+    }
+
+    return new WithinPattern(matcher);
+  }
+
+  /**
+   * @param className binary name of a class, e.g., com.example.Outer$Inner
+   */
+  boolean matches(final String className) {
+    return matcher.test(className);
+  }
+
+  private static List<String> tokenize(final String pattern) {
+    final List<String> tokens = new ArrayList<String>();
+    int i = 0;
+
+    while (i < pattern.length()) {
+      final char c = pattern.charAt(i);
+
+      if (Character.isWhitespace(c)) {
+        i++;
+      } else if (c == '(' || c == ')' || c == '!') {
+        tokens.add(String.valueOf(c));
+        i++;
+      } else if (pattern.startsWith("&&", i) || pattern.startsWith("||", i)) {
+        tokens.add(pattern.substring(i, i + 2));
+        i += 2;
+      } else {
+        final int start = i;
+        while (i < pattern.length() && !Character.isWhitespace(pattern.charAt(i))
+            && "()!&|".indexOf(pattern.charAt(i)) < 0) {
+          i++;
+        }
+        if (start == i) {
+          throw new IllegalArgumentException(
+              "Unexpected '" + c + "' in within pattern " + pattern);
+        }
+        tokens.add(pattern.substring(start, i));
+      }
+    }
+
+    return tokens;
+  }
+
+  private static Predicate<String> compileTypePattern(final String pattern,
+      final String typePattern) {
+    if (!TYPE_PATTERN_SYNTAX.matcher(typePattern).matches()) {
+      throw new IllegalArgumentException(
+          "Malformed type pattern '" + typePattern + "' in within pattern " + pattern);
+    }
+
+    final String namePattern = typePattern.endsWith("+")
+        ? typePattern.substring(0, typePattern.length() - 1) : typePattern;
+
+    // a single wildcard matches all types, not only types of the default package
+    if ("*".equals(namePattern)) {
+      return className -> true;
+    }
+
+    final StringBuilder regex = new StringBuilder();
+
+    for (int i = 0; i < namePattern.length(); i++) {
+      final char c = namePattern.charAt(i);
+
+      if (namePattern.startsWith("..", i)) {
+        // any number of packages
+        regex.append("\\.(?:.*\\.)?");
+        i++;
+      } else if (c == '.') {
+        regex.append("\\.");
+      } else if (c == '*') {
+        regex.append("[^.]*");
+      } else if (c == '$') {
+        regex.append("\\$");
+      } else {
+        regex.append(c);
+      }
+    }
+
+    final Pattern compiledPattern = Pattern.compile(regex.toString());
+    return className -> compiledPattern.matcher(className).matches();
+  }
+
+  /**
+   * Recursive descent parser of the boolean operators (!, && and ||) of a within pattern.
+   */
+  private static final class Parser {
+
+    private final String pattern;
+    private final List<String> tokens;
+    private int position;
+
+    Parser(final String pattern, final List<String> tokens) {
+      this.pattern = pattern;
+      this.tokens = tokens;
+    }
+
+    Predicate<String> parseOr() {
+      Predicate<String> matcher = parseAnd();
+
+      while (accept("||")) {
+        matcher = matcher.or(parseAnd());
+      }
+
+      return matcher;
+    }
+
+    private Predicate<String> parseAnd() {
+      Predicate<String> matcher = parseUnary();
+
+      while (accept("&&")) {
+        matcher = matcher.and(parseUnary());
+      }
+
+      return matcher;
+    }
+
+    private Predicate<String> parseUnary() {
+      if (accept("!")) {
+        return parseUnary().negate();
+      }
+
+      if (accept("(")) {
+        final Predicate<String> matcher = parseOr();
+
+        if (!accept(")")) {
+          throw new IllegalArgumentException("Missing ')' in within pattern " + pattern);
+        }
+
+        return matcher;
+      }
+
+      if (position == tokens.size()) {
+        throw new IllegalArgumentException("Incomplete within pattern " + pattern);
+      }
+
+      final String token = tokens.get(position);
+
+      if (")".equals(token) || "&&".equals(token) || "||".equals(token)) {
+        throw new IllegalArgumentException(
+            "Unexpected '" + token + "' in within pattern " + pattern);
+      }
+
+      position++;
+      return compileTypePattern(pattern, token);
+    }
+
+    private boolean accept(final String token) {
+      if (position < tokens.size() && token.equals(tokens.get(position))) {
+        position++;
+        return true;
+      }
+
+      return false;
+    }
+
+  }
+
+}
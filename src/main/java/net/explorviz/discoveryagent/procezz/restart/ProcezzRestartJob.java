@@ -0,0 +1,118 @@
+package net.explorviz.discoveryagent.procezz.restart;
+
+import com.github.jasminb.jsonapi.annotations.Id;
+import com.github.jasminb.jsonapi.annotations.Type;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Handle of an asynchronous restart of one or more procezzes. Clients obtain this handle when
+ * requesting a restart and may poll it until the restart has either succeeded or failed. A job
+ * fails if at least one of its procezzes could not be restarted.
+ */
+@Type("procezzrestartjob")
+public class ProcezzRestartJob {
+
+  public enum State {
+    PENDING, RUNNING, SUCCEEDED, FAILED
+  }
+
+  @Id
+  private String id;
+
+  private List<String> procezzIds = new ArrayList<String>();
+  private List<String> failedProcezzIds = new CopyOnWriteArrayList<String>();
+
+  private volatile State state = State.PENDING;
+  private volatile String errorMessage;
+
+  private long creationTime;
+  private volatile long completionTime;
+
+  public ProcezzRestartJob() {
+    // default constructor for JSON API parsing
+  }
+
+  public ProcezzRestartJob(final String id, final List<String> procezzIds) {
+    this.id = id;
+    this.procezzIds = new ArrayList<String>(procezzIds);
+    this.creationTime = System.currentTimeMillis();
+  }
+
+  public boolean hasCompleted() {
+    return state == State.SUCCEEDED || state == State.FAILED;
+  }
+
+  public void succeed() {
+    this.completionTime = System.currentTimeMillis();
+    this.state = State.SUCCEEDED;
+  }
+
+  public void fail(final String errorMessage) {
+    this.errorMessage = errorMessage;
+    this.completionTime = System.currentTimeMillis();
+    this.state = State.FAILED;
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public void setId(final String id) {
+    this.id = id;
+  }
+
+  public List<String> getProcezzIds() {
+    return procezzIds;
+  }
+
+  public void setProcezzIds(final List<String> procezzIds) {
+    this.procezzIds = procezzIds;
+  }
+
+  public List<String> getFailedProcezzIds() {
+    return failedProcezzIds;
+  }
+
+  public void setFailedProcezzIds(final List<String> failedProcezzIds) {
+    this.failedProcezzIds = new CopyOnWriteArrayList<String>(failedProcezzIds);
+  }
+
+  public void addFailedProcezzId(final String procezzId) {
+    failedProcezzIds.add(procezzId);
+  }
+
+  public State getState() {
+    return state;
+  }
+
+  public void setState(final State state) {
+    this.state = state;
+  }
+
+  public String getErrorMessage() {
+    return errorMessage;
+  }
+
+  public void setErrorMessage(final String errorMessage) {
+    this.errorMessage = errorMessage;
+  }
+
+  public long getCreationTime() {
+    return creationTime;
+  }
+
+  public void setCreationTime(final long creationTime) {
+    this.creationTime = creationTime;
+  }
+
+  public long getCompletionTime() {
+    return completionTime;
+  }
+
+  public void setCompletionTime(final long completionTime) {
+    this.completionTime = completionTime;
+  }
+
+}
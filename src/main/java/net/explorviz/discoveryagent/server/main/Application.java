@@ -1,6 +1,7 @@
 package net.explorviz.discoveryagent.server.main;
 
 import javax.ws.rs.ApplicationPath;
+import net.explorviz.discoveryagent.procezz.restart.ProcezzRestartJob;
 import net.explorviz.discoveryagent.server.filters.CorsResponseFilter;
 import net.explorviz.discoveryagent.services.TypeService;
 import net.explorviz.shared.discovery.exceptions.mapper.procezz.ProcezzGenericMapper;
@@ -23,6 +24,7 @@ public class Application extends ResourceConfig {
 
     TypeService.typeMap.put("Agent", Agent.class);
     TypeService.typeMap.put("Procezz", Procezz.class);
+    TypeService.typeMap.put("ProcezzRestartJob", ProcezzRestartJob.class);
 
     register(new DependencyInjectionBinder());
 
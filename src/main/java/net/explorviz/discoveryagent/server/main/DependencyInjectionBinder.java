@@ -3,11 +3,17 @@ package net.explorviz.discoveryagent.server.main;
 import com.github.jasminb.jsonapi.ResourceConverter;
 import javax.inject.Singleton;
 import net.explorviz.discoveryagent.procezz.InternalRepository;
+import net.explorviz.discoveryagent.procezz.ProcezzStateStore;
 import net.explorviz.discoveryagent.procezz.ProcezzUtility;
 import net.explorviz.discoveryagent.procezz.management.ProcezzManagementTypeFactory;
+import net.explorviz.discoveryagent.procezz.management.ProcezzScanExecutor;
 import net.explorviz.discoveryagent.server.resources.AgentBroadcastSubResource;
 import net.explorviz.discoveryagent.services.BroadcastService;
+import net.explorviz.discoveryagent.services.DiscoveryStrategyPluginService;
+import net.explorviz.discoveryagent.services.MonitoringConfigReaper;
 import net.explorviz.discoveryagent.services.MonitoringFilesystemService;
+import net.explorviz.discoveryagent.services.ProcezzRestartService;
+import net.explorviz.discoveryagent.services.ProcezzWatchService;
 import net.explorviz.discoveryagent.services.RegistrationService;
 import net.explorviz.discoveryagent.services.UpdateProcezzListService;
 import net.explorviz.discoveryagent.util.ResourceConverterFactory;
@@ -34,12 +40,19 @@ public class DependencyInjectionBinder extends AbstractBinder {
     this.bind(ProcezzUtility.class).to(ProcezzUtility.class).in(Singleton.class);
     this.bind(MonitoringFilesystemService.class).to(MonitoringFilesystemService.class)
         .in(Singleton.class);
+    this.bind(MonitoringConfigReaper.class).to(MonitoringConfigReaper.class).in(Singleton.class);
     this.bind(ProcezzManagementTypeFactory.class).to(ProcezzManagementTypeFactory.class)
         .in(Singleton.class);
+    this.bind(ProcezzScanExecutor.class).to(ProcezzScanExecutor.class).in(Singleton.class);
+    this.bind(ProcezzStateStore.class).to(ProcezzStateStore.class).in(Singleton.class);
     this.bind(InternalRepository.class).to(InternalRepository.class).in(Singleton.class);
     this.bind(RegistrationService.class).to(RegistrationService.class).in(Singleton.class);
     this.bind(UpdateProcezzListService.class).to(UpdateProcezzListService.class)
         .in(Singleton.class);
+    this.bind(ProcezzWatchService.class).to(ProcezzWatchService.class).in(Singleton.class);
+    this.bind(ProcezzRestartService.class).to(ProcezzRestartService.class).in(Singleton.class);
+    this.bind(DiscoveryStrategyPluginService.class).to(DiscoveryStrategyPluginService.class)
+        .in(Singleton.class);
 
     // Broadcast Mechanism
     this.bind(BroadcastService.class).to(BroadcastService.class).in(Singleton.class);
@@ -3,6 +3,10 @@ package net.explorviz.discoveryagent.server.main;
 import java.io.IOException;
 import javax.inject.Inject;
 import javax.servlet.annotation.WebListener;
+import net.explorviz.discoveryagent.procezz.InternalRepository;
+import net.explorviz.discoveryagent.procezz.restart.ProcezzRestartJob;
+import net.explorviz.discoveryagent.services.DiscoveryStrategyPluginService;
+import net.explorviz.discoveryagent.services.MonitoringConfigReaper;
 import net.explorviz.discoveryagent.services.MonitoringFilesystemService;
 import net.explorviz.discoveryagent.services.RegistrationService;
 import net.explorviz.discoveryagent.services.TypeService;
@@ -27,9 +31,18 @@ public class SetupApplicationListener implements ApplicationEventListener {
   @Inject
   private MonitoringFilesystemService monitoringFilesystemService;
 
+  @Inject
+  private MonitoringConfigReaper monitoringConfigReaper;
+
   @Inject
   private RegistrationService registrationService;
 
+  @Inject
+  private InternalRepository internalRepository;
+
+  @Inject
+  private DiscoveryStrategyPluginService strategyPluginService;
+
   @Override
   public void onEvent(final ApplicationEvent event) {
 
@@ -56,9 +69,16 @@ public class SetupApplicationListener implements ApplicationEventListener {
 
     TypeService.typeMap.put("Agent", Agent.class);
     TypeService.typeMap.put("Procezz", Procezz.class);
+    TypeService.typeMap.put("ProcezzRestartJob", ProcezzRestartJob.class);
+
+    // plugin strategies must be loaded before the first procezzes are discovered
+    strategyPluginService.start();
 
     try {
       monitoringFilesystemService.createMonitoringConfigsFolder();
+      // procezzes of the previous run keep their IDs and monitoring configs
+      internalRepository.restoreProcezzes();
+      monitoringConfigReaper.start();
       registrationService.register();
     } catch (final IOException e) {
       LOGGER.error("Could not create initial monitoring config folder. Error: {}", e);
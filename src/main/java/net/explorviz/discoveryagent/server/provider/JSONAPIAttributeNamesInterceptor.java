@@ -0,0 +1,79 @@
+package net.explorviz.discoveryagent.server.provider;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.ext.Provider;
+import javax.ws.rs.ext.ReaderInterceptor;
+import javax.ws.rs.ext.ReaderInterceptorContext;
+
+/**
+ * Records the attribute names of the primary resource of JSON API request documents as request
+ * property {@value #ATTRIBUTE_NAMES_PROPERTY}. Deserialized resources cannot tell omitted
+ * attributes from default values (e.g. false for flags), but a PATCH must only update the
+ * attributes that were sent, e.g., by clients that requested a sparse fieldset.
+ */
+@Provider
+public class JSONAPIAttributeNamesInterceptor implements ReaderInterceptor {
+
+  public static final String ATTRIBUTE_NAMES_PROPERTY = "net.explorviz.jsonapi.attributeNames";
+
+  private static final MediaType JSON_API_TYPE = new MediaType("application", "vnd.api+json");
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  private static final int BUFFER_SIZE = 8192;
+
+  @Override
+  public Object aroundReadFrom(final ReaderInterceptorContext context)
+      throws IOException, WebApplicationException {
+
+    if (context.getMediaType() == null || !JSON_API_TYPE.isCompatible(context.getMediaType())) {
+      return context.proceed();
+    }
+
+    final byte[] document = readAllBytes(context.getInputStream());
+
+    context.setProperty(ATTRIBUTE_NAMES_PROPERTY, findAttributeNames(document));
+    context.setInputStream(new ByteArrayInputStream(document));
+
+    return context.proceed();
+  }
+
+  private static Set<String> findAttributeNames(final byte[] document) {
+    final Set<String> attributeNames = new HashSet<String>();
+
+    try {
+      final JsonNode root = MAPPER.readTree(document);
+
+      if (root != null) {
+        root.path("data").path("attributes").fieldNames()
+            .forEachRemaining(attributeNames::add);
+      }
+    } catch (final IOException e) {
+      // malformed documents are rejected by the message body reader
+    }
+
+    return Collections.unmodifiableSet(attributeNames);
+  }
+
+  private static byte[] readAllBytes(final InputStream stream) throws IOException {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final byte[] buffer = new byte[BUFFER_SIZE];
+
+    int read;
+    while ((read = stream.read(buffer)) != -1) {
+      bytes.write(buffer, 0, read);
+    }
+
+    return bytes.toByteArray();
+  }
+
+}
@@ -1,6 +1,5 @@
 package net.explorviz.discoveryagent.server.provider;
 
-import com.github.jasminb.jsonapi.JSONAPIDocument;
 import com.github.jasminb.jsonapi.ResourceConverter;
 import com.github.jasminb.jsonapi.exceptions.DocumentSerializationException;
 import java.io.IOException;
@@ -13,8 +12,10 @@ import javax.inject.Inject;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.Produces;
 import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.UriInfo;
 import javax.ws.rs.ext.MessageBodyReader;
 import javax.ws.rs.ext.MessageBodyWriter;
 import javax.ws.rs.ext.Provider;
@@ -30,10 +31,15 @@ public class JSONAPIListProvider implements MessageBodyReader<List<?>>, MessageB
   private static final Logger LOGGER = LoggerFactory.getLogger(JSONAPIListProvider.class);
 
   private final ResourceConverter converter;
+  private final JSONAPIStreamingWriter streamingWriter;
+
+  @Context
+  private UriInfo uriInfo;
 
   @Inject
   public JSONAPIListProvider(final ResourceConverter converter) {
     this.converter = converter;
+    this.streamingWriter = new JSONAPIStreamingWriter(converter);
   }
 
   @Override
@@ -46,8 +52,8 @@ public class JSONAPIListProvider implements MessageBodyReader<List<?>>, MessageB
   @Override
   public long getSize(final List<?> t, final Class<?> type, final Type genericType,
       final Annotation[] annotations, final MediaType mediaType) {
-    // TODO Auto-generated method stub
-    return 0;
+    // unknown, the document is streamed
+    return -1;
   }
 
   @Override
@@ -55,10 +61,9 @@ public class JSONAPIListProvider implements MessageBodyReader<List<?>>, MessageB
       final Annotation[] annotations, final MediaType mediaType,
       final MultivaluedMap<String, Object> httpHeaders, final OutputStream entityStream)
       throws IOException, WebApplicationException {
-    final JSONAPIDocument<List<?>> document = new JSONAPIDocument<List<?>>(t);
-
     try {
-      entityStream.write(this.converter.writeDocumentCollection(document));
+      this.streamingWriter.writeCollection(t,
+          JSONAPIStreamingWriter.getRequestedFieldsets(uriInfo), entityStream);
     } catch (final DocumentSerializationException e) {
       LOGGER.error("Error when serializing Process List: ", e);
     } finally {
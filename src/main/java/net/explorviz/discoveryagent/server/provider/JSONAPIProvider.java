@@ -1,6 +1,7 @@
 package net.explorviz.discoveryagent.server.provider;
 
-import com.github.jasminb.jsonapi.JSONAPIDocument;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.github.jasminb.jsonapi.ResourceConverter;
 import com.github.jasminb.jsonapi.exceptions.DocumentSerializationException;
 import java.io.IOException;
@@ -12,8 +13,10 @@ import javax.inject.Inject;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.Produces;
 import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.UriInfo;
 import javax.ws.rs.ext.MessageBodyReader;
 import javax.ws.rs.ext.MessageBodyWriter;
 import javax.ws.rs.ext.Provider;
@@ -27,11 +30,18 @@ public class JSONAPIProvider<T> implements MessageBodyReader<T>, MessageBodyWrit
 
   private static final Logger LOGGER = LoggerFactory.getLogger(JSONAPIProvider.class);
 
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
   private final ResourceConverter converter;
+  private final JSONAPIStreamingWriter streamingWriter;
+
+  @Context
+  private UriInfo uriInfo;
 
   @Inject
   public JSONAPIProvider(final ResourceConverter converter) {
     this.converter = converter;
+    this.streamingWriter = new JSONAPIStreamingWriter(converter);
   }
 
   @Override
@@ -44,8 +54,8 @@ public class JSONAPIProvider<T> implements MessageBodyReader<T>, MessageBodyWrit
   @Override
   public long getSize(final T t, final Class<?> type, final Type genericType,
       final Annotation[] annotations, final MediaType mediaType) {
-    // TODO Auto-generated method stub
-    return 0;
+    // unknown, the document is streamed
+    return -1;
   }
 
   @Override
@@ -53,10 +63,21 @@ public class JSONAPIProvider<T> implements MessageBodyReader<T>, MessageBodyWrit
       final Annotation[] annotations, final MediaType mediaType,
       final MultivaluedMap<String, Object> httpHeaders, final OutputStream entityStream)
       throws IOException, WebApplicationException {
-    final JSONAPIDocument<T> document = new JSONAPIDocument<>(t);
+
+    // already serialized documents, e.g., SSE procezz changes
+    if (t instanceof JsonNode) {
+      try {
+        entityStream.write(MAPPER.writeValueAsBytes(t));
+      } finally {
+        entityStream.flush();
+        entityStream.close();
+      }
+      return;
+    }
 
     try {
-      entityStream.write(this.converter.writeDocument(document));
+      this.streamingWriter.writeDocument(t,
+          JSONAPIStreamingWriter.getRequestedFieldsets(uriInfo), entityStream);
     } catch (final DocumentSerializationException e) {
       if (LOGGER.isErrorEnabled()) {
         LOGGER.error("Error when serializing object of type" + t.getClass() + ": ", e);
@@ -0,0 +1,335 @@
+package net.explorviz.discoveryagent.server.provider;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.jasminb.jsonapi.JSONAPIDocument;
+import com.github.jasminb.jsonapi.ResourceConverter;
+import com.github.jasminb.jsonapi.SerializationSettings;
+import com.github.jasminb.jsonapi.annotations.Relationship;
+import com.github.jasminb.jsonapi.annotations.Type;
+import com.github.jasminb.jsonapi.exceptions.DocumentSerializationException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.UriInfo;
+
+/**
+ * Writes JSON API documents resource by resource to an output stream. Every resource is serialized
+ * on its own by the {@link ResourceConverter} without its related resources, which are written
+ * only once to the "included" section afterwards. Therefore, neither the complete document nor a
+ * tree representation of it is held in memory, only the (small) serialized form of a single
+ * resource.
+ *
+ * <p>
+ * Sparse fieldsets, e.g., {@code ?fields[procezz]=name,pid}, are applied while copying the
+ * serialized resources. Only the requested attributes and relationships are written, and only
+ * resources of requested relationships are included.
+ */
+final class JSONAPIStreamingWriter {
+
+  private static final String DATA = "data";
+  private static final String INCLUDED = "included";
+  private static final String ATTRIBUTES = "attributes";
+  private static final String RELATIONSHIPS = "relationships";
+
+  private static final String FIELDS_PARAMETER_PREFIX = "fields[";
+  private static final String FIELDS_PARAMETER_SUFFIX = "]";
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  private final ResourceConverter converter;
+  private final Map<Class<?>, ResourceMetadata> metadataCache =
+      new ConcurrentHashMap<Class<?>, ResourceMetadata>();
+
+  JSONAPIStreamingWriter(final ResourceConverter converter) {
+    this.converter = converter;
+  }
+
+  /**
+   * Returns the sparse fieldsets of the current request, indexed by resource type. Returns an empty
+   * map if no fieldsets were requested or if there is no current request, e.g., for server-sent
+   * events.
+   */
+  static Map<String, Set<String>> getRequestedFieldsets(final UriInfo uriInfo) {
+    final MultivaluedMap<String, String> queryParameters;
+
+    try {
+      queryParameters = uriInfo == null ? null : uriInfo.getQueryParameters();
+    } catch (final IllegalStateException e) {
+      // not in the scope of a request
+      return Collections.emptyMap();
+    }
+
+    if (queryParameters == null || queryParameters.isEmpty()) {
+      return Collections.emptyMap();
+    }
+
+    final Map<String, Set<String>> fieldsets = new HashMap<String, Set<String>>();
+
+    for (final Map.Entry<String, List<String>> parameter : queryParameters.entrySet()) {
+      final String name = parameter.getKey();
+
+      if (!name.startsWith(FIELDS_PARAMETER_PREFIX) || !name.endsWith(FIELDS_PARAMETER_SUFFIX)) {
+        continue;
+      }
+
+      final String resourceType = name.substring(FIELDS_PARAMETER_PREFIX.length(),
+          name.length() - FIELDS_PARAMETER_SUFFIX.length());
+
+      final Set<String> fields =
+          fieldsets.computeIfAbsent(resourceType, type -> new HashSet<String>());
+
+      for (final String value : parameter.getValue()) {
+        for (final String field : value.split(",")) {
+          if (!field.trim().isEmpty()) {
+            fields.add(field.trim());
+          }
+        }
+      }
+    }
+
+    return fieldsets;
+  }
+
+  void writeDocument(final Object resource, final Map<String, Set<String>> fieldsets,
+      final OutputStream outputStream) throws IOException, DocumentSerializationException {
+
+    try (JsonGenerator generator = createGenerator(outputStream)) {
+      final Set<Object> includedResources = newIdentitySet();
+
+      generator.writeStartObject();
+      generator.writeFieldName(DATA);
+
+      if (resource == null) {
+        generator.writeNull();
+      } else {
+        writeResource(generator, resource, fieldsets, includedResources);
+      }
+
+      writeIncluded(generator, fieldsets, includedResources);
+      generator.writeEndObject();
+    }
+  }
+
+  void writeCollection(final Collection<?> resources, final Map<String, Set<String>> fieldsets,
+      final OutputStream outputStream) throws IOException, DocumentSerializationException {
+
+    try (JsonGenerator generator = createGenerator(outputStream)) {
+      final Set<Object> includedResources = newIdentitySet();
+
+      generator.writeStartObject();
+      generator.writeArrayFieldStart(DATA);
+
+      for (final Object resource : resources) {
+        writeResource(generator, resource, fieldsets, includedResources);
+      }
+
+      generator.writeEndArray();
+
+      // resources of the collection are not included again
+      resources.forEach(includedResources::remove);
+
+      writeIncluded(generator, fieldsets, includedResources);
+      generator.writeEndObject();
+    }
+  }
+
+  private JsonGenerator createGenerator(final OutputStream outputStream) throws IOException {
+    // the generator buffers the output, the entity stream is closed by the caller
+    return MAPPER.getFactory().createGenerator(outputStream)
+        .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+  }
+
+  private void writeIncluded(final JsonGenerator generator,
+      final Map<String, Set<String>> fieldsets, final Set<Object> includedResources)
+      throws IOException, DocumentSerializationException {
+
+    if (includedResources.isEmpty()) {
+      return;
+    }
+
+    generator.writeArrayFieldStart(INCLUDED);
+
+    for (final Object includedResource : includedResources) {
+      // relationships of included resources are not followed
+      writeResource(generator, includedResource, fieldsets, null);
+    }
+
+    generator.writeEndArray();
+  }
+
+  private void writeResource(final JsonGenerator generator, final Object resource,
+      final Map<String, Set<String>> fieldsets, final Set<Object> relatedResources)
+      throws IOException, DocumentSerializationException {
+
+    final ResourceMetadata metadata = getMetadata(resource.getClass());
+    // null, if all fields are requested
+    final Set<String> fields = fieldsets.get(metadata.type);
+
+    final byte[] serializedResource =
+        converter.writeDocument(new JSONAPIDocument<>(resource), metadata.settings);
+
+    copyDataNode(serializedResource, generator, fields);
+
+    if (relatedResources != null) {
+      metadata.collectRelatedResources(resource, fields, relatedResources);
+    }
+  }
+
+  private void copyDataNode(final byte[] document, final JsonGenerator generator,
+      final Set<String> fields) throws IOException {
+
+    try (JsonParser parser = MAPPER.getFactory().createParser(document)) {
+      // top-level object
+      parser.nextToken();
+
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        final String fieldName = parser.getCurrentName();
+        parser.nextToken();
+
+        if (DATA.equals(fieldName)) {
+          copyResourceObject(parser, generator, fields);
+          return;
+        }
+
+        parser.skipChildren();
+      }
+    }
+
+    throw new IOException("Serialized resource without data node");
+  }
+
+  private void copyResourceObject(final JsonParser parser, final JsonGenerator generator,
+      final Set<String> fields) throws IOException {
+
+    if (fields == null || parser.getCurrentToken() != JsonToken.START_OBJECT) {
+      generator.copyCurrentStructure(parser);
+      return;
+    }
+
+    generator.writeStartObject();
+
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      final String memberName = parser.getCurrentName();
+      parser.nextToken();
+
+      if (ATTRIBUTES.equals(memberName) || RELATIONSHIPS.equals(memberName)) {
+        copyRequestedFields(parser, generator, memberName, fields);
+      } else {
+        // type, id, links and meta are always written
+        generator.writeFieldName(memberName);
+        generator.copyCurrentStructure(parser);
+      }
+    }
+
+    generator.writeEndObject();
+  }
+
+  private void copyRequestedFields(final JsonParser parser, final JsonGenerator generator,
+      final String memberName, final Set<String> fields) throws IOException {
+
+    if (parser.getCurrentToken() != JsonToken.START_OBJECT) {
+      parser.skipChildren();
+      return;
+    }
+
+    generator.writeObjectFieldStart(memberName);
+
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      final String fieldName = parser.getCurrentName();
+      parser.nextToken();
+
+      if (fields.contains(fieldName)) {
+        generator.writeFieldName(fieldName);
+        generator.copyCurrentStructure(parser);
+      } else {
+        parser.skipChildren();
+      }
+    }
+
+    generator.writeEndObject();
+  }
+
+  private ResourceMetadata getMetadata(final Class<?> resourceClass) {
+    return metadataCache.computeIfAbsent(resourceClass, ResourceMetadata::new);
+  }
+
+  private static Set<Object> newIdentitySet() {
+    return Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+  }
+
+  /**
+   * Type name and relationship fields of a resource class and the serialization settings that
+   * exclude the related resources.
+   */
+  private static final class ResourceMetadata {
+
+    private final String type;
+    private final List<Field> relationshipFields = new ArrayList<Field>();
+    private final List<String> relationshipNames = new ArrayList<String>();
+    private final SerializationSettings settings;
+
+    private ResourceMetadata(final Class<?> resourceClass) {
+      final Type typeAnnotation = resourceClass.getAnnotation(Type.class);
+      this.type = typeAnnotation == null ? null : typeAnnotation.value();
+
+      for (Class<?> c = resourceClass; c != null && c != Object.class; c = c.getSuperclass()) {
+        for (final Field field : c.getDeclaredFields()) {
+          final Relationship relationship = field.getAnnotation(Relationship.class);
+
+          if (relationship != null) {
+            field.setAccessible(true);
+            relationshipFields.add(field);
+            relationshipNames.add(relationship.value());
+          }
+        }
+      }
+
+      this.settings = new SerializationSettings.Builder()
+          .excludeRelationship(relationshipNames.toArray(new String[0])).build();
+    }
+
+    private void collectRelatedResources(final Object resource, final Set<String> fields,
+        final Set<Object> relatedResources) {
+
+      for (int i = 0; i < relationshipFields.size(); i++) {
+        if (fields != null && !fields.contains(relationshipNames.get(i))) {
+          continue;
+        }
+
+        final Field field = relationshipFields.get(i);
+        final Object value;
+
+        try {
+          value = field.get(resource);
+        } catch (final IllegalAccessException e) {
+          continue;
+        }
+
+        if (value instanceof Collection) {
+          for (final Object relatedResource : (Collection<?>) value) {
+            if (relatedResource != null) {
+              relatedResources.add(relatedResource);
+            }
+          }
+        } else if (value != null) {
+          relatedResources.add(value);
+        }
+      }
+    }
+  }
+
+}
@@ -4,8 +4,10 @@ import javax.inject.Inject;
 import javax.inject.Singleton;
 import javax.servlet.http.HttpServletResponse;
 import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.sse.SseEventSink;
 import net.explorviz.discoveryagent.services.BroadcastService;
@@ -31,13 +33,14 @@ public class AgentBroadcastSubResource {
   @GET
   @Produces(MediaType.SERVER_SENT_EVENTS)
   public void listenToBroadcast(@Context final SseEventSink eventSink,
-      @Context final HttpServletResponse response) {
+      @Context final HttpServletResponse response,
+      @HeaderParam(HttpHeaders.LAST_EVENT_ID_HEADER) final String lastEventId) {
 
     // https://serverfault.com/a/801629
     response.addHeader("Cache-Control", "no-cache");
     response.addHeader("X-Accel-Buffering", "no");
 
-    this.broadcastService.register(eventSink);
+    this.broadcastService.register(eventSink, lastEventId);
 
     LOGGER.info("Discovery Service registered for SSE");
   }
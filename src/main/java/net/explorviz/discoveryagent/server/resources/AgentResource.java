@@ -1,19 +1,24 @@
 package net.explorviz.discoveryagent.server.resources;
 
-import com.github.jasminb.jsonapi.JSONAPIDocument;
-import com.github.jasminb.jsonapi.ResourceConverter;
 import com.github.jasminb.jsonapi.exceptions.DocumentSerializationException;
-import java.io.UnsupportedEncodingException;
+import java.io.IOException;
 import javax.inject.Inject;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.PATCH;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
 import javax.ws.rs.sse.Sse;
 import net.explorviz.discoveryagent.procezz.InternalRepository;
+import net.explorviz.discoveryagent.procezz.SerializedAgentDocument;
+import net.explorviz.discoveryagent.services.MonitoringFilesystemService;
+import net.explorviz.discoveryagent.services.ProcezzRestartService;
 import net.explorviz.shared.discovery.exceptions.agent.AgentNotFoundException;
 import net.explorviz.shared.discovery.model.Agent;
 
@@ -21,15 +26,19 @@ import net.explorviz.shared.discovery.model.Agent;
 public class AgentResource {
 
   private static final String MEDIA_TYPE = "application/vnd.api+json";
+  private static final String GZIP_ENCODING = "gzip";
 
-  private final ResourceConverter converter;
   private final InternalRepository internalRepository;
+  private final ProcezzRestartService restartService;
+  private final MonitoringFilesystemService filesystemService;
 
   @Inject
-  public AgentResource(final ResourceConverter converter,
-      final InternalRepository internalRepository) {
-    this.converter = converter;
+  public AgentResource(final InternalRepository internalRepository,
+      final ProcezzRestartService restartService,
+      final MonitoringFilesystemService filesystemService) {
     this.internalRepository = internalRepository;
+    this.restartService = restartService;
+    this.filesystemService = filesystemService;
   }
 
   @PATCH
@@ -43,19 +52,31 @@ public class AgentResource {
 
   @GET
   @Path("{id}")
-  public Response getAgentWithprocezzes(@PathParam("id") final String agentID)
-      throws DocumentSerializationException, UnsupportedEncodingException {
+  public Response getAgentWithprocezzes(@PathParam("id") final String agentID,
+      @Context final Request request,
+      @HeaderParam(HttpHeaders.ACCEPT_ENCODING) final String acceptEncoding)
+      throws DocumentSerializationException, IOException {
 
     // TODO query parameter "embed"
 
-    final Agent potentialAgent = internalRepository.agentObject;
-    byte[] response = "{\"data\": null}".getBytes("UTF-8");
+    final SerializedAgentDocument document = internalRepository.getAgentDocument();
 
-    if (potentialAgent != null) {
-      response = this.converter.writeDocument(new JSONAPIDocument<>(potentialAgent));
+    // unchanged since the last request of the client
+    final ResponseBuilder notModified = request.evaluatePreconditions(document.getEntityTag());
+
+    if (notModified != null) {
+      return notModified.tag(document.getEntityTag()).build();
+    }
+
+    final ResponseBuilder response = Response.ok().type(MEDIA_TYPE).tag(document.getEntityTag())
+        .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+
+    if (acceptEncoding != null && acceptEncoding.contains(GZIP_ENCODING)) {
+      return response.entity(document.getGzippedBytes())
+          .header(HttpHeaders.CONTENT_ENCODING, GZIP_ENCODING).build();
     }
 
-    return Response.ok(response).type(MEDIA_TYPE).build();
+    return response.entity(document.getBytes()).build();
 
   }
 
@@ -64,7 +85,7 @@ public class AgentResource {
       throws AgentNotFoundException {
     System.out.println(agentID + " und " + internalRepository.agentObject.getId());
     if (internalRepository.agentObject.getId().equals(agentID)) {
-      return new ProcezzResource(internalRepository);
+      return new ProcezzResource(internalRepository, restartService, filesystemService);
     } else {
       throw new AgentNotFoundException("Bla", new Exception());
     }
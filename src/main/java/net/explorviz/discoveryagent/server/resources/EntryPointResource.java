@@ -12,6 +12,7 @@ import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
 import javax.ws.rs.core.Response;
+import net.explorviz.discoveryagent.services.MonitoringConfigReaper;
 
 @Path("")
 public class EntryPointResource {
@@ -20,10 +21,13 @@ public class EntryPointResource {
   private static final String HTTP_METHOD_KEY = "method";
 
   private final ResourceConverter converter;
+  private final MonitoringConfigReaper monitoringConfigReaper;
 
   @Inject
-  public EntryPointResource(final ResourceConverter converter) {
+  public EntryPointResource(final ResourceConverter converter,
+      final MonitoringConfigReaper monitoringConfigReaper) {
     this.converter = converter;
+    this.monitoringConfigReaper = monitoringConfigReaper;
 
   }
 
@@ -48,6 +52,12 @@ public class EntryPointResource {
     metaMap.put("description", "Entry point for ExplorViz's discovery agent");
     metaMap.put("authors", new String[] {"Alexander Krause"});
 
+    // monitoring configs deleted by the reaper since the start of the agent
+    final Map<String, Object> reaperMetaMap = new HashMap<String, Object>();
+    reaperMetaMap.put("reclaimedFolders", monitoringConfigReaper.getReclaimedFolders());
+    reaperMetaMap.put("reclaimedBytes", monitoringConfigReaper.getReclaimedBytes());
+    metaMap.put("monitoringConfigReaper", reaperMetaMap);
+
     document.setMeta(metaMap);
   }
 
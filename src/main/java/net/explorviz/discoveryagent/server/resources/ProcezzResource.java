@@ -1,15 +1,36 @@
 package net.explorviz.discoveryagent.server.resources;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.net.URI;
 import java.util.List;
+import java.util.Set;
 import javax.inject.Inject;
+import javax.ws.rs.BadRequestException;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.GET;
+import javax.ws.rs.NotFoundException;
 import javax.ws.rs.PATCH;
+import javax.ws.rs.POST;
+import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriInfo;
 import net.explorviz.discoveryagent.procezz.InternalRepository;
-import net.explorviz.shared.discovery.exceptions.procezz.ProcezzManagementTypeIncompatibleException;
+import net.explorviz.discoveryagent.procezz.monitoring.AopConfiguration;
+import net.explorviz.discoveryagent.procezz.monitoring.AopConfigurationValidator;
+import net.explorviz.discoveryagent.procezz.monitoring.InvalidAopConfigurationException;
+import net.explorviz.discoveryagent.procezz.monitoring.WeavingEstimator;
+import net.explorviz.discoveryagent.procezz.restart.ProcezzRestartJob;
+import net.explorviz.discoveryagent.server.provider.JSONAPIAttributeNamesInterceptor;
+import net.explorviz.discoveryagent.services.MonitoringFilesystemService;
+import net.explorviz.discoveryagent.services.ProcezzRestartService;
 import net.explorviz.shared.discovery.exceptions.procezz.ProcezzManagementTypeNotFoundException;
 import net.explorviz.shared.discovery.exceptions.procezz.ProcezzMonitoringSettingsException;
 import net.explorviz.shared.discovery.exceptions.procezz.ProcezzNotFoundException;
@@ -21,32 +42,193 @@ public class ProcezzResource {
 
   private static final String MEDIA_TYPE = "application/vnd.api+json";
 
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
   private final InternalRepository internalRepo;
+  private final ProcezzRestartService restartService;
+  private final MonitoringFilesystemService filesystemService;
 
   @Inject
-  public ProcezzResource(final InternalRepository internalRepo) {
+  public ProcezzResource(final InternalRepository internalRepo,
+      final ProcezzRestartService restartService,
+      final MonitoringFilesystemService filesystemService) {
     this.internalRepo = internalRepo;
+    this.restartService = restartService;
+    this.filesystemService = filesystemService;
   }
 
+  /**
+   * Returns all procezzes. Supports sparse fieldsets, e.g.,
+   * {@code GET .../procezzes?fields[procezz]=name,pid}. Clients that do not need the contents of
+   * the monitoring configuration files omit them this way and read them via the aop-config and
+   * kieker-config sub-resources.
+   */
   @GET
   @Produces(MEDIA_TYPE)
   public List<Procezz> getAllProcezzes() {
     return internalRepo.getProcezzList();
   }
 
+  @GET
+  @Path("{id}/aop-config")
+  @Produces(MediaType.APPLICATION_XML)
+  public String getAopConfig(@PathParam("id") final String procezzID)
+      throws ProcezzNotFoundException, ProcezzMonitoringSettingsException {
+    return filesystemService.readAopFileContentForProcezz(internalRepo.findProcezzByID(procezzID));
+  }
+
+  /**
+   * Replaces the aop.xml of the procezz. The new content is used with the next (monitored) restart
+   * of the procezz.
+   */
+  @PUT
+  @Path("{id}/aop-config")
+  @Consumes(MediaType.APPLICATION_XML)
+  @Produces(MediaType.APPLICATION_XML)
+  public String updateAopConfig(@PathParam("id") final String procezzID, final String aopContent)
+      throws ProcezzNotFoundException, ProcezzMonitoringSettingsException {
+    final Procezz procezz = internalRepo.findProcezzByID(procezzID);
+
+    parseValidAopConfig(aopContent);
+
+    synchronized (procezz) {
+      filesystemService.updateAopFileContentForProcezz(procezz, aopContent);
+    }
+
+    internalRepo.markAgentChanged();
+
+    return aopContent;
+  }
+
+  /**
+   * Estimates the classes and methods of the procezz that are woven with its current aop.xml.
+   */
+  @GET
+  @Path("{id}/aop-config/estimate")
+  @Produces(MediaType.APPLICATION_JSON)
+  public String estimateAopConfig(@PathParam("id") final String procezzID)
+      throws ProcezzNotFoundException, ProcezzMonitoringSettingsException, IOException {
+    final Procezz procezz = internalRepo.findProcezzByID(procezzID);
+
+    return MAPPER.writeValueAsString(WeavingEstimator.estimate(
+        parseValidAopConfig(filesystemService.readAopFileContentForProcezz(procezz)), procezz));
+  }
+
+  /**
+   * Estimates the classes and methods of the procezz that would be woven with the passed aop.xml,
+   * e.g., before the aop.xml is replaced.
+   */
+  @POST
+  @Path("{id}/aop-config/estimate")
+  @Consumes(MediaType.APPLICATION_XML)
+  @Produces(MediaType.APPLICATION_JSON)
+  public String estimateAopConfig(@PathParam("id") final String procezzID,
+      final String aopContent) throws ProcezzNotFoundException, IOException {
+    final Procezz procezz = internalRepo.findProcezzByID(procezzID);
+
+    return MAPPER.writeValueAsString(
+        WeavingEstimator.estimate(parseValidAopConfig(aopContent), procezz));
+  }
+
+  private AopConfiguration parseValidAopConfig(final String aopContent) {
+    if (aopContent == null || aopContent.trim().isEmpty()) {
+      throw new BadRequestException("The aop.xml must not be empty");
+    }
+
+    final AopConfiguration aopConfig;
+
+    try {
+      aopConfig = AopConfiguration.parse(aopContent);
+    } catch (final InvalidAopConfigurationException e) {
+      throw new BadRequestException(e.getMessage(), e);
+    }
+
+    final List<String> problems = AopConfigurationValidator.validate(aopConfig);
+
+    if (!problems.isEmpty()) {
+      throw new BadRequestException(String.join("; ", problems));
+    }
+
+    return aopConfig;
+  }
+
+  @GET
+  @Path("{id}/kieker-config")
+  @Produces(MediaType.TEXT_PLAIN)
+  public String getKiekerConfig(@PathParam("id") final String procezzID)
+      throws ProcezzNotFoundException, ProcezzMonitoringSettingsException {
+    return filesystemService.readKiekerConfigForProcezz(internalRepo.findProcezzByID(procezzID));
+  }
+
   @PATCH
   @Path("{id}")
   @Consumes(MEDIA_TYPE)
   @Produces(MEDIA_TYPE)
-  public Procezz updateProcezz(final Procezz procezz) throws ProcezzNotFoundException,
-      ProcezzMonitoringSettingsException, ProcezzManagementTypeNotFoundException,
-      ProcezzStopException, ProcezzStartException, ProcezzManagementTypeIncompatibleException {
-    return internalRepo.handleProcezzPatchRequest(procezz);
+  public Response updateProcezz(final Procezz procezz, @Context final UriInfo uriInfo,
+      @Context final ContainerRequestContext requestContext)
+      throws ProcezzNotFoundException, ProcezzMonitoringSettingsException,
+      ProcezzManagementTypeNotFoundException, ProcezzStopException, ProcezzStartException {
+
+    // only the attributes of the request document are updated
+    @SuppressWarnings("unchecked")
+    final Set<String> patchedAttributes = (Set<String>) requestContext
+        .getProperty(JSONAPIAttributeNamesInterceptor.ATTRIBUTE_NAMES_PROPERTY);
+
+    final Procezz updatedProcezz =
+        internalRepo.handleProcezzPatchRequest(procezz, patchedAttributes);
+
+    // the restart flag of the internal procezz is only set by the restart service
+    if (!procezz.isRestart()) {
+      return Response.ok(updatedProcezz).build();
+    }
+
+    // the restart is executed asynchronously, clients may poll the restart job
+    final ProcezzRestartJob job = restartService.scheduleRestart(updatedProcezz.getId());
+    final URI jobLocation =
+        uriInfo.getAbsolutePathBuilder().path("restarts").path(job.getId()).build();
+
+    return Response.accepted(updatedProcezz).location(jobLocation).build();
+  }
+
+  /**
+   * Restarts multiple procezzes with a single job, e.g.,
+   * {@code POST .../procezzes/restarts?id=1&id=2&monitored=true}. The optional monitored parameter
+   * enables or disables the monitoring of all passed procezzes.
+   */
+  @POST
+  @Path("restarts")
+  @Produces(MEDIA_TYPE)
+  public Response restartProcezzes(@QueryParam("id") final List<String> procezzIds,
+      @QueryParam("monitored") final Boolean monitored, @Context final UriInfo uriInfo)
+      throws ProcezzNotFoundException, ProcezzManagementTypeNotFoundException,
+      ProcezzStartException, ProcezzMonitoringSettingsException {
+
+    if (procezzIds == null || procezzIds.isEmpty()) {
+      throw new BadRequestException("At least one procezz ID must be passed");
+    }
+
+    final ProcezzRestartJob job = restartService.scheduleRestarts(procezzIds, monitored);
+    final URI jobLocation = uriInfo.getAbsolutePathBuilder().path(job.getId()).build();
+
+    return Response.accepted(job).location(jobLocation).build();
+  }
+
+  @GET
+  @Path("restarts/{jobId}")
+  @Produces(MEDIA_TYPE)
+  public ProcezzRestartJob getRestartJob(@PathParam("jobId") final String jobId) {
+    final ProcezzRestartJob job = restartService.findRestartJobByID(jobId);
+
+    if (job == null) {
+      throw new NotFoundException();
+    }
+
+    return job;
   }
 
   @Path("{id}/restarts")
   public ProcezzRestartResource getProcezzRestartResource(@PathParam("id") final String procezzID) {
-    return new ProcezzRestartResource(procezzID, internalRepo);
+    return new ProcezzRestartResource(procezzID, restartService);
   }
 
 }
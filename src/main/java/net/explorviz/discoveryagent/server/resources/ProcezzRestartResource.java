@@ -1,37 +1,68 @@
 package net.explorviz.discoveryagent.server.resources;
 
+import java.net.URI;
 import javax.inject.Inject;
+import javax.ws.rs.GET;
+import javax.ws.rs.NotFoundException;
 import javax.ws.rs.POST;
-import net.explorviz.discoveryagent.procezz.InternalRepository;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriInfo;
+import net.explorviz.discoveryagent.procezz.restart.ProcezzRestartJob;
+import net.explorviz.discoveryagent.services.ProcezzRestartService;
 import net.explorviz.shared.discovery.exceptions.mapper.ResponseUtil;
-import net.explorviz.shared.discovery.exceptions.procezz.ProcezzManagementTypeIncompatibleException;
 import net.explorviz.shared.discovery.exceptions.procezz.ProcezzManagementTypeNotFoundException;
+import net.explorviz.shared.discovery.exceptions.procezz.ProcezzMonitoringSettingsException;
 import net.explorviz.shared.discovery.exceptions.procezz.ProcezzNotFoundException;
 import net.explorviz.shared.discovery.exceptions.procezz.ProcezzStartException;
-import net.explorviz.shared.discovery.exceptions.procezz.ProcezzStopException;
 
 public class ProcezzRestartResource {
 
+  private static final String MEDIA_TYPE = "application/vnd.api+json";
+
   private final String procezzID;
-  private final InternalRepository internalRepository;
+  private final ProcezzRestartService restartService;
 
   @Inject
   public ProcezzRestartResource(final String procezzID,
-      final InternalRepository internalRepository) {
+      final ProcezzRestartService restartService) {
     this.procezzID = procezzID;
-    this.internalRepository = internalRepository;
+    this.restartService = restartService;
   }
 
+  /**
+   * Schedules the restart of the procezz and returns immediately. The returned job can be polled
+   * via the URI in the location header.
+   */
   @POST
-  public void restartProcezz()
-      throws ProcezzNotFoundException, ProcezzManagementTypeNotFoundException, ProcezzStopException,
-      ProcezzStartException, ProcezzManagementTypeIncompatibleException {
+  @Produces(MEDIA_TYPE)
+  public Response restartProcezz(@Context final UriInfo uriInfo)
+      throws ProcezzNotFoundException, ProcezzManagementTypeNotFoundException,
+      ProcezzStartException, ProcezzMonitoringSettingsException {
     if (procezzID == null || procezzID.length() == 0) {
       throw new ProcezzNotFoundException(ResponseUtil.ERROR_PROCEZZ_ID_NOT_FOUND, new Exception());
-    } else {
-      final String procezzIDString = String.valueOf(procezzID);
-      internalRepository.restartProcezzByID(procezzIDString);
     }
+
+    final ProcezzRestartJob job = restartService.scheduleRestart(procezzID);
+    final URI jobLocation = uriInfo.getAbsolutePathBuilder().path(job.getId()).build();
+
+    return Response.accepted(job).location(jobLocation).build();
+  }
+
+  @GET
+  @Path("{jobId}")
+  @Produces(MEDIA_TYPE)
+  public ProcezzRestartJob getRestartJob(@PathParam("jobId") final String jobId) {
+    final ProcezzRestartJob job = restartService.findRestartJobByID(jobId);
+
+    if (job == null || !job.getProcezzIds().contains(procezzID)) {
+      throw new NotFoundException();
+    }
+
+    return job;
   }
 
 }
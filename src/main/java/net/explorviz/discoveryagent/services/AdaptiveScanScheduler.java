@@ -0,0 +1,96 @@
+package net.explorviz.discoveryagent.services;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Repeatedly executes a scan with an interval that adapts to the observed changes: whenever a scan
+ * reports changes, the next scan is executed after the minimum interval, otherwise the interval is
+ * doubled up to the maximum interval. The next scan is scheduled after the previous one finished,
+ * therefore scans never overlap and slow scans do not result in bursts of scans. A failed scan is
+ * logged and does not stop the scheduler.
+ */
+final class AdaptiveScanScheduler {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(AdaptiveScanScheduler.class);
+
+  private final ScheduledExecutorService scanExecutor =
+      Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "procezz-scan");
+        thread.setDaemon(true);
+        return thread;
+      });
+
+  private final BooleanSupplier scan;
+  private final long minInterval;
+  private final long maxInterval;
+
+  // incremented on every start and stop, so that a scan that is still running while the scheduler
+  // is restarted does not schedule further scans
+  private long generation;
+  private ScheduledFuture<?> nextScan;
+
+  /**
+   * @param scan returns true if changes were found
+   * @param minInterval minimum interval between two scans (in milliseconds)
+   * @param maxInterval maximum interval between two scans (in milliseconds)
+   */
+  AdaptiveScanScheduler(final BooleanSupplier scan, final long minInterval,
+      final long maxInterval) {
+    this.scan = scan;
+    this.minInterval = Math.max(1, minInterval);
+    this.maxInterval = Math.max(this.minInterval, maxInterval);
+  }
+
+  /**
+   * Executes the first scan immediately and starts the scheduling.
+   */
+  synchronized void start() {
+    if (nextScan != null) {
+      return;
+    }
+
+    final long startedGeneration = ++generation;
+    nextScan = scanExecutor.schedule(() -> executeScan(startedGeneration, minInterval), 0,
+        TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Stops the scheduling. A currently running scan is finished.
+   */
+  synchronized void stop() {
+    generation++;
+
+    if (nextScan != null) {
+      nextScan.cancel(false);
+      nextScan = null;
+    }
+  }
+
+  private void executeScan(final long scanGeneration, final long lastInterval) {
+    boolean changesFound = false;
+
+    try {
+      changesFound = scan.getAsBoolean();
+    } catch (final RuntimeException e) { // NOPMD
+      LOGGER.error("Error during procezz scan, next scan is scheduled anyway: ", e);
+    }
+
+    final long interval = changesFound ? minInterval : Math.min(maxInterval, lastInterval * 2);
+
+    scheduleNextScan(scanGeneration, interval);
+  }
+
+  private synchronized void scheduleNextScan(final long scanGeneration, final long interval) {
+    if (scanGeneration == generation) {
+      nextScan = scanExecutor.schedule(() -> executeScan(scanGeneration, interval), interval,
+          TimeUnit.MILLISECONDS);
+    }
+  }
+
+}
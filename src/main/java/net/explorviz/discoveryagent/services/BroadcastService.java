@@ -1,18 +1,49 @@
 package net.explorviz.discoveryagent.services;
 
-import java.util.concurrent.atomic.AtomicBoolean;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.github.jasminb.jsonapi.exceptions.DocumentSerializationException;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 import javax.inject.Singleton;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.sse.OutboundSseEvent;
 import javax.ws.rs.sse.Sse;
-import javax.ws.rs.sse.SseBroadcaster;
 import javax.ws.rs.sse.SseEventSink;
-import net.explorviz.shared.discovery.model.Agent;
+import net.explorviz.discoveryagent.procezz.SerializedAgentDocument;
+import net.explorviz.discoveryagent.services.ProcezzChangeTracker.ProcezzChange;
+import net.explorviz.shared.config.annotations.Config;
 import org.jvnet.hk2.annotations.Service;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Broadcasts the state of the agent via SSE. A full snapshot of the agent is sent as "message"
+ * event to newly registered clients and whenever the agent itself changes. Afterwards, only changes
+ * of single procezzes are sent as "procezz-added", "procezz-removed" and "procezz-updated" events,
+ * the latter carrying only the changed attributes.
+ *
+ * <p>
+ * Every event carries a sequence number as event ID. Clients that missed events reconnect with the
+ * Last-Event-ID header and obtain a new snapshot.
+ * </p>
+ *
+ * <p>
+ * Broadcasts are decoupled from their callers: all requests within the configured coalescing
+ * window are combined into a single set of changes, which is computed on a dedicated broadcast
+ * thread, based on the cached agent document. Every client has its own bounded queue. A client
+ * that falls behind is skipped until its queue is drained and then catches up with the latest
+ * snapshot.
+ * </p>
+ */
 @Service
 @Singleton
 public class BroadcastService {
@@ -21,47 +52,228 @@ public class BroadcastService {
   private static final MediaType APPLICATION_JSON_API_TYPE =
       new MediaType("application", "vnd.api+json");
 
+  private static final String SNAPSHOT_EVENT_NAME = "message";
+
+  @Config("broadcastCoalescingWindow")
+  private int coalescingWindow;
+
+  @Config("broadcastMaxPendingEvents")
+  private int maxPendingEvents;
+
   private final Sse sse;
-  private final SseBroadcaster broadcaster;
-  private final AtomicBoolean newRegistration = new AtomicBoolean(false);
+  private final ProcezzChangeTracker changeTracker;
+
+  // the tracker, the subscribers and the sequence number are
+  // only accessed by the single broadcast thread
+  private final ScheduledExecutorService broadcastExecutor =
+      Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "sse-broadcast");
+        thread.setDaemon(true);
+        return thread;
+      });
+  private final ExecutorService sendExecutor = Executors.newCachedThreadPool(runnable -> {
+    final Thread thread = new Thread(runnable, "sse-send");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  private final List<Subscriber> subscribers = new ArrayList<Subscriber>();
+  private final AtomicReference<AgentDocumentSource> pendingSource =
+      new AtomicReference<AgentDocumentSource>();
+  private long sequenceNumber;
 
   public BroadcastService(@Context final Sse sse) {
     this.sse = sse;
-    this.broadcaster = sse.newBroadcaster();
+    this.changeTracker = new ProcezzChangeTracker();
+  }
 
-    this.broadcaster.onClose(this::onCloseOperation);
-    this.broadcaster.onError(this::onErrorOperation);
+  /**
+   * Requests a broadcast of the changes of the agent and returns immediately. The document is
+   * obtained from the passed source on the broadcast thread. Nothing is sent if neither the agent
+   * nor its procezzes changed.
+   */
+  public void broadcastMessage(final AgentDocumentSource source) {
+    // the first request of a window schedules the broadcast, later requests only
+    // replace the source of the agent document that will be broadcasted
+    if (pendingSource.getAndSet(source) == null) {
+      broadcastExecutor.schedule(this::broadcastPendingChanges, coalescingWindow,
+          TimeUnit.MILLISECONDS);
+    }
   }
 
-  public void broadcastMessage(final Agent agent) {
-    LOGGER.info("Sending SSE");;
-    final OutboundSseEvent event = this.sse.newEventBuilder().name("message")
-        .mediaType(APPLICATION_JSON_API_TYPE).data(agent).build();
+  /**
+   * Registers a client. Unless the client reconnects without having missed an event, the latest
+   * snapshot is sent to the client before any further change.
+   *
+   * @param lastEventId value of the Last-Event-ID header of the client, may be null
+   */
+  public void register(final SseEventSink eventSink, final String lastEventId) {
+    broadcastExecutor.execute(() -> {
+      final Subscriber subscriber = new Subscriber(eventSink);
+
+      final boolean upToDate = String.valueOf(sequenceNumber).equals(lastEventId);
 
-    this.broadcaster.broadcast(event);
+      if (!upToDate && changeTracker.getAgentDocument() != null) {
+        subscriber.sendSnapshot(createSnapshotEvent());
+      }
+
+      subscribers.add(subscriber);
+    });
   }
 
-  public void register(final SseEventSink eventSink) {
-    this.broadcaster.register(eventSink);
-    this.newRegistration.set(true);
+  private void broadcastPendingChanges() {
+    final AgentDocumentSource source = pendingSource.getAndSet(null);
+
+    final List<ProcezzChange> changes;
+
+    try {
+      changes = changeTracker.update(source.getAgentDocument());
+    } catch (final DocumentSerializationException | IOException | RuntimeException e) {
+      LOGGER.error("Could not compute changes of agent for SSE: ", e);
+      return;
+    }
+
+    subscribers.removeIf(Subscriber::isClosed);
+
+    if (changes == null) {
+      LOGGER.info("Sending SSE snapshot");
+      sequenceNumber++;
+
+      final OutboundSseEvent snapshot = createSnapshotEvent();
+      subscribers.forEach(subscriber -> subscriber.sendSnapshot(snapshot));
+      return;
+    }
+
+    if (changes.isEmpty()) {
+      return;
+    }
+
+    LOGGER.info("Sending {} SSE procezz changes", changes.size());
+
+    final List<OutboundSseEvent> events = new ArrayList<OutboundSseEvent>();
+
+    for (final ProcezzChange change : changes) {
+      events.add(createEvent(change.getEventName(), ++sequenceNumber, change.getDocument()));
+    }
+
+    // created on demand, since lagging subscribers are rare
+    OutboundSseEvent snapshot = null;
+
+    for (final Subscriber subscriber : subscribers) {
+      if (subscriber.isLagging()) {
+        if (snapshot == null) {
+          snapshot = createSnapshotEvent();
+        }
+        subscriber.sendSnapshot(snapshot);
+      } else {
+        subscriber.send(events);
+      }
+    }
   }
 
-  private void onCloseOperation(final SseEventSink sink) { // NOPMD
-    LOGGER.info("SseEventSink closed");
+  private OutboundSseEvent createSnapshotEvent() {
+    return createEvent(SNAPSHOT_EVENT_NAME, sequenceNumber, changeTracker.getAgentDocument());
   }
 
-  private void onErrorOperation(final SseEventSink sink, final Throwable e) { // NOPMD
-    LOGGER.error(
-        "Broadcasting to a SseEventSink failed. This may not be a problem, since there is no way to unregister.",
-        e);
+  private OutboundSseEvent createEvent(final String name, final long eventSequenceNumber,
+      final JsonNode document) {
+    return this.sse.newEventBuilder().name(name).id(String.valueOf(eventSequenceNumber))
+        .mediaType(APPLICATION_JSON_API_TYPE).data(JsonNode.class, document).build();
   }
 
-  public AtomicBoolean getNewRegistration() {
-    return newRegistration;
+  /**
+   * Provides the serialized agent document, which is only serialized again if the agent was
+   * modified.
+   */
+  @FunctionalInterface
+  public interface AgentDocumentSource {
+
+    SerializedAgentDocument getAgentDocument() throws DocumentSerializationException;
+
   }
 
-  public void setNewRegistrationFlag(final boolean newValue) {
-    this.newRegistration.set(newValue);
+  /**
+   * A registered client with its own queue of pending events. Events are sent by the shared send
+   * executor, at most one task per subscriber at a time, therefore a slow client only blocks its
+   * own queue.
+   */
+  private final class Subscriber {
+
+    private final SseEventSink eventSink;
+
+    // guarded by this
+    private final Queue<OutboundSseEvent> pendingEvents = new ArrayDeque<OutboundSseEvent>();
+    private boolean sending;
+    private boolean lagging;
+    private volatile boolean closed;
+
+    private Subscriber(final SseEventSink eventSink) {
+      this.eventSink = eventSink;
+    }
+
+    private boolean isClosed() {
+      return closed || eventSink.isClosed();
+    }
+
+    private synchronized boolean isLagging() {
+      return lagging;
+    }
+
+    private synchronized void send(final List<OutboundSseEvent> events) {
+      if (lagging) {
+        return;
+      }
+
+      if (pendingEvents.size() + events.size() > maxPendingEvents) {
+        // drop pending events, the subscriber will
+        // obtain a snapshot with the next broadcast
+        LOGGER.warn("SSE client does not keep up, {} events are dropped", pendingEvents.size());
+        pendingEvents.clear();
+        lagging = true;
+        return;
+      }
+
+      pendingEvents.addAll(events);
+      startSending();
+    }
+
+    private synchronized void sendSnapshot(final OutboundSseEvent snapshot) {
+      // a snapshot supersedes all pending events
+      pendingEvents.clear();
+      pendingEvents.add(snapshot);
+      lagging = false;
+      startSending();
+    }
+
+    private void startSending() {
+      if (!sending) {
+        sending = true;
+        sendExecutor.execute(this::sendPendingEvents);
+      }
+    }
+
+    private void sendPendingEvents() {
+      while (true) {
+        final OutboundSseEvent event;
+
+        synchronized (this) {
+          event = pendingEvents.poll();
+
+          if (event == null || closed) {
+            sending = false;
+            return;
+          }
+        }
+
+        try {
+          eventSink.send(event).toCompletableFuture().join();
+        } catch (final RuntimeException e) { // NOPMD
+          LOGGER.info("SseEventSink closed: {}", e.toString());
+          closed = true;
+          eventSink.close();
+        }
+      }
+    }
   }
 
 }
@@ -0,0 +1,338 @@
+package net.explorviz.discoveryagent.services;
+
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import net.explorviz.discoveryagent.procezz.discovery.DiscoveryStrategy;
+import net.explorviz.discoveryagent.procezz.discovery.DiscoveryStrategyFactory;
+import net.explorviz.shared.config.annotations.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Loads {@link DiscoveryStrategy} implementations from the jars of the plugin directory by means of
+ * the {@link ServiceLoader}, i.e., a plugin jar lists its strategies in
+ * META-INF/services/net.explorviz.discoveryagent.procezz.discovery.DiscoveryStrategy. The plugin
+ * directory is watched and all plugins are reloaded, if a jar is added, replaced or removed.
+ *
+ * <p>
+ * The jars are copied before they are loaded, therefore a jar can be replaced while its classes
+ * are in use. The class loader of the previous plugins is closed and its copies are deleted one
+ * reload later, since procezzes that are currently examined may still use the previous strategies.
+ * </p>
+ *
+ * <p>
+ * The copies of an agent are kept in a temporary directory, which is locked while the agent runs
+ * and deleted on exit. Directories of agents that crashed, i.e., that are no longer locked, are
+ * deleted on start.
+ * </p>
+ */
+public final class DiscoveryStrategyPluginService {
+
+  private static final Logger LOGGER =
+      LoggerFactory.getLogger(DiscoveryStrategyPluginService.class);
+
+  private static final String PLUGIN_SUFFIX = ".jar";
+  private static final String SNAPSHOTS_FOLDER_PREFIX = "explorviz-strategy-plugins";
+  private static final String LOCK_FILE_NAME = ".lock";
+
+  @Config("strategyPluginDirectory")
+  private String pluginDirectory;
+
+  @Config("strategyPluginReloadDelay")
+  private int reloadDelay;
+
+  private Thread watchThread;
+
+  // copies of the plugin jars of this agent, the lock is held as long as the agent runs
+  private Path snapshotsPath;
+  private FileChannel snapshotsLock;
+
+  // only accessed while holding the lock of this service
+  private PluginSnapshot currentPlugins;
+  private PluginSnapshot retiredPlugins;
+
+  /**
+   * Loads the plugin strategies and starts watching the plugin directory. The plugin directory is
+   * created, if necessary.
+   *
+   * @return true if the plugin directory is watched
+   */
+  public synchronized boolean start() {
+    if (watchThread != null) {
+      return true;
+    }
+
+    if (pluginDirectory == null || pluginDirectory.trim().isEmpty()) {
+      LOGGER.info("No strategy plugin directory configured, using built-in discovery strategies");
+      return false;
+    }
+
+    final Path pluginPath = Paths.get(pluginDirectory.trim()).toAbsolutePath();
+
+    deleteStaleSnapshots();
+
+    final WatchService watchService;
+
+    try {
+      createSnapshotsFolder();
+      Files.createDirectories(pluginPath);
+
+      watchService = FileSystems.getDefault().newWatchService();
+      pluginPath.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+          StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+    } catch (final IOException e) {
+      LOGGER.error("Could not watch strategy plugin directory {}. Error: {}", pluginPath,
+          e.toString());
+      return false;
+    }
+
+    reloadPlugins(pluginPath);
+
+    watchThread = new Thread(() -> watchPluginDirectory(pluginPath, watchService),
+        "strategy-plugin-watch");
+    watchThread.setDaemon(true);
+    watchThread.start();
+
+    LOGGER.info("Watching strategy plugin directory {}", pluginPath);
+
+    return true;
+  }
+
+  private void watchPluginDirectory(final Path pluginPath, final WatchService watchService) {
+    try {
+      while (true) {
+        WatchKey key = watchService.take();
+        boolean pluginsChanged = containsPluginChange(key);
+
+        // wait until the directory is quiet, e.g., until a jar is completely copied
+        while ((key = watchService.poll(reloadDelay, TimeUnit.MILLISECONDS)) != null) {
+          pluginsChanged |= containsPluginChange(key);
+        }
+
+        if (pluginsChanged) {
+          reloadPlugins(pluginPath);
+        }
+
+        if (!Files.isDirectory(pluginPath)) {
+          LOGGER.warn("Strategy plugin directory {} was removed, stopped watching", pluginPath);
+          return;
+        }
+      }
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void createSnapshotsFolder() throws IOException {
+    final Path folder = Files.createTempDirectory(SNAPSHOTS_FOLDER_PREFIX + "-");
+
+    snapshotsLock = FileChannel.open(folder.resolve(LOCK_FILE_NAME), StandardOpenOption.CREATE_NEW,
+        StandardOpenOption.WRITE);
+    snapshotsLock.lock();
+    snapshotsPath = folder;
+
+    Runtime.getRuntime().addShutdownHook(new Thread(() -> deleteRecursively(folder),
+        "strategy-plugins-cleanup"));
+  }
+
+  /**
+   * Deletes the plugin copies of agents that did not exit properly.
+   */
+  private static void deleteStaleSnapshots() {
+    final Path tempPath = Paths.get(System.getProperty("java.io.tmpdir"));
+
+    try (DirectoryStream<Path> folders =
+        Files.newDirectoryStream(tempPath, SNAPSHOTS_FOLDER_PREFIX + "*")) {
+      for (final Path folder : folders) {
+        if (Files.isDirectory(folder, LinkOption.NOFOLLOW_LINKS) && !isLocked(folder)) {
+          LOGGER.info("Deleting stale strategy plugin copies {}", folder);
+          deleteRecursively(folder);
+        }
+      }
+    } catch (final IOException e) {
+      LOGGER.warn("Could not delete stale strategy plugin copies. Error: {}", e.toString());
+    }
+  }
+
+  private static boolean isLocked(final Path folder) {
+    final Path lockFile = folder.resolve(LOCK_FILE_NAME);
+
+    if (!Files.exists(lockFile)) {
+      // copies of previous agent versions
+      return false;
+    }
+
+    try (FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.WRITE);
+        FileLock lock = channel.tryLock()) {
+      return lock == null;
+    } catch (final IOException | OverlappingFileLockException e) {
+      // e.g. the folder of another user
+      return true;
+    }
+  }
+
+  private static void deleteRecursively(final Path path) {
+    try (Stream<Path> paths = Files.walk(path)) {
+      paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+    } catch (final IOException e) {
+      LOGGER.warn("Could not delete strategy plugin copy {}. Error: {}", path, e.toString());
+    }
+  }
+
+  private boolean containsPluginChange(final WatchKey key) {
+    boolean pluginsChanged = false;
+
+    for (final WatchEvent<?> event : key.pollEvents()) {
+      if (event.kind() == StandardWatchEventKinds.OVERFLOW
+          || event.context().toString().endsWith(PLUGIN_SUFFIX)) {
+        pluginsChanged = true;
+      }
+    }
+
+    key.reset();
+
+    return pluginsChanged;
+  }
+
+  private synchronized void reloadPlugins(final Path pluginPath) {
+    final PluginSnapshot newPlugins;
+
+    try {
+      newPlugins = PluginSnapshot.copyOf(pluginPath, snapshotsPath);
+    } catch (final IOException e) {
+      LOGGER.error("Could not load strategy plugins of {}, keeping the current plugins. Error: {}",
+          pluginPath, e.toString());
+      return;
+    }
+
+    final List<DiscoveryStrategy> pluginStrategies = newPlugins.loadStrategies();
+
+    DiscoveryStrategyFactory.updatePluginStrategies(pluginStrategies);
+
+    if (retiredPlugins != null) {
+      retiredPlugins.close();
+    }
+
+    retiredPlugins = currentPlugins;
+    currentPlugins = newPlugins;
+  }
+
+  /**
+   * Copy of the plugin jars at a certain point in time and the class loader of the copied jars.
+   */
+  private static final class PluginSnapshot {
+
+    private final Path snapshotPath;
+    private final URLClassLoader classLoader;
+
+    private PluginSnapshot(final Path snapshotPath, final URLClassLoader classLoader) {
+      this.snapshotPath = snapshotPath;
+      this.classLoader = classLoader;
+    }
+
+    static PluginSnapshot copyOf(final Path pluginPath, final Path snapshotsPath)
+        throws IOException {
+      final List<Path> pluginJars = new ArrayList<Path>();
+
+      try (DirectoryStream<Path> jars =
+          Files.newDirectoryStream(pluginPath, "*" + PLUGIN_SUFFIX)) {
+        jars.forEach(pluginJars::add);
+      }
+
+      // the name of a jar determines the priority of its strategies
+      pluginJars.sort(Comparator.comparing(jar -> jar.getFileName().toString()));
+
+      final Path snapshotPath = Files.createTempDirectory(snapshotsPath, "snapshot");
+      final List<URL> urls = new ArrayList<URL>();
+
+      try {
+        for (final Path pluginJar : pluginJars) {
+          final Path copiedJar = snapshotPath.resolve(pluginJar.getFileName());
+          Files.copy(pluginJar, copiedJar);
+          urls.add(copiedJar.toUri().toURL());
+        }
+      } catch (final IOException e) {
+        deleteRecursively(snapshotPath);
+        throw e;
+      }
+
+      return new PluginSnapshot(snapshotPath, new URLClassLoader(urls.toArray(new URL[0]),
+          DiscoveryStrategy.class.getClassLoader()));
+    }
+
+    /**
+     * Instantiates the strategies of all plugins. Faulty strategies are logged and skipped.
+     */
+    List<DiscoveryStrategy> loadStrategies() {
+      final List<DiscoveryStrategy> strategies = new ArrayList<DiscoveryStrategy>();
+
+      final Iterator<DiscoveryStrategy> loadedStrategies =
+          ServiceLoader.load(DiscoveryStrategy.class, classLoader).iterator();
+
+      while (true) {
+        final DiscoveryStrategy strategy;
+
+        try {
+          if (!loadedStrategies.hasNext()) {
+            break;
+          }
+
+          strategy = loadedStrategies.next();
+
+          if (strategy.getClass().getClassLoader() != classLoader) {
+            // provided by the agent itself, not by a plugin
+            continue;
+          }
+
+          if (strategy.getMatchPatterns() == null || strategy.getMatchPatterns().isEmpty()) {
+            LOGGER.warn("Skipping strategy plugin {} without match patterns",
+                strategy.getClass().getName());
+            continue;
+          }
+        } catch (ServiceConfigurationError | LinkageError | RuntimeException e) { // NOPMD
+          LOGGER.warn("Skipping faulty strategy plugin. Error: {}", e.toString());
+          continue;
+        }
+
+        strategies.add(strategy);
+      }
+
+      return strategies;
+    }
+
+    void close() {
+      try {
+        classLoader.close();
+      } catch (final IOException e) {
+        LOGGER.warn("Could not close class loader of strategy plugins. Error: {}", e.toString());
+      }
+
+      deleteRecursively(snapshotPath);
+    }
+
+  }
+
+}
@@ -0,0 +1,168 @@
+package net.explorviz.discoveryagent.services;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Parsed kieker.monitoring.properties. Comments, blank lines and the order of the properties are
+ * kept, therefore an unchanged configuration is rendered exactly as it was read. Instances are
+ * immutable, i.e., the default configuration can be shared by all procezzes.
+ */
+public final class KiekerProperties {
+
+  public static final String APPLICATION_NAME = "kieker.monitoring.applicationName";
+  public static final String HOSTNAME = "kieker.monitoring.hostname";
+  public static final String TCP_WRITER_HOSTNAME =
+      "kieker.monitoring.writer.tcp.SingleSocketTcpWriter.hostname";
+
+  private static final String LINE_SEPARATOR = System.lineSeparator();
+
+  private final List<Line> lines;
+  private final String content;
+
+  private KiekerProperties(final List<Line> lines) {
+    this.lines = Collections.unmodifiableList(lines);
+
+    final StringBuilder renderedContent = new StringBuilder();
+    for (final Line line : lines) {
+      renderedContent.append(line.text).append(LINE_SEPARATOR);
+    }
+    this.content = renderedContent.toString();
+  }
+
+  public static KiekerProperties parse(final String content) {
+    final List<Line> lines = new ArrayList<Line>();
+
+    // trailing blank lines are kept, the text after the last line separator is not a line
+    final String[] texts = content.split("\\r?\\n", -1);
+    final int lineCount = texts[texts.length - 1].isEmpty() ? texts.length - 1 : texts.length;
+
+    for (int i = 0; i < lineCount; i++) {
+      lines.add(Line.parse(texts[i]));
+    }
+
+    return new KiekerProperties(lines);
+  }
+
+  /**
+   * Returns the value of the passed property or null, if it is not set.
+   */
+  public String get(final String key) {
+    for (final Line line : lines) {
+      if (key.equals(line.key)) {
+        return line.value;
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * Returns a configuration with the passed property value. The property is appended, if it is not
+   * set yet. The same instance is returned, if the value does not change.
+   */
+  public KiekerProperties with(final String key, final String value) {
+    if (value.equals(get(key))) {
+      return this;
+    }
+
+    final List<Line> newLines = new ArrayList<Line>(lines);
+    boolean replaced = false;
+
+    for (int i = 0; i < newLines.size(); i++) {
+      if (key.equals(newLines.get(i).key)) {
+        newLines.set(i, Line.of(key, value));
+        replaced = true;
+      }
+    }
+
+    if (!replaced) {
+      newLines.add(Line.of(key, value));
+    }
+
+    return new KiekerProperties(newLines);
+  }
+
+  public String getApplicationName() {
+    return get(APPLICATION_NAME);
+  }
+
+  public KiekerProperties withApplicationName(final String applicationName) {
+    return with(APPLICATION_NAME, applicationName);
+  }
+
+  public String getHostname() {
+    return get(HOSTNAME);
+  }
+
+  public KiekerProperties withHostname(final String hostname) {
+    return with(HOSTNAME, hostname);
+  }
+
+  public String getTcpWriterHostname() {
+    return get(TCP_WRITER_HOSTNAME);
+  }
+
+  public KiekerProperties withTcpWriterHostname(final String tcpWriterHostname) {
+    return with(TCP_WRITER_HOSTNAME, tcpWriterHostname);
+  }
+
+  /**
+   * Returns the content of the properties file.
+   */
+  public String render() {
+    return content;
+  }
+
+  @Override
+  public boolean equals(final Object obj) {
+    return this == obj
+        || obj instanceof KiekerProperties && content.equals(((KiekerProperties) obj).content);
+  }
+
+  @Override
+  public int hashCode() {
+    return content.hashCode();
+  }
+
+  @Override
+  public String toString() {
+    return content;
+  }
+
+  /**
+   * A line of the properties file, key and value are null for comments and blank lines.
+   */
+  private static final class Line {
+
+    private final String text;
+    private final String key;
+    private final String value;
+
+    private Line(final String text, final String key, final String value) {
+      this.text = text;
+      this.key = key;
+      this.value = value;
+    }
+
+    static Line of(final String key, final String value) {
+      return new Line(key + "=" + value, key, value);
+    }
+
+    static Line parse(final String text) {
+      final String trimmedText = text.trim();
+      final int separatorIndex = text.indexOf('=');
+
+      if (trimmedText.isEmpty() || trimmedText.startsWith("#") || trimmedText.startsWith("!")
+          || separatorIndex < 0) {
+        return new Line(text, null, null);
+      }
+
+      return new Line(text, text.substring(0, separatorIndex).trim(),
+          text.substring(separatorIndex + 1).trim());
+    }
+
+  }
+
+}
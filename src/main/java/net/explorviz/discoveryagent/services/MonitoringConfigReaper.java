@@ -0,0 +1,174 @@
+package net.explorviz.discoveryagent.services;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.inject.Inject;
+import net.explorviz.discoveryagent.procezz.InternalRepository;
+import net.explorviz.shared.config.annotations.Config;
+import net.explorviz.shared.discovery.model.Procezz;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Periodically deletes the materialized monitoring configs (see
+ * {@link MonitoringFilesystemService}) of procezzes that are stopped and not monitored for longer
+ * than the retention period. Configs of unknown procezzes, e.g., of a previous run, are handled
+ * like configs of stopped procezzes. Reaped procezzes are served the default configs afterwards.
+ * The number of reclaimed folders and bytes is logged and counted, the totals are exposed in the
+ * meta object of the entry point.
+ */
+public final class MonitoringConfigReaper {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(MonitoringConfigReaper.class);
+
+  @Config("monitoringConfigReapRate")
+  private int reapRate;
+
+  @Config("monitoringConfigRetention")
+  private int retention;
+
+  private final ScheduledExecutorService reapExecutor =
+      Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "monitoring-config-reaper");
+        thread.setDaemon(true);
+        return thread;
+      });
+
+  private final InternalRepository internalRepository;
+  private final MonitoringFilesystemService filesystemService;
+
+  // time since which the folder of a procezz ID can be reaped, only accessed by the reap thread
+  private final Map<String, Long> reapableSince = new HashMap<String, Long>();
+
+  private final AtomicLong reclaimedFolders = new AtomicLong();
+  private final AtomicLong reclaimedBytes = new AtomicLong();
+
+  private ScheduledFuture<?> reapTask;
+
+  @Inject
+  public MonitoringConfigReaper(final InternalRepository internalRepository,
+      final MonitoringFilesystemService filesystemService) {
+    this.internalRepository = internalRepository;
+    this.filesystemService = filesystemService;
+  }
+
+  /**
+   * Starts the periodic reaping, unless it is disabled (reap rate of 0).
+   */
+  public synchronized void start() {
+    if (reapTask != null || reapRate <= 0) {
+      return;
+    }
+
+    reapTask = reapExecutor.scheduleWithFixedDelay(() -> {
+      try {
+        reap();
+      } catch (final RuntimeException e) { // NOPMD
+        // a failed run must not cancel the periodic reaping
+        LOGGER.error("Reaping monitoring configs failed. Error: {}", e.toString());
+      }
+    }, reapRate, reapRate, TimeUnit.MILLISECONDS);
+  }
+
+  private void reap() {
+    final long now = System.currentTimeMillis();
+
+    final List<String> materializedIds;
+
+    try {
+      materializedIds = filesystemService.findMaterializedProcezzIds();
+    } catch (final IOException e) {
+      LOGGER.warn("Could not list monitoring configs. Error: {}", e.toString());
+      return;
+    }
+
+    final Map<String, Procezz> procezzesById = new HashMap<String, Procezz>();
+    internalRepository.getProcezzList().forEach(p -> procezzesById.put(p.getId(), p));
+
+    reapableSince.keySet().retainAll(new HashSet<String>(materializedIds));
+
+    long cycleFolders = 0;
+    long cycleBytes = 0;
+
+    for (final String procezzId : materializedIds) {
+      final Procezz procezz = procezzesById.get(procezzId);
+
+      if (procezz != null && !isReapable(procezz)) {
+        reapableSince.remove(procezzId);
+        continue;
+      }
+
+      final Long since = reapableSince.putIfAbsent(procezzId, now);
+
+      if (since == null || now - since < retention) {
+        continue;
+      }
+
+      final long deletedBytes;
+
+      try {
+        if (procezz == null) {
+          deletedBytes = filesystemService.deleteConfigsForProcezz(procezzId);
+        } else {
+          synchronized (procezz) {
+            if (!isReapable(procezz)) {
+              // restarted in the meantime
+              reapableSince.remove(procezzId);
+              continue;
+            }
+
+            deletedBytes = deleteConfigsForKnownProcezz(procezz);
+          }
+        }
+      } catch (final IOException e) {
+        LOGGER.warn("Could not delete monitoring configs of procezz {}. Error: {}", procezzId,
+            e.toString());
+        continue;
+      }
+
+      cycleBytes += deletedBytes;
+      cycleFolders++;
+      reapableSince.remove(procezzId);
+    }
+
+    if (cycleFolders > 0) {
+      reclaimedFolders.addAndGet(cycleFolders);
+      reclaimedBytes.addAndGet(cycleBytes);
+
+      LOGGER.info(
+          "Reclaimed {} monitoring config folders ({} bytes), {} folders ({} bytes) in total",
+          cycleFolders, cycleBytes, reclaimedFolders.get(), reclaimedBytes.get());
+    }
+  }
+
+  private static boolean isReapable(final Procezz procezz) {
+    return !procezz.isMonitoredFlag() && procezz.isStopped();
+  }
+
+  private long deleteConfigsForKnownProcezz(final Procezz procezz) throws IOException {
+    try {
+      return filesystemService.deleteConfigsForProcezz(procezz.getId());
+    } finally {
+      // the representation of the procezz contains the (partially) deleted configs
+      filesystemService.loadConfigContentsIntoProcezz(procezz);
+      internalRepository.markAgentChanged();
+    }
+  }
+
+  public long getReclaimedFolders() {
+    return reclaimedFolders.get();
+  }
+
+  public long getReclaimedBytes() {
+    return reclaimedBytes.get();
+  }
+
+}
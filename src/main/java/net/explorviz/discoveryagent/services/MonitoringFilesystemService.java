@@ -2,140 +2,279 @@ package net.explorviz.discoveryagent.services;
 
 import java.io.File;
 import java.io.IOException;
-import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import net.explorviz.discoveryagent.procezz.ProcezzStateStore;
+import net.explorviz.discoveryagent.procezz.monitoring.AopConfigurationValidator;
+import net.explorviz.discoveryagent.util.AtomicFiles;
 import net.explorviz.shared.config.annotations.Config;
 import net.explorviz.shared.discovery.exceptions.procezz.ProcezzMonitoringSettingsException;
 import net.explorviz.shared.discovery.model.Procezz;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public final class MonitoringFilesystemService {
 
+  private static final Logger LOGGER = LoggerFactory.getLogger(MonitoringFilesystemService.class);
+
   private static final String MONITORING_CONFIGS_FOLDER_NAME = "monitoring-configurations";
   private static final String MONITORING_DEFAULT_CONF_PATH = "kieker";
-  private static final String KIEKER_APP_NAME_PROPERTY = "kieker.monitoring.applicationName=";
-  private static final String KIEKER_HOSTNAME_PROPERTY = "kieker.monitoring.hostname=";
-  private static final String KIEKER_TCP_HOSTNAME_PROPERTY =
-      "kieker.monitoring.writer.tcp.SingleSocketTcpWriter.hostname=";
+  private static final String RESOURCE_CACHE_FOLDER_NAME = "kieker-cache";
+  private static final String TEMP_RESOURCE_CACHE_FOLDER_NAME = "explorviz-kieker-cache-";
   private static final String KIEKER_PROPS_FILENAME = "kieker.monitoring.properties";
   private static final String AOP_PROPS_FILENAME = "aop.xml";
   private static final String KIEKER_JAR_FILENAME = "kieker-1.14-SNAPSHOT-aspectj.jar";
 
   private Path configsPath;
+  private Path kiekerJarPath;
+
+  // shared defaults, the folder of a procezz only contains configs that are materialized
+  private volatile KiekerProperties baseKiekerConfig;
+  private volatile String baseAopConfig;
+
+  // rendered kieker configs of procezzes, written to disk once materialized
+  private final ConcurrentMap<String, KiekerProperties> kiekerConfigs =
+      new ConcurrentHashMap<String, KiekerProperties>();
 
   @Config("backendIP")
   private String backendIp;
 
+  @Config("stateDirectory")
+  private String stateDirectory;
+
+  @Config("monitoringResourceCacheDirectory")
+  private String resourceCacheDirectory;
+
+  /**
+   * Creates the monitoring configs folder in the state directory, so that the configurations of
+   * procezzes survive a restart of the agent, or in a temporary directory, if no state directory
+   * is configured. The default configurations are replaced in either case.
+   */
   public void createMonitoringConfigsFolder() throws IOException {
 
-    // Create temporary folder in temp directory of this OS
+    if (stateDirectory == null || stateDirectory.trim().isEmpty()) {
+      // Create temporary folder in temp directory of this OS
 
-    final Path tempPathToDir = Files.createTempDirectory("explorviz-discovery-agent");
+      final Path tempPathToDir = Files.createTempDirectory("explorviz-discovery-agent");
 
-    final File tempDir = tempPathToDir.toFile();
+      final File tempDir = tempPathToDir.toFile();
 
-    final String configsFolderPath = tempDir + File.separator + MONITORING_CONFIGS_FOLDER_NAME;
+      final String configsFolderPath = tempDir + File.separator + MONITORING_CONFIGS_FOLDER_NAME;
 
-    configsPath = Files.createDirectory(Paths.get(configsFolderPath));
+      configsPath = Files.createDirectory(Paths.get(configsFolderPath));
 
-    copyDefaultKiekerProperties();
-    updateDefaultKiekerProperties();
+      // deleteOnExit does not delete non-empty directories
+      Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+        try {
+          deleteRecursively(tempPathToDir);
+        } catch (final IOException e) {
+          LOGGER.warn("Could not delete monitoring configs folder {}. Error: {}", tempDir,
+              e.toString());
+        }
+      }, "monitoring-configs-cleanup"));
+    } else {
+      configsPath = Files.createDirectories(ProcezzStateStore.resolveStateDirectory(stateDirectory)
+          .resolve(MONITORING_CONFIGS_FOLDER_NAME));
+    }
 
-    tempDir.deleteOnExit();
+    copyDefaultKiekerProperties();
+    loadBaseConfigs();
   }
 
   private void copyDefaultKiekerProperties() throws IOException {
+    final MonitoringResourceCache resourceCache =
+        MonitoringResourceCache.open(resolveResourceCachePath(), MONITORING_DEFAULT_CONF_PATH);
+
+    // the agent jar is shared by all instrumented JVMs of this host
+    kiekerJarPath = resourceCache.extract(KIEKER_JAR_FILENAME).toAbsolutePath();
+
+    // defaults of a previous run are replaced, e.g., by defaults of a newer agent version
+    Files.copy(resourceCache.extract(KIEKER_PROPS_FILENAME),
+        Paths.get(configsPath.toString() + File.separator + KIEKER_PROPS_FILENAME),
+        StandardCopyOption.REPLACE_EXISTING);
+    Files.copy(resourceCache.extract(AOP_PROPS_FILENAME),
+        Paths.get(configsPath.toString() + File.separator + AOP_PROPS_FILENAME),
+        StandardCopyOption.REPLACE_EXISTING);
+
+    // copy of previous agent versions
+    Files.deleteIfExists(Paths.get(configsPath.toString() + File.separator + KIEKER_JAR_FILENAME));
+  }
+
+  /**
+   * Returns the configured cache directory or a directory of the current user, i.e., in the state
+   * directory or a temporary directory named after the user.
+   */
+  private Path resolveResourceCachePath() {
+    if (resourceCacheDirectory != null && !resourceCacheDirectory.trim().isEmpty()) {
+      return Paths.get(resourceCacheDirectory.trim()).toAbsolutePath();
+    }
 
-    final ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+    if (stateDirectory != null && !stateDirectory.trim().isEmpty()) {
+      return ProcezzStateStore.resolveStateDirectory(stateDirectory)
+          .resolve(RESOURCE_CACHE_FOLDER_NAME);
+    }
 
-    final URL urlToDefaultKiekerProps = classLoader
-        .getResource(MONITORING_DEFAULT_CONF_PATH + File.separator + KIEKER_PROPS_FILENAME);
+    return Paths.get(System.getProperty("java.io.tmpdir"),
+        TEMP_RESOURCE_CACHE_FOLDER_NAME + System.getProperty("user.name")).toAbsolutePath();
+  }
 
-    final URL urlToDefaultAopProps =
-        classLoader.getResource(MONITORING_DEFAULT_CONF_PATH + File.separator + AOP_PROPS_FILENAME);
+  /**
+   * Sets the backend address in the default kieker config and loads the defaults, which are
+   * shared by all procezzes without materialized configs.
+   */
+  private void loadBaseConfigs() throws IOException {
+    final Path kiekerConfigPath = Paths.get(getKiekerConfigPath());
 
-    final URL urlToDefaultKiekerJar = classLoader
-        .getResource(MONITORING_DEFAULT_CONF_PATH + File.separator + KIEKER_JAR_FILENAME);
+    final KiekerProperties kiekerConfig = KiekerProperties
+        .parse(new String(Files.readAllBytes(kiekerConfigPath), StandardCharsets.UTF_8));
 
-    final Path kiekerDefaultConfigPath = Paths.get(urlToDefaultKiekerProps.getFile());
-    final Path kiekerDefaultAopPath = Paths.get(urlToDefaultAopProps.getFile());
-    final Path kiekerDefaultJarPath = Paths.get(urlToDefaultKiekerJar.getFile());
+    baseKiekerConfig = kiekerConfig.withTcpWriterHostname(backendIp);
 
-    Files.copy(kiekerDefaultConfigPath,
-        Paths.get(configsPath.toString() + File.separator + KIEKER_PROPS_FILENAME));
-    Files.copy(kiekerDefaultAopPath,
-        Paths.get(configsPath.toString() + File.separator + AOP_PROPS_FILENAME));
-    Files.copy(kiekerDefaultJarPath,
-        Paths.get(configsPath.toString() + File.separator + KIEKER_JAR_FILENAME));
+    if (!baseKiekerConfig.equals(kiekerConfig)) {
+      AtomicFiles.write(kiekerConfigPath,
+          baseKiekerConfig.render().getBytes(StandardCharsets.UTF_8));
+    }
 
+    baseAopConfig =
+        new String(Files.readAllBytes(Paths.get(getAopConfigPath())), StandardCharsets.UTF_8);
   }
 
-  private void updateDefaultKiekerProperties() throws IOException {
-    final Path kiekerConfigPath =
-        Paths.get(configsPath.toString() + File.separator + KIEKER_PROPS_FILENAME);
+  /**
+   * Writes the configs of the passed procezz to its folder, so that they can be passed to the
+   * monitoring agent. Called before a procezz is restarted with monitoring. Configs that were
+   * already materialized (e.g. a custom aop.xml) are kept, but validated.
+   */
+  public void materializeConfigsForProcezz(final Procezz procezz)
+      throws ProcezzMonitoringSettingsException {
+    final Path aopPath = Paths.get(getAopConfigPathForProcezzID(procezz.getId()));
+    final Path kiekerConfigPath = Paths.get(getKiekerConfigPathForProcezzID(procezz.getId()));
+
+    try {
+      Files.createDirectories(kiekerConfigPath.getParent());
 
-    final List<String> kiekerConfigNewContent = Files.lines(kiekerConfigPath).map(line -> {
-      if (line.startsWith(KIEKER_TCP_HOSTNAME_PROPERTY)) {
-        return KIEKER_TCP_HOSTNAME_PROPERTY + backendIp;
+      if (Files.exists(aopPath)) {
+        // the file may have been edited on disk
+        validateAopContent(procezz,
+            new String(Files.readAllBytes(aopPath), StandardCharsets.UTF_8));
       } else {
-        return line;
+        AtomicFiles.write(aopPath, baseAopConfig.getBytes(StandardCharsets.UTF_8));
       }
-    }).collect(Collectors.toList());
-
-    Files.write(kiekerConfigPath, kiekerConfigNewContent);
-  }
-
-  public void createConfigFolderForProcezz(final Procezz procezz) throws IOException {
 
-    final String folderOfPassedIdString = configsPath + "/" + procezz.getId();
+      final KiekerProperties kiekerConfig = kiekerConfigs.get(procezz.getId());
 
-    final File folderOfPassedId = new File(folderOfPassedIdString);
+      if (kiekerConfig != null) {
+        writeKiekerConfigIfChanged(kiekerConfigPath, kiekerConfig);
+      } else if (!Files.exists(kiekerConfigPath)) {
+        AtomicFiles.write(kiekerConfigPath,
+            baseKiekerConfig.render().getBytes(StandardCharsets.UTF_8));
+      }
+    } catch (final IOException e) {
+      throw new ProcezzMonitoringSettingsException(
+          "There was an error while writing the monitoring configs for the passed procezz (ID: "
+              + procezz.getId() + ")",
+          e, procezz);
+    }
+  }
 
-    if (!folderOfPassedId.exists()) {
-      Files.createDirectory(Paths.get(folderOfPassedIdString));
+  /**
+   * Sets the aop.xml and kieker config contents of the passed procezz, which are part of its
+   * representation. Procezzes without materialized configs share the default contents.
+   */
+  public void loadConfigContentsIntoProcezz(final Procezz procezz) {
+    try {
+      procezz.setAopContent(readAopFileContentForProcezz(procezz));
+      procezz.setKiekerConfigContent(readKiekerConfigForProcezz(procezz));
+    } catch (final ProcezzMonitoringSettingsException e) {
+      LOGGER.warn("Could not read the monitoring configs of procezz {}, using defaults. Error: {}",
+          procezz.getId(), e.toString());
+      procezz.setAopContent(baseAopConfig);
+      procezz.setKiekerConfigContent(baseKiekerConfig.render());
     }
+  }
 
-    final String configPathString = configsPath + File.separator + KIEKER_PROPS_FILENAME;
+  /**
+   * Returns the aop.xml of the passed procezz, i.e., its materialized file or the shared default.
+   */
+  public String readAopFileContentForProcezz(final Procezz procezz)
+      throws ProcezzMonitoringSettingsException {
+    final Path aopPath = Paths.get(getAopConfigPathForProcezzID(procezz.getId()));
 
-    final String aopPathString = configsPath + File.separator + AOP_PROPS_FILENAME;
+    if (!Files.exists(aopPath)) {
+      return baseAopConfig;
+    }
 
-    final Path sourceKiekerConfigPath = Paths.get(configPathString);
-    final Path sourceAopPath = Paths.get(aopPathString);
+    try {
+      return new String(Files.readAllBytes(aopPath), StandardCharsets.UTF_8);
+    } catch (final IOException e) {
+      throw new ProcezzMonitoringSettingsException(
+          "There was an error while reading the aop.xml for the passed procezz (ID: "
+              + procezz.getId() + ")",
+          e, procezz);
+    }
+  }
 
-    final Path targetKiekerConfigPath =
-        Paths.get(folderOfPassedIdString + "/" + sourceKiekerConfigPath.getFileName());
-    final Path targetAopPath =
-        Paths.get(folderOfPassedIdString + "/" + sourceAopPath.getFileName());
+  /**
+   * Returns the kieker.monitoring.properties of the passed procezz, i.e., its materialized file,
+   * its rendered config or the shared default.
+   */
+  public String readKiekerConfigForProcezz(final Procezz procezz)
+      throws ProcezzMonitoringSettingsException {
+    final Path kiekerConfigPath = Paths.get(getKiekerConfigPathForProcezzID(procezz.getId()));
 
-    if (!targetKiekerConfigPath.toFile().exists()) {
-      Files.copy(sourceKiekerConfigPath,
-          Paths.get(folderOfPassedIdString + "/" + sourceKiekerConfigPath.getFileName()));
+    if (!Files.exists(kiekerConfigPath)) {
+      final KiekerProperties kiekerConfig = kiekerConfigs.get(procezz.getId());
+      return (kiekerConfig == null ? baseKiekerConfig : kiekerConfig).render();
     }
 
-    if (!targetAopPath.toFile().exists()) {
-      Files.copy(sourceAopPath,
-          Paths.get(folderOfPassedIdString + "/" + sourceAopPath.getFileName()));
+    try {
+      return new String(Files.readAllBytes(kiekerConfigPath), StandardCharsets.UTF_8);
+    } catch (final IOException e) {
+      throw new ProcezzMonitoringSettingsException(
+          "There was an error while reading the kieker.config for the passed procezz (ID: "
+              + procezz.getId() + ")",
+          e, procezz);
     }
+  }
 
-    final String aopFileContent = new String(Files.readAllBytes(targetAopPath));
-
-    final String kiekerConfigFileContent = new String(Files.readAllBytes(targetKiekerConfigPath));
+  /**
+   * Writes the passed aop.xml to the folder of the procezz. Nothing is written, if the content
+   * equals the default and the procezz uses the default anyway.
+   *
+   * @throws ProcezzMonitoringSettingsException if the aop.xml is invalid, see
+   *         {@link AopConfigurationValidator}
+   */
+  public void updateAopFileContentForProcezz(final Procezz procezz, final String aopContent)
+      throws ProcezzMonitoringSettingsException {
+    // clients send the unchanged content with every update of the procezz
+    if (aopContent.equals(procezz.getAopContent())) {
+      return;
+    }
 
-    procezz.setAopContent(aopFileContent);
-    procezz.setKiekerConfigContent(kiekerConfigFileContent);
+    validateAopContent(procezz, aopContent);
 
-  }
+    final Path aopPath = Paths.get(getAopConfigPathForProcezzID(procezz.getId()));
 
-  public void updateAopFileContentForProcezz(final Procezz procezz)
-      throws ProcezzMonitoringSettingsException {
-    final String folderOfPassedIdString = configsPath + "/" + procezz.getId();
-    final Path aopPath = Paths.get(folderOfPassedIdString + "/aop.xml");
+    if (aopContent.equals(baseAopConfig) && !Files.exists(aopPath)) {
+      procezz.setAopContent(baseAopConfig);
+      return;
+    }
 
     try {
-      Files.write(aopPath, procezz.getAopContent().getBytes());
+      Files.createDirectories(aopPath.getParent());
+      AtomicFiles.write(aopPath, aopContent.getBytes(StandardCharsets.UTF_8));
+      procezz.setAopContent(aopContent);
     } catch (final IOException e) {
       throw new ProcezzMonitoringSettingsException(
           "There was an error while updating the aop.xml for the passed procezz (ID: "
@@ -144,29 +283,45 @@ public final class MonitoringFilesystemService {
     }
   }
 
+  private void validateAopContent(final Procezz procezz, final String aopContent)
+      throws ProcezzMonitoringSettingsException {
+    final List<String> problems = AopConfigurationValidator.validate(aopContent);
+
+    if (!problems.isEmpty()) {
+      final String message = "Invalid aop.xml for the passed procezz (ID: " + procezz.getId()
+          + "): " + String.join("; ", problems);
+      throw new ProcezzMonitoringSettingsException(message, new IllegalArgumentException(message),
+          procezz);
+    }
+  }
+
+  /**
+   * Applies the application name and hostname of the passed procezz to its kieker config. The
+   * config is only written to disk, if it is materialized and its content has changed.
+   */
   public void updateKiekerConfigForProcezz(final Procezz procezzInCache, final String hostname)
       throws ProcezzMonitoringSettingsException {
-    final String folderOfPassedIdString = configsPath + "/" + procezzInCache.getId();
     final Path kiekerConfigPath =
-        Paths.get(folderOfPassedIdString + "/kieker.monitoring.properties");
+        Paths.get(getKiekerConfigPathForProcezzID(procezzInCache.getId()));
 
     final String appName =
         procezzInCache.getName() == null ? String.valueOf(procezzInCache.getPid())
             : procezzInCache.getName();
-    try {
 
-      final List<String> kiekerConfigNewContent = Files.lines(kiekerConfigPath).map(line -> {
-        if (line.startsWith(KIEKER_APP_NAME_PROPERTY)) {
-          return KIEKER_APP_NAME_PROPERTY + appName;
-        } else if (line.startsWith(KIEKER_HOSTNAME_PROPERTY)) {
-          return KIEKER_HOSTNAME_PROPERTY + hostname;
-        } else {
-          return line;
-        }
-      }).collect(Collectors.toList());
+    final KiekerProperties kiekerConfig =
+        baseKiekerConfig.withApplicationName(appName).withHostname(hostname);
+
+    final KiekerProperties previousKiekerConfig =
+        kiekerConfigs.put(procezzInCache.getId(), kiekerConfig);
 
-      Files.write(kiekerConfigPath, kiekerConfigNewContent);
+    procezzInCache.setKiekerConfigContent(kiekerConfig.render());
 
+    if (kiekerConfig.equals(previousKiekerConfig) || !Files.exists(kiekerConfigPath)) {
+      return;
+    }
+
+    try {
+      writeKiekerConfigIfChanged(kiekerConfigPath, kiekerConfig);
     } catch (final IOException e) {
       throw new ProcezzMonitoringSettingsException(
           "There was an error while updating the kieker.config for the passed procezz (ID: "
@@ -175,8 +330,75 @@ public final class MonitoringFilesystemService {
     }
   }
 
+  private void writeKiekerConfigIfChanged(final Path kiekerConfigPath,
+      final KiekerProperties kiekerConfig) throws IOException {
+    final byte[] content = kiekerConfig.render().getBytes(StandardCharsets.UTF_8);
+
+    if (Files.exists(kiekerConfigPath)
+        && Arrays.equals(content, Files.readAllBytes(kiekerConfigPath))) {
+      return;
+    }
+
+    AtomicFiles.write(kiekerConfigPath, content);
+  }
+
+  /**
+   * Returns the IDs of all procezzes whose configs are materialized, including procezzes that are
+   * no longer known (e.g. of a previous run).
+   */
+  public List<String> findMaterializedProcezzIds() throws IOException {
+    final List<String> procezzIds = new ArrayList<String>();
+
+    try (DirectoryStream<Path> folders =
+        Files.newDirectoryStream(configsPath, path -> Files.isDirectory(path))) {
+      folders.forEach(folder -> procezzIds.add(folder.getFileName().toString()));
+    }
+
+    return procezzIds;
+  }
+
+  /**
+   * Deletes the materialized configs of the passed procezz ID, including its rendered kieker
+   * config. The procezz is served the default configs afterwards, until its configs are
+   * materialized again. Callers must synchronize on the procezz, if it is known.
+   *
+   * @return the number of deleted bytes
+   */
+  public long deleteConfigsForProcezz(final String procezzId) throws IOException {
+    final Path folderOfPassedId = configsPath.resolve(procezzId).normalize();
+
+    if (!configsPath.normalize().equals(folderOfPassedId.getParent())) {
+      throw new IOException("Invalid procezz ID " + procezzId);
+    }
+
+    // otherwise, the next materialization would restore the deleted kieker config
+    kiekerConfigs.remove(procezzId);
+
+    return deleteRecursively(folderOfPassedId);
+  }
+
+  private static long deleteRecursively(final Path path) throws IOException {
+    if (!Files.exists(path)) {
+      return 0;
+    }
+
+    long deletedBytes = 0;
+
+    try (Stream<Path> paths = Files.walk(path)) {
+      for (final Path deletedPath : paths.sorted(Comparator.reverseOrder())
+          .collect(Collectors.toList())) {
+        if (Files.isRegularFile(deletedPath)) {
+          deletedBytes += Files.size(deletedPath);
+        }
+        Files.delete(deletedPath);
+      }
+    }
+
+    return deletedBytes;
+  }
+
   public String getKiekerJarPath() {
-    return configsPath.toAbsolutePath().toString() + File.separator + KIEKER_JAR_FILENAME;
+    return kiekerJarPath.toString();
   }
 
   public String getKiekerConfigPath() {
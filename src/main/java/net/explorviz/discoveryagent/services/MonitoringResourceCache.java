@@ -0,0 +1,244 @@
+package net.explorviz.discoveryagent.services;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Set;
+import net.explorviz.discoveryagent.util.AtomicFiles;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Extracts the monitoring resources (kieker agent and default configs) of the classpath into a
+ * cache directory that is shared across restarts and by all agents of the same user. An extracted
+ * file is stored in a folder named after its SHA-256 checksum, i.e., a new agent version with
+ * different resources does not replace the files that are used by running JVMs.
+ *
+ * <p>
+ * The checksum of an extracted file is verified once and stored next to the file together with
+ * its size and modification time, later runs only compare these. The cache directory must be
+ * owned by the current user and must not be writable by others, since its jar is passed to every
+ * monitored JVM.
+ * </p>
+ */
+final class MonitoringResourceCache {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(MonitoringResourceCache.class);
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  // length of the checksum prefix that names the folder of an extracted file
+  private static final int FOLDER_NAME_LENGTH = 16;
+
+  private static final String CHECKSUM_FILE_SUFFIX = ".sha256";
+
+  private static final Set<PosixFilePermission> DIRECTORY_PERMISSIONS =
+      PosixFilePermissions.fromString("rwxr-xr-x");
+  private static final Set<PosixFilePermission> FILE_PERMISSIONS =
+      PosixFilePermissions.fromString("rw-r--r--");
+
+  private final Path cachePath;
+  private final String resourceFolder;
+
+  private MonitoringResourceCache(final Path cachePath, final String resourceFolder) {
+    this.cachePath = cachePath;
+    this.resourceFolder = resourceFolder;
+  }
+
+  /**
+   * Creates the cache directory if necessary and verifies that it can be trusted.
+   *
+   * @param resourceFolder folder of the resources in the classpath
+   * @throws IOException if the directory is not owned by the current user or writable by others
+   */
+  static MonitoringResourceCache open(final Path cachePath, final String resourceFolder)
+      throws IOException {
+    if (Files.isSymbolicLink(cachePath)) {
+      throw new IOException("Monitoring resource cache " + cachePath + " is a symbolic link");
+    }
+
+    if (!Files.exists(cachePath, LinkOption.NOFOLLOW_LINKS)) {
+      createDirectory(cachePath);
+    }
+
+    verifyOwnership(cachePath);
+
+    return new MonitoringResourceCache(cachePath, resourceFolder);
+  }
+
+  private static void createDirectory(final Path directory) throws IOException {
+    Files.createDirectories(directory);
+
+    final PosixFileAttributeView attributeView = Files.getFileAttributeView(directory,
+        PosixFileAttributeView.class, LinkOption.NOFOLLOW_LINKS);
+
+    // independent of the umask of the agent
+    if (attributeView != null) {
+      attributeView.setPermissions(DIRECTORY_PERMISSIONS);
+    }
+  }
+
+  private static void verifyOwnership(final Path directory) throws IOException {
+    final PosixFileAttributeView attributeView = Files.getFileAttributeView(directory,
+        PosixFileAttributeView.class, LinkOption.NOFOLLOW_LINKS);
+
+    if (attributeView == null) {
+      // no POSIX file system, access is controlled by the OS defaults
+      return;
+    }
+
+    final PosixFileAttributes attributes = attributeView.readAttributes();
+    final UserPrincipal currentUser = directory.getFileSystem().getUserPrincipalLookupService()
+        .lookupPrincipalByName(System.getProperty("user.name"));
+
+    if (!attributes.isDirectory()) {
+      throw new IOException("Monitoring resource cache " + directory + " is no directory");
+    }
+
+    if (!currentUser.equals(attributes.owner())) {
+      throw new IOException("Monitoring resource cache " + directory + " is owned by "
+          + attributes.owner().getName() + " instead of " + currentUser.getName());
+    }
+
+    if (attributes.permissions().contains(PosixFilePermission.GROUP_WRITE)
+        || attributes.permissions().contains(PosixFilePermission.OTHERS_WRITE)) {
+      throw new IOException("Monitoring resource cache " + directory
+          + " must not be writable by group or others, permissions are "
+          + PosixFilePermissions.toString(attributes.permissions()));
+    }
+  }
+
+  /**
+   * Returns the path of the extracted resource, the resource is extracted if necessary.
+   */
+  Path extract(final String resourceName) throws IOException {
+    final String checksum;
+
+    try (InputStream resource = openResource(resourceName)) {
+      checksum = checksum(resource);
+    }
+
+    final Path extractedPath =
+        cachePath.resolve(checksum.substring(0, FOLDER_NAME_LENGTH)).resolve(resourceName);
+
+    if (isVerified(extractedPath, checksum)) {
+      return extractedPath;
+    }
+
+    LOGGER.info("Extracting {} to {}", resourceName, extractedPath);
+
+    if (!Files.isDirectory(extractedPath.getParent(), LinkOption.NOFOLLOW_LINKS)) {
+      createDirectory(extractedPath.getParent());
+    }
+
+    // concurrently starting agents write identical content, the last rename wins
+    try (InputStream resource = openResource(resourceName)) {
+      AtomicFiles.write(extractedPath, resource, FILE_PERMISSIONS);
+    }
+
+    if (!checksum.equals(checksum(extractedPath))) {
+      throw new IOException("Checksum of extracted " + extractedPath + " does not match");
+    }
+
+    storeChecksum(extractedPath, checksum);
+
+    return extractedPath;
+  }
+
+  /**
+   * Returns true if the extracted file has the passed checksum. The file is only hashed, if no
+   * matching checksum was stored for its current size and modification time.
+   */
+  private boolean isVerified(final Path extractedPath, final String checksum)
+      throws IOException {
+    if (!Files.isRegularFile(extractedPath, LinkOption.NOFOLLOW_LINKS)) {
+      return false;
+    }
+
+    final Path checksumPath = getChecksumPath(extractedPath);
+
+    if (Files.isRegularFile(checksumPath, LinkOption.NOFOLLOW_LINKS)
+        && createChecksumEntry(extractedPath, checksum).equals(
+            new String(Files.readAllBytes(checksumPath), StandardCharsets.UTF_8))) {
+      return true;
+    }
+
+    // e.g., extracted by a previous version of the agent
+    if (checksum.equals(checksum(extractedPath))) {
+      storeChecksum(extractedPath, checksum);
+      return true;
+    }
+
+    return false;
+  }
+
+  private void storeChecksum(final Path extractedPath, final String checksum)
+      throws IOException {
+    AtomicFiles.write(getChecksumPath(extractedPath),
+        createChecksumEntry(extractedPath, checksum).getBytes(StandardCharsets.UTF_8),
+        FILE_PERMISSIONS);
+  }
+
+  private static String createChecksumEntry(final Path extractedPath, final String checksum)
+      throws IOException {
+    return checksum + " " + Files.size(extractedPath) + " "
+        + Files.getLastModifiedTime(extractedPath, LinkOption.NOFOLLOW_LINKS).toMillis();
+  }
+
+  private static Path getChecksumPath(final Path extractedPath) {
+    return extractedPath.resolveSibling(extractedPath.getFileName() + CHECKSUM_FILE_SUFFIX);
+  }
+
+  private InputStream openResource(final String resourceName) throws IOException {
+    // resources must be streamed, they are no files when running from a jar
+    final InputStream resource = Thread.currentThread().getContextClassLoader()
+        .getResourceAsStream(resourceFolder + "/" + resourceName);
+
+    if (resource == null) {
+      throw new IOException("Resource " + resourceName + " not found in classpath");
+    }
+
+    return resource;
+  }
+
+  private static String checksum(final Path file) throws IOException {
+    try (InputStream in = Files.newInputStream(file)) {
+      return checksum(in);
+    }
+  }
+
+  private static String checksum(final InputStream in) throws IOException {
+    final MessageDigest digest;
+
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (final NoSuchAlgorithmException e) {
+      // every Java platform supports SHA-256
+      throw new IllegalStateException(e);
+    }
+
+    final byte[] buffer = new byte[BUFFER_SIZE];
+    int read;
+    while ((read = in.read(buffer)) != -1) {
+      digest.update(buffer, 0, read);
+    }
+
+    final StringBuilder checksum = new StringBuilder();
+    for (final byte b : digest.digest()) {
+      checksum.append(String.format("%02x", b));
+    }
+
+    return checksum.toString();
+  }
+
+}
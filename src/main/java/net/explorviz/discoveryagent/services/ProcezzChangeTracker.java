@@ -0,0 +1,189 @@
+package net.explorviz.discoveryagent.services;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import net.explorviz.discoveryagent.procezz.SerializedAgentDocument;
+
+/**
+ * Computes the changes of the procezzes of an agent between two broadcasts. Changes are derived
+ * from the serialized JSON API document of the agent, therefore they use the same attribute names
+ * as full agent documents.
+ *
+ * <p>
+ * Not thread-safe, callers must synchronize.
+ * </p>
+ */
+final class ProcezzChangeTracker {
+
+  static final String PROCEZZ_ADDED = "procezz-added";
+  static final String PROCEZZ_REMOVED = "procezz-removed";
+  static final String PROCEZZ_UPDATED = "procezz-updated";
+
+  private static final String PROCEZZ_TYPE = "procezz";
+  private static final String DATA = "data";
+  private static final String INCLUDED = "included";
+  private static final String TYPE = "type";
+  private static final String ID = "id";
+  private static final String ATTRIBUTES = "attributes";
+
+  private final ObjectMapper mapper = new ObjectMapper();
+
+  private SerializedAgentDocument serializedDocument;
+  private JsonNode agentDocument;
+  private JsonNode agentAttributes;
+  private Map<String, JsonNode> procezzResources = new LinkedHashMap<String, JsonNode>();
+
+  /**
+   * Returns the changes of the procezzes of the passed agent document since the last call.
+   *
+   * @return changes in the order of the procezz list, or null if a full snapshot of the agent must
+   *         be sent instead, e.g., for the first call or if attributes of the agent itself changed
+   */
+  List<ProcezzChange> update(final SerializedAgentDocument document) throws IOException {
+    if (document == serializedDocument) {
+      // the agent was not modified since the last call
+      return new ArrayList<ProcezzChange>();
+    }
+
+    final JsonNode newAgentDocument = mapper.readTree(document.getBytes());
+    final JsonNode newAgentAttributes = newAgentDocument.path(DATA).path(ATTRIBUTES);
+    final Map<String, JsonNode> newProcezzResources = indexProcezzResources(newAgentDocument);
+
+    final boolean snapshotRequired =
+        agentDocument == null || !agentAttributes.equals(newAgentAttributes);
+
+    final List<ProcezzChange> changes = snapshotRequired ? null
+        : computeChanges(procezzResources, newProcezzResources);
+
+    serializedDocument = document;
+    agentDocument = newAgentDocument;
+    agentAttributes = newAgentAttributes;
+    procezzResources = newProcezzResources;
+
+    return changes;
+  }
+
+  /**
+   * Returns the JSON API document of the agent as of the last call of
+   * {@link #update(SerializedAgentDocument)}, or null if there was no such call yet.
+   */
+  JsonNode getAgentDocument() {
+    return agentDocument;
+  }
+
+  private Map<String, JsonNode> indexProcezzResources(final JsonNode document) {
+    final Map<String, JsonNode> resources = new LinkedHashMap<String, JsonNode>();
+
+    for (final JsonNode resource : document.path(INCLUDED)) {
+      if (PROCEZZ_TYPE.equals(resource.path(TYPE).asText())) {
+        resources.put(resource.path(ID).asText(), resource);
+      }
+    }
+
+    return resources;
+  }
+
+  private List<ProcezzChange> computeChanges(final Map<String, JsonNode> oldResources,
+      final Map<String, JsonNode> newResources) {
+
+    final List<ProcezzChange> changes = new ArrayList<ProcezzChange>();
+
+    newResources.forEach((id, newResource) -> {
+      final JsonNode oldResource = oldResources.get(id);
+
+      if (oldResource == null) {
+        changes.add(new ProcezzChange(PROCEZZ_ADDED, createDocument(newResource)));
+        return;
+      }
+
+      final ObjectNode changedAttributes = diffAttributes(oldResource.path(ATTRIBUTES),
+          newResource.path(ATTRIBUTES));
+
+      if (changedAttributes.size() > 0) {
+        final ObjectNode resource = createResourceIdentifier(id);
+        resource.set(ATTRIBUTES, changedAttributes);
+        changes.add(new ProcezzChange(PROCEZZ_UPDATED, createDocument(resource)));
+      }
+    });
+
+    oldResources.keySet().forEach(id -> {
+      if (!newResources.containsKey(id)) {
+        changes.add(new ProcezzChange(PROCEZZ_REMOVED,
+            createDocument(createResourceIdentifier(id))));
+      }
+    });
+
+    return changes;
+  }
+
+  private ObjectNode diffAttributes(final JsonNode oldAttributes, final JsonNode newAttributes) {
+    final ObjectNode changedAttributes = mapper.createObjectNode();
+
+    final Iterator<Map.Entry<String, JsonNode>> newFields = newAttributes.fields();
+
+    while (newFields.hasNext()) {
+      final Map.Entry<String, JsonNode> field = newFields.next();
+
+      if (!field.getValue().equals(oldAttributes.get(field.getKey()))) {
+        changedAttributes.set(field.getKey(), field.getValue());
+      }
+    }
+
+    // attributes that are omitted by the serializer, e.g., null values
+    final Iterator<String> oldFieldNames = oldAttributes.fieldNames();
+
+    while (oldFieldNames.hasNext()) {
+      final String fieldName = oldFieldNames.next();
+
+      if (!newAttributes.has(fieldName)) {
+        changedAttributes.putNull(fieldName);
+      }
+    }
+
+    return changedAttributes;
+  }
+
+  private ObjectNode createResourceIdentifier(final String id) {
+    final ObjectNode resource = mapper.createObjectNode();
+    resource.put(TYPE, PROCEZZ_TYPE);
+    resource.put(ID, id);
+    return resource;
+  }
+
+  private ObjectNode createDocument(final JsonNode resource) {
+    final ObjectNode document = mapper.createObjectNode();
+    document.set(DATA, resource);
+    return document;
+  }
+
+  /**
+   * A single change of a procezz, i.e., the SSE event name and the JSON API document that is sent
+   * as event data.
+   */
+  static final class ProcezzChange {
+
+    private final String eventName;
+    private final JsonNode document;
+
+    ProcezzChange(final String eventName, final JsonNode document) {
+      this.eventName = eventName;
+      this.document = document;
+    }
+
+    String getEventName() {
+      return eventName;
+    }
+
+    JsonNode getDocument() {
+      return document;
+    }
+  }
+
+}
@@ -0,0 +1,459 @@
+package net.explorviz.discoveryagent.services;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.inject.Inject;
+import javax.ws.rs.ClientErrorException;
+import javax.ws.rs.core.Response;
+import net.explorviz.discoveryagent.procezz.InternalRepository;
+import net.explorviz.discoveryagent.procezz.ProcezzUtility;
+import net.explorviz.discoveryagent.procezz.management.ProcezzManagementType;
+import net.explorviz.discoveryagent.procezz.management.ProcezzManagementTypeFactory;
+import net.explorviz.discoveryagent.procezz.restart.ProcezzRestartJob;
+import net.explorviz.shared.config.annotations.Config;
+import net.explorviz.shared.discovery.exceptions.mapper.ResponseUtil;
+import net.explorviz.shared.discovery.exceptions.procezz.ProcezzManagementTypeNotFoundException;
+import net.explorviz.shared.discovery.exceptions.procezz.ProcezzMonitoringSettingsException;
+import net.explorviz.shared.discovery.exceptions.procezz.ProcezzNotFoundException;
+import net.explorviz.shared.discovery.exceptions.procezz.ProcezzStartException;
+import net.explorviz.shared.discovery.exceptions.procezz.ProcezzStopException;
+import net.explorviz.shared.discovery.model.Agent;
+import net.explorviz.shared.discovery.model.Procezz;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Restarts procezzes asynchronously. Multiple procezzes are restarted as a single job: they are
+ * killed at once, started concurrently and afterwards the OS is polled with exponential backoff
+ * only for the identification properties of the restarted procezzes, until all of them are found
+ * or the configured timeout is exceeded.
+ */
+public final class ProcezzRestartService {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ProcezzRestartService.class);
+
+  private static final int RESTART_THREAD_POOL_SIZE = 4;
+  private static final long COMPLETED_JOB_RETENTION_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+  @Config("restartPollInitialDelay")
+  private int pollInitialDelay;
+
+  @Config("restartPollMaxDelay")
+  private int pollMaxDelay;
+
+  @Config("restartTimeout")
+  private int restartTimeout;
+
+  private final ConcurrentMap<String, ProcezzRestartJob> restartJobs =
+      new ConcurrentHashMap<String, ProcezzRestartJob>();
+
+  private final ScheduledExecutorService restartExecutor =
+      Executors.newScheduledThreadPool(RESTART_THREAD_POOL_SIZE, runnable -> {
+        final Thread thread = new Thread(runnable, "procezz-restart");
+        thread.setDaemon(true);
+        return thread;
+      });
+
+  private final InternalRepository internalRepository;
+  private final ProcezzUtility procezzUtility;
+  private final ProcezzManagementTypeFactory procezzMngTypeFactory;
+  private final MonitoringFilesystemService filesystemService;
+
+  @Inject
+  public ProcezzRestartService(final InternalRepository internalRepository,
+      final ProcezzUtility procezzUtility,
+      final ProcezzManagementTypeFactory procezzMngTypeFactory,
+      final MonitoringFilesystemService filesystemService) {
+    this.internalRepository = internalRepository;
+    this.procezzUtility = procezzUtility;
+    this.procezzMngTypeFactory = procezzMngTypeFactory;
+    this.filesystemService = filesystemService;
+  }
+
+  /**
+   * Schedules the restart of the procezz with the passed ID and returns immediately. If the procezz
+   * is already restarting, the job of the running restart is returned instead.
+   *
+   * @return handle of the scheduled restart
+   */
+  public ProcezzRestartJob scheduleRestart(final String procezzId)
+      throws ProcezzNotFoundException, ProcezzManagementTypeNotFoundException,
+      ProcezzStartException, ProcezzMonitoringSettingsException {
+    return scheduleRestarts(Collections.singletonList(procezzId), null);
+  }
+
+  /**
+   * Schedules the restart of all procezzes with the passed IDs as a single job and returns
+   * immediately. The request is rejected as a whole if one of the procezzes is unknown, stopped or
+   * already restarting, no procezz is modified in this case.
+   *
+   * @param monitored if not null, the monitored flag of all procezzes is set accordingly before
+   *        the restart
+   * @return handle of the scheduled restart
+   * @throws ClientErrorException with status 409, if one of the procezzes is already restarting
+   */
+  public ProcezzRestartJob scheduleRestarts(final List<String> procezzIds,
+      final Boolean monitored) throws ProcezzNotFoundException,
+      ProcezzManagementTypeNotFoundException, ProcezzStartException,
+      ProcezzMonitoringSettingsException {
+
+    final Map<String, Procezz> procezzes = new LinkedHashMap<String, Procezz>();
+
+    for (final String procezzId : procezzIds) {
+      final Procezz procezz = internalRepository.findProcezzByID(procezzId);
+
+      // fail fast for unknown management types
+      procezzMngTypeFactory.getProcezzManagement(procezz.getProcezzManagementType());
+
+      if (procezz.isStopped()) {
+        throw new ProcezzStartException(ResponseUtil.ERROR_PROCEZZ_START_STOPPED, new Exception(),
+            procezz);
+      }
+
+      procezzes.put(procezz.getId(), procezz);
+    }
+
+    removeCompletedJobs();
+
+    final ProcezzRestartJob job = new ProcezzRestartJob(UUID.randomUUID().toString(),
+        new ArrayList<String>(procezzes.keySet()));
+
+    // registered before the procezzes are marked, therefore every
+    // restarting procezz belongs to a registered job
+    restartJobs.put(job.getId(), job);
+
+    final String restartingProcezzId;
+
+    try {
+      restartingProcezzId = markRestarting(procezzes.values(), monitored);
+    } catch (ProcezzStartException | ProcezzMonitoringSettingsException e) {
+      restartJobs.remove(job.getId());
+      throw e;
+    }
+
+    if (restartingProcezzId != null) {
+      restartJobs.remove(job.getId());
+
+      final ProcezzRestartJob runningJob = findRunningJob(restartingProcezzId);
+
+      if (runningJob != null && procezzes.size() == 1 && monitored == null) {
+        return runningJob;
+      }
+
+      throw new ClientErrorException(
+          "Procezz with ID " + restartingProcezzId + " is already restarting",
+          Response.Status.CONFLICT);
+    }
+
+    internalRepository.markAgentChanged();
+
+    restartExecutor.execute(() -> restartProcezzes(job, procezzes.values()));
+
+    return job;
+  }
+
+  /**
+   * Marks the passed procezzes as restarting and applies the monitored flag. Either all procezzes
+   * are marked or none of them, i.e., procezzes that were already marked are reset if a later
+   * procezz is stopped, already restarting or its monitoring config cannot be updated.
+   *
+   * @return null if all procezzes were marked, otherwise the ID of a procezz that is already
+   *         restarting
+   */
+  private String markRestarting(final Collection<Procezz> procezzes, final Boolean monitored)
+      throws ProcezzStartException, ProcezzMonitoringSettingsException {
+
+    // previous monitored flags of the marked procezzes, indexed by ID
+    final Map<String, Boolean> markedProcezzes = new LinkedHashMap<String, Boolean>();
+    boolean allMarked = false;
+
+    try {
+      for (final Procezz procezz : procezzes) {
+        synchronized (procezz) {
+          if (procezz.isRestart()) {
+            return procezz.getId();
+          }
+
+          // the procezz may have been stopped meanwhile
+          if (procezz.isStopped()) {
+            throw new ProcezzStartException(ResponseUtil.ERROR_PROCEZZ_START_STOPPED,
+                new Exception(), procezz);
+          }
+
+          final boolean previousMonitoredFlag = procezz.isMonitoredFlag();
+
+          if (monitored != null) {
+            updateMonitoredFlag(procezz, monitored);
+          }
+
+          // marks the restart as in progress, therefore the killed
+          // procezz is not treated as lost by the procezz list update
+          procezz.setRestart(true);
+          markedProcezzes.put(procezz.getId(), previousMonitoredFlag);
+        }
+      }
+
+      allMarked = true;
+      return null;
+    } finally {
+      if (!allMarked) {
+        for (final Procezz procezz : procezzes) {
+          final Boolean previousMonitoredFlag = markedProcezzes.get(procezz.getId());
+
+          if (previousMonitoredFlag != null) {
+            synchronized (procezz) {
+              procezz.setMonitoredFlag(previousMonitoredFlag);
+              procezz.setRestart(false);
+            }
+          }
+        }
+      }
+    }
+  }
+
+  private ProcezzRestartJob findRunningJob(final String procezzId) {
+    return restartJobs.values().stream()
+        .filter(job -> !job.hasCompleted() && job.getProcezzIds().contains(procezzId))
+        .findFirst().orElse(null);
+  }
+
+  public ProcezzRestartJob findRestartJobByID(final String jobId) {
+    return restartJobs.get(jobId);
+  }
+
+  private void updateMonitoredFlag(final Procezz procezz, final boolean monitored)
+      throws ProcezzMonitoringSettingsException {
+
+    if (monitored && !procezz.isMonitoredFlag()) {
+      final Agent agent = internalRepository.agentObject;
+      filesystemService.updateKiekerConfigForProcezz(procezz, agent.getIPPortOrName());
+    }
+
+    procezz.setMonitoredFlag(monitored);
+  }
+
+  private void restartProcezzes(final ProcezzRestartJob job,
+      final Collection<Procezz> procezzesToRestart) {
+
+    job.setState(ProcezzRestartJob.State.RUNNING);
+
+    final ReadinessCheck readinessCheck = new ReadinessCheck(job);
+    final List<CompletableFuture<Void>> starts = new ArrayList<CompletableFuture<Void>>();
+
+    // IDs of the procezzes whose start was submitted, failures are handled by the start itself
+    final Set<String> submittedIds = new HashSet<String>();
+
+    try {
+      submitStarts(job, procezzesToRestart, readinessCheck, starts, submittedIds);
+    } catch (final RuntimeException e) { // NOPMD
+      // otherwise, the job never completes and the procezzes stay marked as restarting
+      LOGGER.error("Error while restarting procezzes: ", e);
+
+      for (final Procezz procezz : procezzesToRestart) {
+        if (!submittedIds.contains(procezz.getId())
+            && !job.getFailedProcezzIds().contains(procezz.getId())) {
+          failRestart(job, procezz, e.toString());
+        }
+      }
+    }
+
+    // finishes the job if no procezz is pending
+    CompletableFuture.allOf(starts.toArray(new CompletableFuture<?>[0]))
+        .whenComplete((result, exception) -> readinessCheck.start());
+  }
+
+  private void submitStarts(final ProcezzRestartJob job,
+      final Collection<Procezz> procezzesToRestart, final ReadinessCheck readinessCheck,
+      final List<CompletableFuture<Void>> starts, final Set<String> submittedIds) {
+
+    // prepare execution commands and group procezzes for batched kills
+    final Map<ProcezzManagementType, List<Procezz>> procezzesByType =
+        new HashMap<ProcezzManagementType, List<Procezz>>();
+
+    for (final Procezz procezz : procezzesToRestart) {
+      try {
+        synchronized (procezz) {
+          procezzUtility.prepareRestart(procezz);
+        }
+
+        procezzesByType.computeIfAbsent(
+            procezzMngTypeFactory.getProcezzManagement(procezz.getProcezzManagementType()),
+            type -> new ArrayList<Procezz>()).add(procezz);
+
+      } catch (ProcezzManagementTypeNotFoundException | ProcezzStartException e) {
+        failRestart(job, procezz, e.getMessage());
+      } catch (final RuntimeException e) { // NOPMD
+        LOGGER.error("Error while preparing the restart of procezz {}: ", procezz.getId(), e);
+        failRestart(job, procezz, e.toString());
+      }
+    }
+
+    procezzesByType.forEach((managementType, procezzes) -> {
+      try {
+        managementType.killProcezzes(procezzes);
+      } catch (final ProcezzStopException e) {
+        procezzes.forEach(procezz -> failRestart(job, procezz, e.getMessage()));
+        return;
+      } catch (final RuntimeException e) { // NOPMD
+        LOGGER.error("Error while killing procezzes: ", e);
+        procezzes.forEach(procezz -> failRestart(job, procezz, e.toString()));
+        return;
+      }
+
+      for (final Procezz procezz : procezzes) {
+        submittedIds.add(procezz.getId());
+
+        starts.add(CompletableFuture.runAsync(() -> {
+          try {
+            managementType.startProcezz(procezz);
+            readinessCheck.add(procezz, managementType);
+          } catch (ProcezzStartException | ProcezzNotFoundException e) {
+            failRestart(job, procezz, e.getMessage());
+          } catch (final RuntimeException e) { // NOPMD
+            LOGGER.error("Error while starting procezz {}: ", procezz.getId(), e);
+            failRestart(job, procezz, e.toString());
+          }
+        }, restartExecutor));
+      }
+    });
+  }
+
+  private void completeRestart(final Procezz procezz, final Procezz restartedProcezz) {
+    synchronized (procezz) {
+      internalRepository.updateRestartedProcezz(procezz, restartedProcezz);
+    }
+
+    LOGGER.info("Procezz with ID {} restarted with PID {}", procezz.getId(), procezz.getPid());
+  }
+
+  private void failRestart(final ProcezzRestartJob job, final Procezz procezz,
+      final String errorMessage) {
+
+    synchronized (procezz) {
+      procezz.setRestart(false);
+      procezz.setErrorOccured(true);
+      procezz.setErrorMessage(errorMessage);
+    }
+
+    internalRepository.markAgentChanged();
+
+    LOGGER.warn("Restart of procezz with ID {} failed: {}", procezz.getId(), errorMessage);
+
+    job.addFailedProcezzId(procezz.getId());
+    job.setErrorMessage(errorMessage);
+  }
+
+  private void finishJob(final ProcezzRestartJob job) {
+    if (job.getFailedProcezzIds().isEmpty()) {
+      job.succeed();
+    } else {
+      job.fail(job.getErrorMessage());
+    }
+  }
+
+  private void removeCompletedJobs() {
+    final long oldestRetainedCompletion =
+        System.currentTimeMillis() - COMPLETED_JOB_RETENTION_MILLIS;
+
+    restartJobs.values().removeIf(
+        job -> job.hasCompleted() && job.getCompletionTime() < oldestRetainedCompletion);
+  }
+
+  /**
+   * Polls the OS for all started procezzes of a job, one lookup per management type and check. A
+   * restart is completed as soon as the restarted procezz is found.
+   */
+  private final class ReadinessCheck implements Runnable {
+
+    private final ProcezzRestartJob job;
+
+    private final Map<String, Procezz> pendingProcezzes =
+        new ConcurrentHashMap<String, Procezz>();
+    private final Map<String, ProcezzManagementType> managementTypes =
+        new ConcurrentHashMap<String, ProcezzManagementType>();
+
+    private long deadline;
+    private long delay = pollInitialDelay;
+
+    private ReadinessCheck(final ProcezzRestartJob job) {
+      this.job = job;
+    }
+
+    private void add(final Procezz procezz, final ProcezzManagementType managementType) {
+      managementTypes.put(procezz.getId(), managementType);
+      pendingProcezzes.put(procezz.getId(), procezz);
+    }
+
+    private void start() {
+      if (pendingProcezzes.isEmpty()) {
+        finishJob(job);
+        return;
+      }
+
+      deadline = System.currentTimeMillis() + restartTimeout;
+      restartExecutor.schedule(this, delay, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void run() {
+      try {
+        checkPendingProcezzes();
+      } catch (final RuntimeException e) { // NOPMD
+        LOGGER.error("Error while waiting for restarted procezzes: ", e);
+        pendingProcezzes.values().forEach(procezz -> failRestart(job, procezz, e.getMessage()));
+        pendingProcezzes.clear();
+      }
+
+      if (pendingProcezzes.isEmpty()) {
+        finishJob(job);
+        return;
+      }
+
+      if (System.currentTimeMillis() >= deadline) {
+        pendingProcezzes.values().forEach(procezz -> failRestart(job, procezz,
+            ResponseUtil.PROCEZZ_STARTED + ResponseUtil.ERROR_PROCEZZ_START_NOT_FOUND));
+        finishJob(job);
+        return;
+      }
+
+      delay = Math.min(delay * 2, pollMaxDelay);
+      restartExecutor.schedule(this, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void checkPendingProcezzes() {
+      final Map<ProcezzManagementType, List<String>> pendingIdsByType =
+          new HashMap<ProcezzManagementType, List<String>>();
+
+      pendingProcezzes.keySet().forEach(id -> pendingIdsByType
+          .computeIfAbsent(managementTypes.get(id), type -> new ArrayList<String>()).add(id));
+
+      pendingIdsByType.forEach((managementType, pendingIds) -> {
+        final Map<String, Procezz> foundProcezzes =
+            managementType.findProcezzesByIdentificationProperties(pendingIds);
+
+        for (final String id : pendingIds) {
+          final Procezz restartedProcezz = foundProcezzes.get(id);
+
+          if (restartedProcezz != null) {
+            completeRestart(pendingProcezzes.remove(id), restartedProcezz);
+          }
+        }
+      });
+    }
+  }
+
+}
@@ -0,0 +1,212 @@
+package net.explorviz.discoveryagent.services;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import javax.inject.Inject;
+import net.explorviz.discoveryagent.procezz.InternalRepository;
+import net.explorviz.discoveryagent.procezz.management.util.ProcFSAbstraction;
+import net.explorviz.shared.config.annotations.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Detects started and terminated processes by frequently comparing the PIDs in /proc and passes
+ * only the affected PIDs to the {@link InternalRepository}. Reading the PIDs is a single directory
+ * listing, therefore new procezzes are discovered almost instantly without the costs of a full
+ * scan. The full scan of {@link UpdateProcezzListService} is still executed, but less frequently.
+ *
+ * <p>
+ * A started PID is only examined after it was found by two consecutive checks. A forked process
+ * usually executes its final command (e.g., the JVM) right after the fork and short-lived
+ * processes are skipped entirely.
+ * </p>
+ *
+ * <p>
+ * A wrapper (e.g. a start script) may execute the JVM later in the same PID. Therefore, the
+ * command line and the start time of an examined PID are compared for the configured period and
+ * the PID is examined again, if one of them changed. Later changes are found by the full scan.
+ * </p>
+ */
+public final class ProcezzWatchService {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ProcezzWatchService.class);
+
+  @Config("procezzWatchRate")
+  private int watchRate;
+
+  @Config("procezzWatchRecheckPeriod")
+  private int recheckPeriod;
+
+  private final ScheduledExecutorService watchExecutor =
+      Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "procezz-watch");
+        thread.setDaemon(true);
+        return thread;
+      });
+
+  private final InternalRepository internalRepository;
+
+  private ScheduledFuture<?> watchTask;
+
+  // only accessed by the watch thread
+  private Set<Long> previousPids;
+  private Set<Long> stablePids;
+  private final Map<Long, ExaminedPid> recentlyExaminedPids = new HashMap<Long, ExaminedPid>();
+
+  @Inject
+  public ProcezzWatchService(final InternalRepository internalRepository) {
+    this.internalRepository = internalRepository;
+  }
+
+  /**
+   * Starts watching the PIDs, if the /proc filesystem is available and the watch is enabled.
+   *
+   * @return true if the PIDs are watched
+   */
+  public synchronized boolean start() {
+    if (watchTask != null) {
+      return true;
+    }
+
+    if (watchRate <= 0 || !ProcFSAbstraction.isAvailable()) {
+      LOGGER.info("Watching for started procezzes is disabled, relying on full procezz scans");
+      return false;
+    }
+
+    watchTask = watchExecutor.scheduleWithFixedDelay(this::checkPids, 0, watchRate,
+        TimeUnit.MILLISECONDS);
+
+    LOGGER.info("Watching for started and terminated procezzes every {} ms", watchRate);
+
+    return true;
+  }
+
+  public synchronized void stop() {
+    if (watchTask == null) {
+      return;
+    }
+
+    watchTask.cancel(false);
+    watchTask = null;
+
+    // the next start begins with a new baseline
+    watchExecutor.execute(() -> {
+      previousPids = null;
+      stablePids = null;
+      recentlyExaminedPids.clear();
+    });
+  }
+
+  private void checkPids() {
+    try {
+      final Set<Long> currentPids = ProcFSAbstraction.findPIDs();
+
+      if (previousPids == null) {
+        // baseline, already running procezzes are found by the full scan
+        previousPids = currentPids;
+        stablePids = currentPids;
+        return;
+      }
+
+      final Set<Long> newStablePids = new HashSet<Long>(currentPids);
+      newStablePids.retainAll(previousPids);
+
+      final Set<Long> startedPids = new HashSet<Long>(newStablePids);
+      startedPids.removeAll(stablePids);
+
+      final Set<Long> terminatedPids = new HashSet<Long>(previousPids);
+      terminatedPids.removeAll(currentPids);
+
+      previousPids = currentPids;
+      stablePids = newStablePids;
+
+      // PIDs that executed a new command since they were examined are examined again
+      startedPids.addAll(findChangedPids(currentPids));
+      startedPids.forEach(this::rememberExaminedPid);
+
+      if (!startedPids.isEmpty() || !terminatedPids.isEmpty()) {
+        internalRepository.updateInternalProcezzListForPIDs(currentPids, startedPids,
+            terminatedPids);
+      }
+    } catch (final IOException | RuntimeException e) {
+      // an exception would cancel all further checks
+      LOGGER.warn("Error when checking for started procezzes: {}", e.toString());
+    }
+  }
+
+  /**
+   * Returns the recently examined PIDs whose command line or start time (i.e., a reused PID)
+   * changed. PIDs that terminated or were examined before the recheck period are forgotten.
+   */
+  private Set<Long> findChangedPids(final Set<Long> currentPids) {
+    final Set<Long> changedPids = new HashSet<Long>();
+    final long oldestRecheckedExamination = System.currentTimeMillis() - recheckPeriod;
+
+    final Iterator<Map.Entry<Long, ExaminedPid>> examinedPids =
+        recentlyExaminedPids.entrySet().iterator();
+
+    while (examinedPids.hasNext()) {
+      final Map.Entry<Long, ExaminedPid> examinedPid = examinedPids.next();
+      final long pid = examinedPid.getKey();
+
+      if (!currentPids.contains(pid)
+          || examinedPid.getValue().examinationTime < oldestRecheckedExamination) {
+        examinedPids.remove();
+        continue;
+      }
+
+      try {
+        if (examinedPid.getValue().startTime != ProcFSAbstraction.findStartTimeForPID(pid)
+            || !examinedPid.getValue().commandLine
+                .equals(ProcFSAbstraction.findCommandLineForPID(pid))) {
+          changedPids.add(pid);
+        }
+      } catch (final IOException e) {
+        // terminated meanwhile
+        examinedPids.remove();
+      }
+    }
+
+    return changedPids;
+  }
+
+  private void rememberExaminedPid(final Long pid) {
+    if (recheckPeriod <= 0) {
+      return;
+    }
+
+    try {
+      recentlyExaminedPids.put(pid, new ExaminedPid(ProcFSAbstraction.findStartTimeForPID(pid),
+          ProcFSAbstraction.findCommandLineForPID(pid), System.currentTimeMillis()));
+    } catch (final IOException e) {
+      // terminated meanwhile
+      recentlyExaminedPids.remove(pid);
+    }
+  }
+
+  /**
+   * Start time and command line of a PID when it was examined.
+   */
+  private static final class ExaminedPid {
+
+    private final long startTime;
+    private final String commandLine;
+    private final long examinationTime;
+
+    ExaminedPid(final long startTime, final String commandLine, final long examinationTime) {
+      this.startTime = startTime;
+      this.commandLine = commandLine;
+      this.examinationTime = examinationTime;
+    }
+
+  }
+
+}
@@ -7,7 +7,6 @@ import java.util.TimerTask;
 import java.util.concurrent.atomic.AtomicBoolean;
 import javax.inject.Inject;
 import net.explorviz.discoveryagent.procezz.InternalRepository;
-import net.explorviz.discoveryagent.procezz.ProcezzUtility;
 import net.explorviz.discoveryagent.server.provider.JSONAPIProvider;
 import net.explorviz.discoveryagent.util.ResourceConverterFactory;
 import net.explorviz.shared.config.annotations.Config;
@@ -27,8 +26,14 @@ public final class RegistrationService {
   @Config("registrationTimerRate")
   private int registrationTimerRate;
 
-  @Config("updateTimerRate")
-  private int updateTimerRate;
+  @Config("updateTimerMinRate")
+  private int updateTimerMinRate;
+
+  @Config("updateTimerMaxRate")
+  private int updateTimerMaxRate;
+
+  @Config("procezzWatchFullScanRate")
+  private int procezzWatchFullScanRate;
 
   @Config("server.ip")
   private String ip;
@@ -53,7 +58,7 @@ public final class RegistrationService {
   private static boolean isHttpRequestSetupDone;
 
   private static Timer registrationTimer;
-  private static Timer updateTimer;
+  private static AdaptiveScanScheduler updateScheduler;
 
   private static String explorVizUrl;
   private static ResourceConverter converter;
@@ -62,13 +67,13 @@ public final class RegistrationService {
   private static Agent agent;
 
   private final InternalRepository internalRepository;
-  private final ProcezzUtility procezzUtility;
+  private final ProcezzWatchService procezzWatchService;
 
   @Inject
   public RegistrationService(final InternalRepository internalRepository,
-      final ProcezzUtility procezzUtility) {
+      final ProcezzWatchService procezzWatchService) {
     this.internalRepository = internalRepository;
-    this.procezzUtility = procezzUtility;
+    this.procezzWatchService = procezzWatchService;
   }
 
   public boolean isRegistrationDone() {
@@ -92,7 +97,10 @@ public final class RegistrationService {
         + backendAgentResourcePath + "/";
 
     agent = new Agent(ip, port);
-    agent.setId("placeholder");
+
+    // the previous ID allows the backend to recognize the agent after a restart
+    final String restoredAgentId = internalRepository.getRestoredAgentId();
+    agent.setId(restoredAgentId == null ? "placeholder" : restoredAgentId);
 
     isHttpRequestSetupDone = true;
 
@@ -122,28 +130,20 @@ public final class RegistrationService {
 
       internalRepository.agentObject = agent;
 
-      // get new Ids for potential already discovered procezzes
-      try {
-        procezzUtility.createUniqureIdsForProcezzes(internalRepository.agentObject.getId(),
-            internalRepository.getProcezzList());
-        registrationDone.set(true);
-        startUpdateService();
-      } catch (ProcezzGenericException | GenericNoConnectionException e) {
-        LOGGER.error(
-            "Could not obtain unique IDs for procezzes. New procezzes WILL NOT be added to internal procezzlist Error: {}",
-            e.getMessage());
-        // Error occured, try to re-register again
-        register();
+      // procezz IDs do not depend on the agent ID (see ProcezzIdGenerator), known procezzes
+      // therefore keep their IDs
+      internalRepository.markAgentChanged();
 
-      }
+      registrationDone.set(true);
+      startUpdateService();
     }
   }
 
   public void register() {
 
-    if (updateTimer != null) {
-      updateTimer.cancel();
-      updateTimer.purge();
+    if (updateScheduler != null) {
+      updateScheduler.stop();
+      procezzWatchService.stop();
       LOGGER.info("Stopping UpdateService, because agent needs to re-register");
     }
 
@@ -174,13 +174,19 @@ public final class RegistrationService {
 
     LOGGER.info("Starting UpdateService");
 
-    updateTimer = new Timer(true);
+    // started and terminated procezzes are detected by the watch service, the full scan is a
+    // safety net for missed changes, which backs off to a longer maximum interval
+    final boolean watchingProcezzes = procezzWatchService.start();
+
+    if (updateScheduler == null) {
+      final UpdateProcezzListService updateService =
+          new UpdateProcezzListService(this, internalRepository);
 
-    final UpdateProcezzListService updateService =
-        new UpdateProcezzListService(this, internalRepository);
+      updateScheduler = new AdaptiveScanScheduler(updateService::updateProcezzList,
+          updateTimerMinRate, watchingProcezzes ? procezzWatchFullScanRate : updateTimerMaxRate);
+    }
 
-    // refresh internal ProcessList every minute
-    updateTimer.scheduleAtFixedRate(updateService, 0, updateTimerRate);
+    updateScheduler.start();
   }
 
 }
@@ -1,10 +1,9 @@
 package net.explorviz.discoveryagent.services;
 
-import java.util.TimerTask;
 import javax.inject.Inject;
 import net.explorviz.discoveryagent.procezz.InternalRepository;
 
-public class UpdateProcezzListService extends TimerTask {
+public class UpdateProcezzListService {
 
   // private static final Logger LOGGER =
   // LoggerFactory.getLogger(UpdateProcezzListService.class);
@@ -19,14 +18,20 @@ public class UpdateProcezzListService extends TimerTask {
     this.internalRepository = internalRepository;
   }
 
-  @Override
-  public void run() {
+  /**
+   * Updates the internal procezz list with the current OS procezzes.
+   *
+   * @return true if procezzes were added, stopped or restarted
+   */
+  public boolean updateProcezzList() {
 
     if (registrationService.isRegistrationDone()) {
-      internalRepository.updateInternalProcezzList();
+      final boolean changed = internalRepository.updateInternalProcezzList();
       internalRepository.agentObject.setProcezzes(internalRepository.getProcezzList());
+      return changed;
     }
 
+    return false;
   }
 
 }
@@ -0,0 +1,89 @@
+package net.explorviz.discoveryagent.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.Set;
+
+public final class AtomicFiles {
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private AtomicFiles() {
+    // no need to instantiate
+  }
+
+  /**
+   * Writes the passed content to a temporary file next to the target and renames it afterwards,
+   * i.e., concurrent readers (e.g. a starting JVM) see either the previous or the new content.
+   */
+  public static void write(final Path target, final byte[] content) throws IOException {
+    write(target, new ByteArrayInputStream(content));
+  }
+
+  /**
+   * Writes the remaining content of the passed stream atomically, see {@link #write(Path, byte[])}.
+   * The stream is not closed.
+   */
+  public static void write(final Path target, final InputStream content) throws IOException {
+    write(target, content, null);
+  }
+
+  /**
+   * Writes the passed content atomically, see {@link #write(Path, byte[])}, and sets the passed
+   * permissions on file systems that support POSIX permissions. Otherwise, the file is only
+   * accessible by its owner.
+   */
+  public static void write(final Path target, final byte[] content,
+      final Set<PosixFilePermission> permissions) throws IOException {
+    write(target, new ByteArrayInputStream(content), permissions);
+  }
+
+  /**
+   * Writes the remaining content of the passed stream atomically and sets the passed permissions,
+   * see {@link #write(Path, byte[], Set)}. The stream is not closed.
+   *
+   * @param permissions permissions of the written file or null for owner-only access
+   */
+  public static void write(final Path target, final InputStream content,
+      final Set<PosixFilePermission> permissions) throws IOException {
+    final Path tempPath = Files.createTempFile(target.toAbsolutePath().getParent(),
+        target.getFileName() + ".", ".tmp");
+
+    try {
+      final PosixFileAttributeView attributeView =
+          Files.getFileAttributeView(tempPath, PosixFileAttributeView.class);
+
+      // temporary files are created with owner-only access
+      if (permissions != null && attributeView != null) {
+        attributeView.setPermissions(permissions);
+      }
+
+      try (FileOutputStream out = new FileOutputStream(tempPath.toFile())) {
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        int read;
+        while ((read = content.read(buffer)) != -1) {
+          out.write(buffer, 0, read);
+        }
+        out.getChannel().force(false);
+      }
+
+      try {
+        Files.move(tempPath, target, StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+      } catch (final AtomicMoveNotSupportedException e) {
+        Files.move(tempPath, target, StandardCopyOption.REPLACE_EXISTING);
+      }
+    } finally {
+      Files.deleteIfExists(tempPath);
+    }
+  }
+
+}
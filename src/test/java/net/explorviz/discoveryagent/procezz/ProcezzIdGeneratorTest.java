@@ -0,0 +1,95 @@
+package net.explorviz.discoveryagent.procezz;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+import net.explorviz.shared.discovery.model.Procezz;
+import org.junit.Test;
+
+public class ProcezzIdGeneratorTest {
+
+  private static final String AGENT_KEY = "10.0.0.1:8084";
+
+  private static Procezz createProcezz(final String execCmd, final String workingDirectory) {
+    final Procezz procezz = new Procezz(1, execCmd);
+    procezz.setWorkingDirectory(workingDirectory);
+    return procezz;
+  }
+
+  @Test
+  public void derivesStableIds() {
+    final Procezz procezz = createProcezz("java -jar app.jar", "/opt/app");
+    final Procezz restartedProcezz = createProcezz("java -jar app.jar", "/opt/app");
+    restartedProcezz.setPid(2);
+
+    final String id = ProcezzIdGenerator.deriveId(AGENT_KEY, procezz, null, i -> false);
+
+    assertTrue(id.matches("[0-9a-f]{12}"));
+    assertEquals(id, ProcezzIdGenerator.deriveId(AGENT_KEY, restartedProcezz, null, i -> false));
+  }
+
+  @Test
+  public void derivesIdsFromTheIdentity() {
+    final String id = ProcezzIdGenerator.deriveId(AGENT_KEY,
+        createProcezz("java -jar app.jar", "/opt/app"), null, i -> false);
+
+    assertNotEquals(id, ProcezzIdGenerator.deriveId("10.0.0.2:8084",
+        createProcezz("java -jar app.jar", "/opt/app"), null, i -> false));
+    assertNotEquals(id, ProcezzIdGenerator.deriveId(AGENT_KEY,
+        createProcezz("java -jar other.jar", "/opt/app"), null, i -> false));
+    assertNotEquals(id, ProcezzIdGenerator.deriveId(AGENT_KEY,
+        createProcezz("java -jar app.jar", "/opt/other"), null, i -> false));
+  }
+
+  @Test
+  public void suffixesIdsOfIdenticalProcezzesInOrder() {
+    final Set<String> usedIds = new HashSet<String>();
+
+    final String firstId = ProcezzIdGenerator.deriveId(AGENT_KEY,
+        createProcezz("java -jar worker.jar", "/opt/worker"), null, usedIds::contains);
+    usedIds.add(firstId);
+
+    final String secondId = ProcezzIdGenerator.deriveId(AGENT_KEY,
+        createProcezz("java -jar worker.jar", "/opt/worker"), null, usedIds::contains);
+    usedIds.add(secondId);
+
+    final String thirdId = ProcezzIdGenerator.deriveId(AGENT_KEY,
+        createProcezz("java -jar worker.jar", "/opt/worker"), null, usedIds::contains);
+
+    assertEquals(firstId + "-2", secondId);
+    assertEquals(firstId + "-3", thirdId);
+  }
+
+  @Test
+  public void reusesFreedSuffixes() {
+    final String baseId = ProcezzIdGenerator.deriveId(AGENT_KEY,
+        createProcezz("java -jar worker.jar", "/opt/worker"), null, i -> false);
+
+    final Set<String> usedIds = new HashSet<String>();
+    usedIds.add(baseId);
+    usedIds.add(baseId + "-3");
+
+    assertEquals(baseId + "-2", ProcezzIdGenerator.deriveId(AGENT_KEY,
+        createProcezz("java -jar worker.jar", "/opt/worker"), null, usedIds::contains));
+  }
+
+  @Test
+  public void keepsTheIdentificationProperty() {
+    final Procezz procezz = createProcezz("java -Dexplorviz.id=42 -jar app.jar", "/opt/app");
+
+    assertEquals("42", ProcezzIdGenerator.deriveId(AGENT_KEY, procezz, "42", i -> false));
+  }
+
+  @Test
+  public void derivesIdIfTheIdentificationPropertyIsInUse() {
+    final Procezz procezz = createProcezz("java -Dexplorviz.id=42 -jar app.jar", "/opt/app");
+
+    final String id = ProcezzIdGenerator.deriveId(AGENT_KEY, procezz, "42", "42"::equals);
+
+    assertEquals(ProcezzIdGenerator.deriveId(AGENT_KEY, procezz, null, i -> false), id);
+  }
+
+}
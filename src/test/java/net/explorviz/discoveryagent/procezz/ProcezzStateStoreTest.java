@@ -0,0 +1,198 @@
+package net.explorviz.discoveryagent.procezz;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import net.explorviz.shared.discovery.model.Procezz;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ProcezzStateStoreTest {
+
+  private static final String SNAPSHOT_FILENAME = "procezz-state.json";
+  private static final String JOURNAL_FILENAME = "procezz-state.journal";
+
+  private Path stateDirectory;
+
+  @Before
+  public void createStateDirectory() throws IOException {
+    stateDirectory = Files.createTempDirectory("procezz-state-test");
+  }
+
+  @After
+  public void deleteStateDirectory() throws IOException {
+    try (Stream<Path> paths = Files.walk(stateDirectory)) {
+      paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+    }
+  }
+
+  @Test
+  public void replaysTheJournalOnTheSnapshot() throws IOException {
+    writeSnapshot("{\"agentId\":\"agent-1\",\"procezzes\":["
+        + "{\"id\":\"a\",\"pid\":11,\"name\":\"shop\","
+        + "\"osExecutionCommand\":\"java -jar shop.jar\"},"
+        + "{\"id\":\"b\",\"pid\":12,\"osExecutionCommand\":\"java -jar cart.jar\"}]}");
+    writeJournal("{\"procezz\":{\"id\":\"a\",\"pid\":21,\"name\":\"shop\","
+        + "\"osExecutionCommand\":\"java -jar shop.jar\",\"monitoredFlag\":true}}",
+        "{\"removed\":\"b\"}",
+        "{\"procezz\":{\"id\":\"c\",\"pid\":13,\"osExecutionCommand\":\"java -jar mail.jar\","
+            + "\"workingDirectory\":\"/opt/mail\",\"stopped\":true}}",
+        "{\"agentId\":\"agent-2\"}");
+
+    final ProcezzStateStore.State state = createStore().restore();
+
+    assertEquals("agent-2", state.getAgentId());
+    assertEquals(Arrays.asList("a", "c"), getIds(state.getProcezzes()));
+
+    final Procezz shop = state.getProcezzes().get(0);
+    assertEquals(21, shop.getPid());
+    assertEquals("shop", shop.getName());
+    assertTrue(shop.isMonitoredFlag());
+
+    final Procezz mail = state.getProcezzes().get(1);
+    assertEquals("java -jar mail.jar", mail.getOsExecutionCommand());
+    assertEquals("/opt/mail", mail.getWorkingDirectory());
+    assertTrue(mail.isStopped());
+    assertNull(mail.getName());
+  }
+
+  @Test
+  public void replaysTheJournalWithoutSnapshot() throws IOException {
+    writeJournal("{\"procezz\":{\"id\":\"a\",\"pid\":11}}",
+        "{\"procezz\":{\"id\":\"b\",\"pid\":12}}", "{\"removed\":\"a\"}");
+
+    final ProcezzStateStore.State state = createStore().restore();
+
+    assertNull(state.getAgentId());
+    assertEquals(Arrays.asList("b"), getIds(state.getProcezzes()));
+  }
+
+  @Test
+  public void skipsAPartiallyWrittenLastEntry() throws IOException {
+    writeJournal("{\"procezz\":{\"id\":\"a\",\"pid\":11}}", "{\"procezz\":{\"id\":\"b\",\"pi");
+
+    final ProcezzStateStore.State state = createStore().restore();
+
+    assertEquals(Arrays.asList("a"), getIds(state.getProcezzes()));
+  }
+
+  @Test
+  public void compactsTheJournalOnRestore() throws IOException {
+    writeSnapshot("{\"agentId\":\"agent-1\",\"procezzes\":[{\"id\":\"a\",\"pid\":11}]}");
+    writeJournal("{\"procezz\":{\"id\":\"b\",\"pid\":12}}", "{\"procezz\":{\"id\":\"c\",\"p");
+
+    createStore().restore();
+
+    assertEquals(0, Files.size(stateDirectory.resolve(JOURNAL_FILENAME)));
+
+    // replaying is idempotent, restoring the compacted state yields the same procezzes
+    final ProcezzStateStore.State state = createStore().restore();
+
+    assertEquals("agent-1", state.getAgentId());
+    assertEquals(Arrays.asList("a", "b"), getIds(state.getProcezzes()));
+  }
+
+  @Test
+  public void replaysPersistedChanges() throws IOException, InterruptedException {
+    final ProcezzStateStore store = createStore();
+    assertTrue(store.restore().getProcezzes().isEmpty());
+
+    final Procezz procezz = new Procezz(11, "java -jar shop.jar");
+    procezz.setId("a");
+    procezz.setWorkingDirectory("/opt/shop");
+    procezz.setHidden(true);
+
+    final List<Procezz> procezzList = new ArrayList<Procezz>();
+    procezzList.add(procezz);
+
+    store.requestPersist("agent-1", procezzList);
+    awaitJournalEntries(2);
+
+    final ProcezzStateStore.State state = createStore().restore();
+
+    assertEquals("agent-1", state.getAgentId());
+    assertEquals(1, state.getProcezzes().size());
+
+    final Procezz restoredProcezz = state.getProcezzes().get(0);
+    assertEquals("a", restoredProcezz.getId());
+    assertEquals(11, restoredProcezz.getPid());
+    assertEquals("/opt/shop", restoredProcezz.getWorkingDirectory());
+    assertTrue(restoredProcezz.isHidden());
+    assertFalse(restoredProcezz.isStopped());
+  }
+
+  @Test
+  public void isDisabledWithoutStateDirectory() {
+    final ProcezzStateStore store = new ProcezzStateStore();
+
+    assertFalse(store.isEnabled());
+    assertNull(store.restore());
+  }
+
+  @Test
+  public void resolvesRelativeStateDirectoriesAgainstTheHomeDirectory() {
+    final Path homeDirectory = Paths.get(System.getProperty("user.home")).toAbsolutePath();
+
+    assertEquals(homeDirectory.resolve(".explorviz").resolve("state"),
+        ProcezzStateStore.resolveStateDirectory(" .explorviz/state "));
+    assertEquals(stateDirectory.toAbsolutePath(),
+        ProcezzStateStore.resolveStateDirectory(stateDirectory.toString()));
+  }
+
+  private ProcezzStateStore createStore() {
+    final ProcezzStateStore store = new ProcezzStateStore();
+
+    // injected by the config injection in production
+    try {
+      final Field field = ProcezzStateStore.class.getDeclaredField("stateDirectory");
+      field.setAccessible(true);
+      field.set(store, stateDirectory.toString());
+    } catch (final ReflectiveOperationException e) {
+      throw new IllegalStateException(e);
+    }
+
+    return store;
+  }
+
+  private void writeSnapshot(final String content) throws IOException {
+    Files.write(stateDirectory.resolve(SNAPSHOT_FILENAME),
+        content.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private void writeJournal(final String... entries) throws IOException {
+    Files.write(stateDirectory.resolve(JOURNAL_FILENAME),
+        String.join("\n", entries).getBytes(StandardCharsets.UTF_8));
+  }
+
+  private void awaitJournalEntries(final int entries) throws IOException, InterruptedException {
+    final Path journalPath = stateDirectory.resolve(JOURNAL_FILENAME);
+
+    // entries are appended by the persist thread
+    for (int i = 0; i < 100; i++) {
+      if (Files.readAllLines(journalPath, StandardCharsets.UTF_8).size() >= entries) {
+        return;
+      }
+      Thread.sleep(50);
+    }
+  }
+
+  private static List<String> getIds(final List<Procezz> procezzes) {
+    return procezzes.stream().map(Procezz::getId).collect(Collectors.toList());
+  }
+
+}
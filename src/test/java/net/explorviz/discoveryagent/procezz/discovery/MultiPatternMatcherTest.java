@@ -0,0 +1,80 @@
+package net.explorviz.discoveryagent.procezz.discovery;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import org.junit.Test;
+
+public class MultiPatternMatcherTest {
+
+  private static BitSet bits(final int... patternIds) {
+    final BitSet bits = new BitSet();
+    for (final int patternId : patternIds) {
+      bits.set(patternId);
+    }
+    return bits;
+  }
+
+  @Test
+  public void findsAllOccurringPatterns() {
+    final MultiPatternMatcher matcher =
+        new MultiPatternMatcher(Arrays.asList("tomcat", "kieker", "catalina"));
+
+    assertEquals(bits(0, 2), matcher.findMatches(
+        "java -cp bootstrap.jar org.apache.catalina.startup.Bootstrap -Dtomcat.home=/opt"));
+  }
+
+  @Test
+  public void matchesCaseInsensitive() {
+    final MultiPatternMatcher matcher = new MultiPatternMatcher(Arrays.asList("Catalina"));
+
+    assertEquals(bits(0), matcher.findMatches("ORG.APACHE.CATALINA.STARTUP.BOOTSTRAP"));
+  }
+
+  @Test
+  public void findsOverlappingAndNestedPatterns() {
+    final MultiPatternMatcher matcher =
+        new MultiPatternMatcher(Arrays.asList("he", "she", "his", "hers"));
+
+    // classic Aho-Corasick example, "he" is a suffix of "she" and a prefix of "hers"
+    assertEquals(bits(0, 1, 3), matcher.findMatches("ushers"));
+    assertEquals(bits(2), matcher.findMatches("ahis"));
+  }
+
+  @Test
+  public void followsFailureTransitions() {
+    final MultiPatternMatcher matcher = new MultiPatternMatcher(Arrays.asList("aab", "ab"));
+
+    // the mismatch after "aa" must continue with the suffix "a" instead of the root
+    assertEquals(bits(0, 1), matcher.findMatches("aaab"));
+  }
+
+  @Test
+  public void findsNothingInUnrelatedText() {
+    final MultiPatternMatcher matcher = new MultiPatternMatcher(Arrays.asList("jetty", "wildfly"));
+
+    assertTrue(matcher.findMatches("java -jar application.jar").isEmpty());
+    assertTrue(matcher.findMatches("").isEmpty());
+  }
+
+  @Test
+  public void identifiesPatternsByIndex() {
+    final MultiPatternMatcher matcher =
+        new MultiPatternMatcher(Arrays.asList("spring", "boot", "spring"));
+
+    // duplicate patterns are matched under both IDs
+    assertEquals(bits(0, 1, 2), matcher.findMatches("spring-boot"));
+  }
+
+  @Test
+  public void matchesNothingWithoutPatterns() {
+    final MultiPatternMatcher matcher =
+        new MultiPatternMatcher(Collections.<String>emptyList());
+
+    assertTrue(matcher.findMatches("java -jar application.jar").isEmpty());
+  }
+
+}
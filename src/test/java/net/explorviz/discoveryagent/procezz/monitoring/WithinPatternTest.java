@@ -0,0 +1,93 @@
+package net.explorviz.discoveryagent.procezz.monitoring;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+public class WithinPatternTest {
+
+  @Test
+  public void matchesSubpackages() {
+    final WithinPattern pattern = WithinPattern.compile("org.slf4j..*");
+
+    assertTrue(pattern.matches("org.slf4j.Logger"));
+    assertTrue(pattern.matches("org.slf4j.impl.StaticLoggerBinder"));
+    assertFalse(pattern.matches("org.slf4jx.Logger"));
+    assertFalse(pattern.matches("com.org.slf4j.Logger"));
+  }
+
+  @Test
+  public void matchesWildcardsWithinASinglePackage() {
+    final WithinPattern pattern = WithinPattern.compile("com.example.*Service");
+
+    assertTrue(pattern.matches("com.example.OrderService"));
+    assertTrue(pattern.matches("com.example.Service"));
+    assertFalse(pattern.matches("com.example.impl.OrderService"));
+    assertFalse(pattern.matches("com.example.OrderServiceImpl"));
+  }
+
+  @Test
+  public void matchesNestedClasses() {
+    final WithinPattern pattern = WithinPattern.compile("com.example.Outer$*");
+
+    assertTrue(pattern.matches("com.example.Outer$Inner"));
+    assertTrue(pattern.matches("com.example.Outer$1"));
+    assertFalse(pattern.matches("com.example.Outer"));
+  }
+
+  @Test
+  public void matchesAllTypesWithASingleWildcard() {
+    final WithinPattern pattern = WithinPattern.compile("*");
+
+    assertTrue(pattern.matches("Main"));
+    assertTrue(pattern.matches("com.example.Main"));
+  }
+
+  @Test
+  public void approximatesSubtypePatternsByTheType() {
+    final WithinPattern pattern = WithinPattern.compile("com.example.Repository+");
+
+    assertTrue(pattern.matches("com.example.Repository"));
+    assertFalse(pattern.matches("com.example.OrderRepository"));
+  }
+
+  @Test
+  public void combinesPatternsWithBooleanOperators() {
+    final WithinPattern pattern =
+        WithinPattern.compile("com.example..* && !(com.example..*Test || com.example.gen..*)");
+
+    assertTrue(pattern.matches("com.example.Main"));
+    assertTrue(pattern.matches("com.example.shop.Cart"));
+    assertFalse(pattern.matches("com.example.shop.CartTest"));
+    assertFalse(pattern.matches("com.example.gen.Stub"));
+    assertFalse(pattern.matches("org.example.Main"));
+  }
+
+  @Test
+  public void bindsAndStrongerThanOr() {
+    final WithinPattern pattern = WithinPattern.compile("a.* || b.* && !b.Hidden");
+
+    assertTrue(pattern.matches("a.Hidden"));
+    assertTrue(pattern.matches("b.Visible"));
+    assertFalse(pattern.matches("b.Hidden"));
+  }
+
+  @Test
+  public void rejectsMalformedPatterns() {
+    final String[] malformedPatterns = {"", "   ", "com..", "com.(example", "(com.example..*",
+        "com.example..* &&", "&& com.example..*", "com.example..*)", "com.example.@Entity",
+        "com.example..* | org.example..*", "!"};
+
+    for (final String malformedPattern : malformedPatterns) {
+      try {
+        WithinPattern.compile(malformedPattern);
+        fail("Accepted malformed within pattern '" + malformedPattern + "'");
+      } catch (final IllegalArgumentException e) {
+        // expected
+      }
+    }
+  }
+
+}
@@ -0,0 +1,120 @@
+package net.explorviz.discoveryagent.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Scanner;
+import org.junit.Test;
+
+public class KiekerPropertiesTest {
+
+  private static final String NL = System.lineSeparator();
+
+  private static final String CONTENT = "## Name of the application" + NL
+      + "kieker.monitoring.applicationName=" + NL + NL
+      + "! legacy comment" + NL
+      + "kieker.monitoring.hostname = localhost" + NL
+      + "kieker.monitoring.writer.tcp.SingleSocketTcpWriter.hostname=localhost" + NL;
+
+  @Test
+  public void rendersUnchangedContentAsRead() {
+    assertEquals(CONTENT, KiekerProperties.parse(CONTENT).render());
+  }
+
+  @Test
+  public void rendersTheDefaultConfigAsRead() throws IOException {
+    final String content = readResource("/kieker/kieker.monitoring.properties");
+
+    // line separators are normalized
+    final String normalizedContent = content.replaceAll("\\r?\\n", NL);
+
+    assertEquals(normalizedContent, KiekerProperties.parse(content).render());
+  }
+
+  @Test
+  public void keepsTrailingBlankLines() {
+    final String content = CONTENT + NL + NL;
+
+    assertEquals(content, KiekerProperties.parse(content).render());
+  }
+
+  @Test
+  public void readsProperties() {
+    final KiekerProperties properties = KiekerProperties.parse(CONTENT);
+
+    assertEquals("", properties.getApplicationName());
+    assertEquals("localhost", properties.getHostname());
+    assertEquals("localhost", properties.getTcpWriterHostname());
+    assertNull(properties.get("kieker.monitoring.enabled"));
+    assertNull(properties.get("! legacy comment"));
+  }
+
+  @Test
+  public void replacesPropertiesInPlace() {
+    final KiekerProperties properties = KiekerProperties.parse(CONTENT)
+        .withApplicationName("shop").withTcpWriterHostname("10.0.0.1");
+
+    assertEquals(CONTENT
+        .replace("applicationName=", "applicationName=shop")
+        .replace("SingleSocketTcpWriter.hostname=localhost",
+            "SingleSocketTcpWriter.hostname=10.0.0.1"),
+        properties.render());
+  }
+
+  @Test
+  public void appendsMissingProperties() {
+    final KiekerProperties properties =
+        KiekerProperties.parse(CONTENT).with("kieker.monitoring.enabled", "true");
+
+    assertEquals(CONTENT + "kieker.monitoring.enabled=true" + NL, properties.render());
+    assertEquals("true", properties.get("kieker.monitoring.enabled"));
+  }
+
+  @Test
+  public void keepsInstancesImmutable() {
+    final KiekerProperties properties = KiekerProperties.parse(CONTENT);
+    final KiekerProperties changedProperties = properties.withHostname("agent-host");
+
+    assertNotSame(properties, changedProperties);
+    assertEquals("localhost", properties.getHostname());
+    assertEquals("agent-host", changedProperties.getHostname());
+
+    // unchanged values do not create a new instance
+    assertSame(properties, properties.withHostname("localhost"));
+  }
+
+  @Test
+  public void roundTripsChangedContent() {
+    final KiekerProperties properties =
+        KiekerProperties.parse(CONTENT).withApplicationName("shop").withHostname("agent-host");
+
+    final KiekerProperties parsedProperties = KiekerProperties.parse(properties.render());
+
+    assertEquals(properties, parsedProperties);
+    assertEquals("shop", parsedProperties.getApplicationName());
+    assertEquals("agent-host", parsedProperties.getHostname());
+  }
+
+  @Test
+  public void parsesEmptyContent() {
+    final KiekerProperties properties = KiekerProperties.parse("");
+
+    assertTrue(properties.render().isEmpty());
+    assertEquals("kieker.monitoring.hostname=localhost" + NL,
+        properties.withHostname("localhost").render());
+  }
+
+  private static String readResource(final String name) throws IOException {
+    try (InputStream stream = KiekerPropertiesTest.class.getResourceAsStream(name);
+        Scanner scanner = new Scanner(stream, StandardCharsets.UTF_8.name())) {
+      return scanner.useDelimiter("\\A").next();
+    }
+  }
+
+}